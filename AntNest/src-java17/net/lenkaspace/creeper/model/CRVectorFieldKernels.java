@@ -0,0 +1,71 @@
+package net.lenkaspace.creeper.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * CRFieldKernels computed with the Vector API, as many values at once as the preferred vector shape of the processor
+ * holds. Values left over at the end of a range are computed by the plain loops of CRFieldKernels.
+ * Only in META-INF/versions/17 of the multi-release jar, and created by CRFieldKernels.getDefault() only.
+ */
+final class CRVectorFieldKernels extends CRFieldKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	CRVectorFieldKernels() {}
+
+	public String getName() {
+		return "vector" + SPECIES.length();
+	}
+
+	//==================================== KERNELS ======================================
+
+	public void multiply(double[] values_, int from_, int to_, double factor_) {
+		int i = from_;
+		for (int bound=from_+SPECIES.loopBound(to_ - from_); i<bound; i+=SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, values_, i).mul(factor_).intoArray(values_, i);
+		}
+		super.multiply(values_, i, to_, factor_);
+	}
+
+	public void diffuse(double[] values_, double[] next_, int from_, int to_, int upOffset_, int downOffset_,
+			int leftOffset_, int rightOffset_, double rate_, double decay_) {
+		int i = from_;
+		for (int bound=from_+SPECIES.loopBound(to_ - from_); i<bound; i+=SPECIES.length()) {
+			DoubleVector value = DoubleVector.fromArray(SPECIES, values_, i);
+			DoubleVector laplacian = DoubleVector.fromArray(SPECIES, values_, i + upOffset_)
+					.add(DoubleVector.fromArray(SPECIES, values_, i + downOffset_))
+					.add(DoubleVector.fromArray(SPECIES, values_, i + leftOffset_))
+					.add(DoubleVector.fromArray(SPECIES, values_, i + rightOffset_))
+					.sub(value.mul(4));
+			value.add(laplacian.mul(rate_)).mul(decay_).intoArray(next_, i);
+		}
+		super.diffuse(values_, next_, i, to_, upOffset_, downOffset_, leftOffset_, rightOffset_, rate_, decay_);
+	}
+
+	public void diffuse(double[] values_, double[] next_, int from_, int to_, int upOffset_, int downOffset_,
+			int leftOffset_, int rightOffset_, double[] rates_, double[] decays_, int ratesFrom_) {
+		int shift = ratesFrom_ - from_;
+		int i = from_;
+		for (int bound=from_+SPECIES.loopBound(to_ - from_); i<bound; i+=SPECIES.length()) {
+			DoubleVector value = DoubleVector.fromArray(SPECIES, values_, i);
+			DoubleVector laplacian = DoubleVector.fromArray(SPECIES, values_, i + upOffset_)
+					.add(DoubleVector.fromArray(SPECIES, values_, i + downOffset_))
+					.add(DoubleVector.fromArray(SPECIES, values_, i + leftOffset_))
+					.add(DoubleVector.fromArray(SPECIES, values_, i + rightOffset_))
+					.sub(value.mul(4));
+			DoubleVector rate = DoubleVector.fromArray(SPECIES, rates_, i + shift);
+			DoubleVector decay = DoubleVector.fromArray(SPECIES, decays_, i + shift);
+			value.add(laplacian.mul(rate)).mul(decay).intoArray(next_, i);
+		}
+		super.diffuse(values_, next_, i, to_, upOffset_, downOffset_, leftOffset_, rightOffset_, rates_, decays_, i + shift);
+	}
+
+	public void scaleAndClamp(double[] values_, double[] result_, int from_, int to_, double scale_, double maxValue_) {
+		int i = from_;
+		for (int bound=from_+SPECIES.loopBound(to_ - from_); i<bound; i+=SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, values_, i).mul(scale_).min(maxValue_).intoArray(result_, i);
+		}
+		super.scaleAndClamp(values_, result_, i, to_, scale_, maxValue_);
+	}
+}
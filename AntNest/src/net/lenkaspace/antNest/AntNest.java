@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import net.lenkaspace.antNest.images.ImageProvider;
 import net.lenkaspace.antNest.model.World;
 import net.lenkaspace.antNest.report.ReportController;
+import net.lenkaspace.antNest.report.TrialMetricsReport;
 import net.lenkaspace.antNest.view.ControlPanel;
 import net.lenkaspace.creeper.CRController;
 import net.lenkaspace.creeper.CRSettings;
@@ -18,10 +19,17 @@ public class AntNest {
 	private CRController crController;
 	
 	/**
-	 * Initialize UI: top level
+	 * Initialize UI: top level.
+	 * Pass --batch as the first argument to run headless instead, see AntNestBatch.
 	 */
 	public static void main(String[] args) {
-		new AntNest();
+		if (args.length > 0 && args[0].equals("--batch")) {
+			String[] batchArgs = new String[args.length-1];
+			System.arraycopy(args, 1, batchArgs, 0, batchArgs.length);
+			AntNestBatch.main(batchArgs);
+		} else {
+			new AntNest();
+		}
 	}
 	
 	public AntNest() {
@@ -37,27 +45,10 @@ public class AntNest {
 		//-- create CRController
 		crController = new CRController("Controlling Ant-Based Construction");
 		
-		//-- create image provider
-		ImageProvider imageProvider = new ImageProvider();
-		crController.setImageProvider(imageProvider);
-		
-		
-		//-- setup new world and renderer size
-		World world = new World(crController);
-		crController.setWorld(world);
+		//-- setup new world, reports and renderer size
+		setupSimulation(crController);
 		crController.getRenderer().setPreferredSize(new Dimension(660,660));
 		
-		//-- setup reports
-		ReportController reportController = new ReportController(crController);
-		crController.setReportController(reportController);
-		
-		CRWorldSnapshotReport worldSnapshotReport = new CRWorldSnapshotReport(ReportController.REPORT_WORLD_SNAPSHOT, new Dimension((int)world.getSize().x, (int)world.getSize().y),500);
-		reportController.addReport(ReportController.REPORT_WORLD_SNAPSHOT, worldSnapshotReport);
-		
-		CRTimeSeriesReport pushingTimeReport = new CRTimeSeriesReport(ReportController.REPORT_PUSHING_TIME, new String[] {"Time"}, new Dimension(800,400));
-		pushingTimeReport.setIsScatterPlot(true);
-		reportController.addReport(ReportController.REPORT_PUSHING_TIME, pushingTimeReport);
-		
 
 		//-- create new control panel that extends from CRControlPanel and set it
 		ControlPanel controlPanel = new ControlPanel(485, 600, crController);
@@ -97,4 +88,35 @@ public class AntNest {
 		
       
 	}
+	
+	/**
+	 * Create the image provider, world and reports and set them to a controller.
+	 * Used both by the GUI and by the headless AntNestBatch.
+	 * @param crController_ CRController controller to set up
+	 * @return World the new world
+	 */
+	public static World setupSimulation(CRController crController_) {
+		//-- create image provider
+		ImageProvider imageProvider = new ImageProvider();
+		crController_.setImageProvider(imageProvider);
+		
+		//-- setup new world
+		World world = new World(crController_);
+		crController_.setWorld(world);
+		
+		//-- setup reports
+		ReportController reportController = new ReportController(crController_);
+		crController_.setReportController(reportController);
+		
+		CRWorldSnapshotReport worldSnapshotReport = new CRWorldSnapshotReport(ReportController.REPORT_WORLD_SNAPSHOT, new Dimension((int)world.getSize().x, (int)world.getSize().y),500);
+		reportController.addReport(ReportController.REPORT_WORLD_SNAPSHOT, worldSnapshotReport);
+		
+		CRTimeSeriesReport pushingTimeReport = new CRTimeSeriesReport(ReportController.REPORT_PUSHING_TIME, new String[] {"Time"}, new Dimension(800,400));
+		pushingTimeReport.setIsScatterPlot(true);
+		reportController.addReport(ReportController.REPORT_PUSHING_TIME, pushingTimeReport);
+		
+		reportController.addReport(ReportController.REPORT_TRIAL_METRICS, new TrialMetricsReport(ReportController.REPORT_TRIAL_METRICS));
+		
+		return world;
+	}
 }
@@ -0,0 +1,249 @@
+package net.lenkaspace.antNest;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import net.lenkaspace.antNest.model.World;
+import net.lenkaspace.creeper.CRController;
+import net.lenkaspace.creeper.CRExperimentExecutor;
+import net.lenkaspace.creeper.CRParameterSweep;
+import net.lenkaspace.creeper.CRSettings;
+import net.lenkaspace.creeper.CRSimulationJob;
+import net.lenkaspace.creeper.CRSweepExecutor;
+
+/**
+ * Runs the simulation without any GUI, as fast as possible, and saves text reports only.
+ * Arguments are key=value pairs, e.g.
+ * <pre>
+ *   runs=10 trials=1 trialDuration=6000 currentWorld=Random numOfInternalWokers=20
+ * </pre>
+ * Use config=path/to/file.properties to read the same keys from a properties file. Values given on the command
+ * line override values from the file. Keys other than runs, trials, trialDuration, reportFolder, progressInterval
+ * and threads are names of the public fields of Settings.
+ * With threads=N (N &gt; 1, or 0 for one per processor), runs are executed in parallel by CRExperimentExecutor.
+ * textReports=false switches off the per-trial text reports.
+ * seed=S sets the base random seed, so that run k of any two simulations with the same seed and settings is identical.
+ * firstRun=k numbers runs from k, e.g. to repeat a single run of a larger experiment with runs=1.
+ * parallelUpdate=true lets the ants of one simulation sense in parallel, on updateThreads threads (0 for one per processor).
+ * When several simulations are executed at the same time, updateThreads defaults to processors / simulations (at least 1),
+ * so that the simulations and their update threads together don't use more threads than there are processors.
+ * spatialIndex=bins|cellList|adaptive chooses how the world finds nearby objects, spatialIndexCellSize=0 lets it tune its cell size.
+ * pheromoneCellSize=D sets the resolution of the pheromone template grid, in world units.
+ * useLazyPheromoneDecay=true decays pheromone cells only when they are read or written, which pays off on fine grids.
+ * useSparsePheromone=true stores the pheromone grid in tiles that exist only around trails, so large worlds need little memory.
+ * It can't be combined with pheromoneDiffusion or useLazyPheromoneDecay.
+ * pheromoneChannels=alarm,food adds pheromone channels besides the trail, stored with it per cell and updated in one pass.
+ * The brood pheromone is then rasterized into a channel too, and ants read all pheromones at their position in one lookup.
+ * pheromoneChannelDecays=0.99,0.999 and pheromoneChannelDiffusions=5,0 set the rates of these channels, one value per channel.
+ * pheromoneChannels can't be combined with useSparsePheromone, useLazyPheromoneDecay or broodTemplateCellSize.
+ * pheromoneDiffusion=D lets the pheromone diffuse by D world units^2 per update loop, computed in parallel with parallelUpdate=true.
+ * broodTemplateCellSize=D rasterizes the brood clouds into a grid of D world units once per trial and interpolates it, instead of going through all clouds per lookup.
+ * useGradientSteering=true lets ants steer by the value and gradient of the brood pheromone at their position, read from the same lookup.
+ * useBroadPhase=true finds ant and stone contacts with a sort-and-sweep once per update loop instead of a query per chain.
+ * <p>
+ * On Java 17 and later, pheromone decay and diffusion use the Vector API (see CRFieldKernels) when the JVM is started with
+ * --add-modules jdk.incubator.vector, e.g. java --add-modules jdk.incubator.vector -cp AntNest.jar net.lenkaspace.antNest.AntNestBatch ...
+ * The option is not part of run.jvmargs because Java 8 JVMs don't start with it. -Dcreeper.scalarKernels=true uses the plain loops.
+ * <p>
+ * If any grid.* or set.* keys are given (see CRParameterSweep), a parameter sweep is executed instead:
+ * every parameter set x seed is one simulation of the given number of trials, simulations are executed
+ * on all processors unless threads is set, and their per-trial metrics are written into results.csv
+ * in the report folder as they finish. A row can be repeated with seed=&lt;seed&gt; firstRun=&lt;run&gt; runs=1 and its parameters.
+ */
+public class AntNestBatch {
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		//-- read the arguments. The config file goes first so that the command line can override it
+		Properties properties = new Properties();
+		Properties commandLine = new Properties();
+		for (String arg : args) {
+			int separatorIndex = arg.indexOf('=');
+			if (separatorIndex <= 0) {
+				System.err.println("AntNestBatch - expected key=value, got " + arg);
+				System.exit(1);
+			}
+			commandLine.setProperty(arg.substring(0, separatorIndex).trim(), arg.substring(separatorIndex+1).trim());
+		}
+		String configFileName = commandLine.getProperty("config");
+		if (configFileName != null) {
+			try {
+				FileInputStream inputStream = new FileInputStream(configFileName);
+				try {
+					properties.load(inputStream);
+				} finally {
+					inputStream.close();
+				}
+			} catch (IOException e) {
+				System.err.println("AntNestBatch - cannot read config file " + configFileName);
+				System.exit(1);
+			}
+			commandLine.remove("config");
+		}
+		properties.putAll(commandLine);
+
+		//-- the same defaults as the control panel
+		Settings settings = Settings.getSingleton();
+		settings.numOfExternalWorkers = 10;
+		settings.numOfInternalWokers = 10;
+		settings.numOfPassiveAnts = 50;
+		settings.currentWorld = World.RANDOM_WORLD;
+
+		int totalRuns = 1;
+		int totalTrials = 1;
+		int trialDuration = 6000;
+		int progressInterval = 5000;
+		int threads = 1;
+		boolean shouldPrintTextReports = true;
+		int firstRunNumber = 1;
+		DateFormat dateFormat = new SimpleDateFormat("yyMMdd-HHmmss");
+		String reportFolderName = "reports" + dateFormat.format(new Date());
+
+		Enumeration<?> keys = properties.propertyNames();
+		while (keys.hasMoreElements()) {
+			String key = (String)keys.nextElement();
+			String value = properties.getProperty(key);
+			try {
+				if (key.equals("runs")) {
+					totalRuns = Integer.parseInt(value);
+				} else if (key.equals("trials")) {
+					totalTrials = Integer.parseInt(value);
+				} else if (key.equals("trialDuration")) {
+					trialDuration = Integer.parseInt(value);
+				} else if (key.equals("progressInterval")) {
+					progressInterval = Integer.parseInt(value);
+				} else if (key.equals("threads")) {
+					threads = Integer.parseInt(value);
+				} else if (key.equals("seed")) {
+					CRSettings.getSingleton().setRandomSeed(Long.parseLong(value));
+				} else if (key.equals("parallelUpdate")) {
+					CRSettings.getSingleton().setIsParallelUpdate(Boolean.parseBoolean(value));
+				} else if (key.equals("updateThreads")) {
+					CRSettings.getSingleton().setUpdateThreads(Integer.parseInt(value));
+				} else if (key.equals("firstRun")) {
+					firstRunNumber = Integer.parseInt(value);
+				} else if (key.equals("textReports")) {
+					shouldPrintTextReports = Boolean.parseBoolean(value);
+				} else if (CRParameterSweep.isSweepKey(key)) {
+					//-- read by CRParameterSweep
+				} else if (key.equals("reportFolder")) {
+					reportFolderName = value;
+				} else if (!settings.setValue(key, value)) {
+					System.err.println("AntNestBatch - unknown setting or invalid value: " + key + "=" + value);
+					System.exit(1);
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("AntNestBatch - not a number: " + key + "=" + value);
+				System.exit(1);
+			}
+		}
+		if (settings.getConflict() != null) {
+			System.err.println("AntNestBatch - " + settings.getConflict());
+			System.exit(1);
+		}
+
+		//-- setup CRSettings: no drawing and no graphic reports
+		CRSettings crSettings = CRSettings.getSingleton();
+		crSettings.setTimeUnitInterval(50);
+		crSettings.setShouldDraw(false);
+		crSettings.setShouldPrintGraphicReports(false);
+		crSettings.setShouldPrintTextReports(shouldPrintTextReports);
+
+		//-- parameter sweep
+		if (CRParameterSweep.isSweep(properties)) {
+			CRParameterSweep sweep = null;
+			try {
+				sweep = new CRParameterSweep(properties);
+			} catch (IllegalArgumentException e) {
+				System.err.println("AntNestBatch - " + e.getMessage());
+				System.exit(1);
+			}
+			if (!properties.containsKey("threads")) {
+				threads = 0;
+			}
+			shareProcessors(crSettings, threads, properties);
+			List<AntNestSimulationJob> jobs = new ArrayList<AntNestSimulationJob>();
+			int runNumber = 1;
+			for (Map<String, String> parameterSet : sweep.getParameterSets()) {
+				for (long seed : sweep.getSeeds()) {
+					AntNestSimulationJob job = new AntNestSimulationJob(crSettings, settings, reportFolderName, trialDuration, totalTrials, runNumber++);
+					if (!job.setParameters(parameterSet)) {
+						System.err.println("AntNestBatch - unknown setting or invalid value in parameter set " + parameterSet);
+						System.exit(1);
+					}
+					if (job.getAntNestSettings().getConflict() != null) {
+						System.err.println("AntNestBatch - " + job.getAntNestSettings().getConflict() + " in parameter set " + parameterSet);
+						System.exit(1);
+					}
+					job.setSeed(seed);
+					job.setProgressInterval(progressInterval);
+					jobs.add(job);
+				}
+			}
+			CRSweepExecutor executor = new CRSweepExecutor(threads, jobs.get(0).getReportFolderPath() + "/results.csv");
+			System.out.println("SWEEP: " + sweep.getParameterSets().size() + " parameter sets x " + sweep.getSeeds().length + " seeds on " + executor.getPoolSize() + " threads");
+			long startTime = System.nanoTime();
+			List<CRSimulationJob> finishedJobs = executor.execute(jobs);
+			System.out.println("Executed " + finishedJobs.size() + "/" + jobs.size() + " simulations in " + (int)((System.nanoTime() - startTime) / 1e9)
+					+ " s, results saved to " + executor.getResultsFileName());
+			System.exit(finishedJobs.size() == jobs.size() ? 0 : 1);
+		}
+
+		//-- parallel: one job per run, each with its own copy of the settings
+		if (threads != 1) {
+			//-- all jobs share one base seed, so that each run is the same as in a serial simulation
+			if (!crSettings.getIsRandomSeedSet()) {
+				crSettings.setRandomSeed(new SplittableRandom().nextLong());
+			}
+			shareProcessors(crSettings, threads, properties);
+			List<AntNestSimulationJob> jobs = new ArrayList<AntNestSimulationJob>();
+			for (int runNumber=firstRunNumber; runNumber<firstRunNumber+totalRuns; runNumber++) {
+				AntNestSimulationJob job = new AntNestSimulationJob(crSettings, settings, reportFolderName, trialDuration, totalTrials, runNumber);
+				job.setProgressInterval(progressInterval);
+				jobs.add(job);
+			}
+			CRExperimentExecutor executor = new CRExperimentExecutor(threads);
+			long startTime = System.nanoTime();
+			List<CRSimulationJob> finishedJobs = executor.execute(jobs);
+			System.out.println("Executed " + finishedJobs.size() + "/" + totalRuns + " runs on " + executor.getPoolSize() + " threads in "
+					+ (int)((System.nanoTime() - startTime) / 1e9) + " s");
+			System.exit(finishedJobs.size() == totalRuns ? 0 : 1);
+		}
+
+		//-- create the controller, world and reports
+		CRController crController = new CRController("Controlling Ant-Based Construction", true);
+		AntNest.setupSimulation(crController);
+		crController.setProgressInterval(progressInterval);
+		crController.setTotalTrials(totalTrials);
+
+		//-- run
+		crController.startSimulation(reportFolderName, trialDuration, totalRuns, firstRunNumber);
+		crController.runHeadless();
+	}
+
+	/**
+	 * Divide the processors among simulations executed at the same time, so that their parallel updates don't start
+	 * more threads than there are processors. Does nothing if updateThreads is given.
+	 * @param crSettings_ CRSettings settings the jobs are created from
+	 * @param threads_ int number of simulations executed at the same time, 0 for one per processor
+	 * @param properties_ Properties arguments
+	 */
+	private static void shareProcessors(CRSettings crSettings_, int threads_, Properties properties_) {
+		if (properties_.containsKey("updateThreads")) {
+			return;
+		}
+		int numOfProcessors = Runtime.getRuntime().availableProcessors();
+		int numOfSimulations = threads_ <= 0 ? numOfProcessors : threads_;
+		crSettings_.setUpdateThreads(Math.max(1, numOfProcessors / numOfSimulations));
+	}
+}
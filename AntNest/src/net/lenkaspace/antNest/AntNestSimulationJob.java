@@ -0,0 +1,70 @@
+package net.lenkaspace.antNest;
+
+import java.util.Map;
+
+import net.lenkaspace.antNest.report.ReportController;
+import net.lenkaspace.antNest.report.TrialMetricsReport;
+import net.lenkaspace.creeper.CRController;
+import net.lenkaspace.creeper.CRSettings;
+import net.lenkaspace.creeper.CRSimulationJob;
+
+/**
+ * One headless ant nest simulation, executed by CRExperimentExecutor.
+ * Holds its own copy of Settings, which is bound to the executing thread together with CRSettings.
+ */
+public class AntNestSimulationJob extends CRSimulationJob {
+
+	protected Settings antNestSettings;
+
+	/**
+	 * Constructor
+	 * @param settings_ CRSettings settings of this simulation, will be copied
+	 * @param antNestSettings_ Settings ant nest settings of this simulation, will be copied
+	 * @param reportFolderName_ String report folder name, shared by all jobs of one experiment
+	 * @param trialDuration_ int trial duration in time units
+	 * @param totalTrials_ int number of trials
+	 * @param runNumber_ int run number
+	 */
+	public AntNestSimulationJob(CRSettings settings_, Settings antNestSettings_, String reportFolderName_, int trialDuration_, int totalTrials_, int runNumber_) {
+		super(settings_, reportFolderName_, trialDuration_, totalTrials_, runNumber_);
+		antNestSettings = new Settings(antNestSettings_);
+	}
+
+	/**
+	 * Set parameters of this job on its copy of Settings
+	 * @param parameters_ Map<String, String> Settings field name -> value
+	 * @return boolean true if all parameters are valid Settings fields and values
+	 */
+	public boolean setParameters(Map<String, String> parameters_) {
+		for (Map.Entry<String, String> parameter : parameters_.entrySet()) {
+			if (!antNestSettings.setValue(parameter.getKey(), parameter.getValue())) {
+				return false;
+			}
+			parameters.put(parameter.getKey(), parameter.getValue());
+		}
+		return true;
+	}
+
+	protected CRController createController() {
+		CRController crController = new CRController("Controlling Ant-Based Construction", true);
+		AntNest.setupSimulation(crController);
+		return crController;
+	}
+
+	protected void bindContext() {
+		Settings.bindToCurrentThread(antNestSettings);
+	}
+
+	protected void unbindContext() {
+		Settings.unbindFromCurrentThread();
+	}
+
+	protected void onSimulationEnd() {
+		TrialMetricsReport metricsReport = (TrialMetricsReport)controller.getReportController().getReport(ReportController.REPORT_TRIAL_METRICS);
+		resultRows.addAll(metricsReport.getRows());
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	public Settings getAntNestSettings() { return antNestSettings; }
+}
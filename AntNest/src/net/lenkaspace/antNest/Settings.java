@@ -1,6 +1,11 @@
 package net.lenkaspace.antNest;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import net.lenkaspace.antNest.model.Pheromone;
 import net.lenkaspace.antNest.model.World;
+import net.lenkaspace.creeper.model.CRBinWorld;
 
 
 public class Settings {
@@ -16,22 +21,50 @@ public class Settings {
 	public double pheromoneMovementThreshold;
 	public int normalBroodClusterDiam;
 	public int broodClusterDistance;
+	public double pheromoneCellSize; //side of a cell of the pheromone template grid
+	public double pheromoneDiffusion; //world units^2 per update loop, 0 spreads pheromone to neighbouring cells when it is dropped. Dense grid only
+	public boolean useLazyPheromoneDecay; //pheromone cells decay when they are read or written, instead of all of them every update loop. Dense grid only
+	public boolean useSparsePheromone; //pheromone grid is stored in tiles that exist only around trails, for large worlds
+	public String pheromoneChannels; //comma separated names of pheromone channels besides the trail, stored with it and the brood pheromone in one dense grid. The brood pheromone is then interpolated between the cells of that grid. Empty for the trail only
+	public String pheromoneChannelDecays; //comma separated decay factors per update loop of pheromoneChannels, empty to decay them like the trail
+	public String pheromoneChannelDiffusions; //comma separated world units^2 per update loop of pheromoneChannels, empty for no diffusion
         
         public boolean useBroodPheromones;
+	public double broodTemplateCellSize; //side of a cell of the grid the brood clouds are rasterized into at the start of a trial, 0 to compute concentrations from the clouds
+	public boolean useGradientSteering; //ants turn along the gradient of the brood pheromone, instead of towards where they last sensed more of it
+	
+	public String spatialIndex; //one of CRBinWorld.SPATIAL_INDEX_TYPES
+	public double spatialIndexCellSize; //0 to let the world tune it
+	public boolean useBroadPhase; //ants find contacts among pairs found by a sort-and-sweep once per update loop, pays off with thousands of ants
 	
 	
 	public String currentWorld;
 	
 	//==================================== SINGLETON ====================================
     private static Settings singletonReference;
+    private static final ThreadLocal<Settings> threadReference = new ThreadLocal<Settings>();
     
 	
 	public static Settings getSingleton()	  {
+	  Settings boundSettings = threadReference.get();
+	  if (boundSettings != null)
+		  return boundSettings;
 	  if (singletonReference == null)
 		  singletonReference = new Settings();		
 	  return singletonReference;
 	}
 	
+	/**
+	 * Make getSingleton() return the given settings in the calling thread
+	 * @param settings_ Settings settings of the simulation executed by the calling thread
+	 */
+	public static void bindToCurrentThread(Settings settings_) { threadReference.set(settings_); }
+	
+	/**
+	 * Make getSingleton() return the global settings in the calling thread again
+	 */
+	public static void unbindFromCurrentThread() { threadReference.remove(); }
+	
 	private Settings() {
 		showAnts = true;
 		showStones = true;
@@ -41,7 +74,162 @@ public class Settings {
 		pheromoneMovementThreshold = 1;
 		normalBroodClusterDiam = 300;
 		broodClusterDistance=100;
+		pheromoneCellSize = Pheromone.DEFAULT_CELL_SIZE;
+		pheromoneDiffusion = 0;
+		useLazyPheromoneDecay = false;
+		useSparsePheromone = false;
+		pheromoneChannels = "";
+		pheromoneChannelDecays = "";
+		pheromoneChannelDiffusions = "";
                 useBroodPheromones = false;
+		broodTemplateCellSize = 0;
+		useGradientSteering = false;
+		spatialIndex = CRBinWorld.BIN_GRID;
+		spatialIndexCellSize = 25;
+		useBroadPhase = false;
                 
 	}
+	
+	/**
+	 * Copy constructor
+	 * @param source_ Settings settings to copy
+	 */
+	public Settings(Settings source_) {
+		try {
+			for (Field field : Settings.class.getFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					field.set(this, field.get(source_));
+				}
+			}
+		} catch (IllegalAccessException e) {
+			System.err.println("Settings - cannot copy settings");
+		}
+	}
+	
+	//==================================== OTHER ========================================
+	
+	/**
+	 * Set a setting from text, e.g. when read from a config file or the command line.
+	 * The key is the name of one of the public fields above.
+	 * @param key_ String setting name
+	 * @param value_ String setting value
+	 * @return boolean true if the setting exists and the value could be parsed
+	 */
+	public boolean setValue(String key_, String value_) {
+		try {
+			Field field = Settings.class.getField(key_);
+			Class<?> type = field.getType();
+			String value = value_.trim();
+			if (type == int.class) {
+				field.setInt(this, Integer.parseInt(value));
+			} else if (type == double.class) {
+				field.setDouble(this, Double.parseDouble(value));
+			} else if (type == boolean.class) {
+				if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+					return false;
+				}
+				field.setBoolean(this, Boolean.parseBoolean(value));
+			} else if (key_.equals("currentWorld")) {
+				//-- world names are compared by reference
+				String worldName = World.getWorldName(value);
+				if (worldName == null) {
+					return false;
+				}
+				currentWorld = worldName;
+			} else if (key_.equals("pheromoneChannels")) {
+				if (!isChannelList(value)) {
+					return false;
+				}
+				pheromoneChannels = value;
+			} else if (key_.equals("pheromoneChannelDecays") || key_.equals("pheromoneChannelDiffusions")) {
+				parseNumbers(value);
+				field.set(this, value);
+			} else if (key_.equals("spatialIndex")) {
+				if (!CRBinWorld.isSpatialIndexType(value)) {
+					return false;
+				}
+				spatialIndex = value;
+			} else {
+				return false;
+			}
+		} catch (NoSuchFieldException e) {
+			return false;
+		} catch (NumberFormatException e) {
+			return false;
+		} catch (IllegalAccessException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Find settings that don't work together, because one of them would be ignored
+	 * @return String description of the first conflict, null if there is none
+	 */
+	public String getConflict() {
+		if (useSparsePheromone && pheromoneDiffusion > 0) {
+			return "pheromoneDiffusion needs a dense pheromone grid and is ignored with useSparsePheromone";
+		}
+		if (useSparsePheromone && useLazyPheromoneDecay) {
+			return "useLazyPheromoneDecay needs a dense pheromone grid and is ignored with useSparsePheromone";
+		}
+		if (!pheromoneChannels.isEmpty()) {
+			if (useSparsePheromone) {
+				return "useSparsePheromone is ignored with pheromoneChannels, which are stored in one dense grid";
+			}
+			if (useLazyPheromoneDecay) {
+				return "useLazyPheromoneDecay is ignored with pheromoneChannels, which decay together in every update loop";
+			}
+			if (broodTemplateCellSize > 0) {
+				return "broodTemplateCellSize is ignored with pheromoneChannels, the brood pheromone is kept in a channel of the pheromone grid";
+			}
+		}
+		int numOfChannels = pheromoneChannels.isEmpty() ? 0 : pheromoneChannels.split(",").length;
+		if (!pheromoneChannelDecays.isEmpty() && parseNumbers(pheromoneChannelDecays).length != numOfChannels) {
+			return "pheromoneChannelDecays needs one value for each of pheromoneChannels";
+		}
+		if (!pheromoneChannelDiffusions.isEmpty() && parseNumbers(pheromoneChannelDiffusions).length != numOfChannels) {
+			return "pheromoneChannelDiffusions needs one value for each of pheromoneChannels";
+		}
+		return null;
+	}
+	
+	/**
+	 * Parse a comma separated list of numbers, e.g. pheromoneChannelDecays
+	 * @param value_ String list, may be empty
+	 * @return double[] numbers
+	 * @throws NumberFormatException if an item is not a number
+	 */
+	public static double[] parseNumbers(String value_) {
+		if (value_.isEmpty()) {
+			return new double[0];
+		}
+		String[] items = value_.split(",", -1);
+		double[] numbers = new double[items.length];
+		for (int i=0; i<items.length; i++) {
+			numbers[i] = Double.parseDouble(items[i].trim());
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Find out if text is a valid value of pheromoneChannels: distinct names of letters and digits, separated by commas
+	 */
+	private static boolean isChannelList(String value_) {
+		if (value_.isEmpty()) {
+			return true;
+		}
+		String[] names = value_.split(",", -1);
+		for (int i=0; i<names.length; i++) {
+			if (!names[i].matches("[A-Za-z0-9]+") || names[i].equals(Pheromone.TRAIL_CHANNEL) || names[i].equals(Pheromone.BROOD_CHANNEL)) {
+				return false;
+			}
+			for (int j=0; j<i; j++) {
+				if (names[j].equals(names[i])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
 }
@@ -5,7 +5,8 @@ import java.util.ArrayList;
 import net.lenkaspace.antNest.Settings;
 import net.lenkaspace.antNest.report.ReportController;
 import net.lenkaspace.creeper.CRSettings;
-import net.lenkaspace.creeper.helpers.CRMaths;
+import net.lenkaspace.creeper.helpers.CRRandom;
+import net.lenkaspace.creeper.model.CRBaseSituatedModel;
 import net.lenkaspace.creeper.model.CRBinWorld;
 import net.lenkaspace.creeper.report.CRTimeSeriesReport;
 import net.lenkaspace.creeper.view.CROutputPopup;
@@ -51,10 +52,30 @@ public class Ant extends BaseWorldObject {
 	
 	protected boolean shouldRecordCarryTime;
 	
+	protected CRRandom random;
+	
+	//-- sense phase of parallel updates, see onSense()
+	protected boolean hasSensed;
+	protected BaseWorldObject sensedChainFront;
+	protected ArrayList<BaseWorldObject> sensedObjects;
+	private ArrayList<CRBaseSituatedModel> queryBuffer; //for world queries in the sense phase
+	protected double sensedBroodConcentration;
+	protected CRVector3d sensedBroodGradient;
+	protected double sensedTemplateConcentration;
+	protected double[] pheromoneConcentrations; //all pheromone channels at own position, when the pheromone has a brood channel
+	
+	//-- gradient steering, see Settings.useGradientSteering
+	protected CRVector3d broodGradient;
+	protected CRVector3d uphillPosition;
+	protected CRVector3d downhillPosition;
+	
 	public Ant(int id_, CRVector3d pos_, double rotation_, KIND kind_) {
 		super(1, id_, pos_, new CRVector3d(2,10,0), rotation_, CRRenderer.CR_RED_DOT);
 	
 		kind = kind_;
+		spatialLayer = World.ANT_LAYER;
+		//-- own random stream, split off in the order the ants are created, so runs can be repeated
+		random = CRRandom.getSingleton().split();
 		resistance = 100;
 		thrustForce = 1;
 		minThrustForce = 0;
@@ -95,6 +116,13 @@ public class Ant extends BaseWorldObject {
 		//pushingTimeMultiplier = 0.5;
 		
 		pushedObjects = new ArrayList<BaseWorldObject>();
+		sensedObjects = new ArrayList<BaseWorldObject>();
+		queryBuffer = new ArrayList<CRBaseSituatedModel>();
+		hasSensed = false;
+		sensedBroodGradient = new CRVector3d(0,0,0);
+		broodGradient = new CRVector3d(0,0,0);
+		uphillPosition = new CRVector3d(0,0,0);
+		downhillPosition = new CRVector3d(0,0,0);
 		
 		if (Settings.getSingleton().currentWorld == World.TEST_WORLD) {
 			if (this.id == 1) {
@@ -105,15 +133,39 @@ public class Ant extends BaseWorldObject {
 	
 	
 	//==================================== UPDATE LOOP ==========================================
+	
+	/**
+	 * Sense phase of parallel updates: measure pheromones and find objects around the front of the chain.
+	 * Whether sensed objects are ahead and still free is decided in onUpdateLoopStart(), where ants act one by one.
+	 */
+	public void onSense() {
+		World antWorld = (World)world;
+		if (antWorld.getBroodChannel() >= 0 && !antWorld.isUsingGradientSteering()) {
+			//-- both from one lookup of all channels
+			double[] concentrations = measureConcentrations();
+			sensedBroodConcentration = concentrations[antWorld.getBroodChannel()];
+			sensedTemplateConcentration = concentrations[0];
+		} else {
+			sensedBroodConcentration = measureBroodConcentration(antWorld.isUsingGradientSteering() ? sensedBroodGradient : null);
+			sensedTemplateConcentration = measureTemplateConcentration();
+		}
+		sensedChainFront = null;
+		if (kind != KIND.PASSIVE) {
+			//-- self is added to an empty chain in onUpdateLoopStart
+			sensedChainFront = pushedObjects.size() > 0 ? pushedObjects.get(pushedObjects.size() - 1) : this;
+			sensedChainFront.senseObjectsAround(sensedObjects, queryBuffer);
+		}
+		hasSensed = true;
+	}
+	
 	public void onUpdateLoopStart() {
-		isVisible = Settings.getSingleton().showAnts;
 		//feltResistance = 0;
 		
 		
 		super.onUpdateLoopStart();
 		
 		//---- find out if it is within nest
-		if ( ((World)world).getBroodCluster().getPheromoneConcentrationAt(position) > 0) {
+		if (getBroodConcentration() > 0) {
 			//-- external ant should remember when it entered nest carrying something
 			if (isWithinNest == false && kind == KIND.EXTERNAL && pushedObjects.size() >= 2) {
 				startedPushingTimeCounter = world.getController().getTimeCounterSinceTrialStart();
@@ -132,7 +184,12 @@ public class Ant extends BaseWorldObject {
 		
 		if (kind != KIND.PASSIVE) {
 			//---- find any other objects attached to this chain, based on the object in the front of the chain:
-			pushedObjects.get(pushedObjects.size() - 1).findPushedObjects(pushedObjects);
+			BaseWorldObject chainFront = pushedObjects.get(pushedObjects.size() - 1);
+			if (hasSensed && chainFront == sensedChainFront) {
+				chainFront.findPushedObjects(pushedObjects, sensedObjects);
+			} else {
+				chainFront.findPushedObjects(pushedObjects);
+			}
 				
 			//---- decide to drop stones
 			decideIfDrop(false);
@@ -148,24 +205,47 @@ public class Ant extends BaseWorldObject {
 			this.setThrustForce(1 - feltResistance);
 			
 			//---- adjust rotation
-			BroodCluster broodCluster = ((World)world).getBroodCluster();
 			if (kind != KIND.TEST) {
 				int rotationChange = 0;
-				double currentPheromoneConcentration = broodCluster.getPheromoneConcentrationAt(position);
+				double currentPheromoneConcentration;
+				//-- a position where pheromone concentration is higher and one where it is lower than here, null if not known
+				CRVector3d higherPosition = null;
+				CRVector3d lowerPosition = null;
+				if (((World)world).isUsingGradientSteering()) {
+					//-- one world unit up and down the gradient
+					currentPheromoneConcentration = getBroodConcentration(broodGradient);
+					double gradientLength = Math.hypot(broodGradient.x, broodGradient.y);
+					if (gradientLength > 0) {
+						uphillPosition.x = position.x + broodGradient.x / gradientLength;
+						uphillPosition.y = position.y + broodGradient.y / gradientLength;
+						downhillPosition.x = position.x - broodGradient.x / gradientLength;
+						downhillPosition.y = position.y - broodGradient.y / gradientLength;
+						higherPosition = uphillPosition;
+						lowerPosition = downhillPosition;
+					}
+				} else {
+					//-- the position where the highest concentration since the last drop was measured
+					currentPheromoneConcentration = getBroodConcentration();
+					if (lastHigherEqualPheromoneConcentration - currentPheromoneConcentration > 0) {
+						higherPosition = lastHigherEqualPheromoneConcentrationPosition;
+					} else if (lastHigherEqualPheromoneConcentration - currentPheromoneConcentration < 0) {
+						lowerPosition = lastHigherEqualPheromoneConcentrationPosition;
+					}
+				}
 				if (kind == KIND.INTERNAL) {
 					isMovingRandomly = true;
 					
-					//-- check if last second pheromone concentration was higher than now, if yes, rotate towards location in last second
+					//-- check if pheromone concentration is higher elsewhere, if yes, rotate towards there
 					if (lastHigherEqualPheromoneConcentration >= 0 && currentPheromoneConcentration <= Settings.getSingleton().pheromoneMovementThreshold) {
-						if (lastHigherEqualPheromoneConcentration - currentPheromoneConcentration > 0) {
-							rotationChange = -(int) Math.toDegrees(this.getRelativeVectorTo(lastHigherEqualPheromoneConcentrationPosition).x);
+						if (higherPosition != null) {
+							rotationChange = -(int) Math.toDegrees(this.getRelativeVectorTo(higherPosition).x);
 						}
 					}
 						
 					if (pushedObjects.size() > 1) {
 						//-- carrying something, rotate towards outside of the cirlce, but keep random movement
-						if (lastHigherEqualPheromoneConcentration - currentPheromoneConcentration < 0) {
-							rotationChange = (int) Math.toDegrees(this.getRelativeVectorTo(lastHigherEqualPheromoneConcentrationPosition).x);
+						if (lowerPosition != null) {
+							rotationChange = (int) Math.toDegrees(this.getRelativeVectorTo(lowerPosition).x);
 							
 						}	
 					}
@@ -177,8 +257,8 @@ public class Ant extends BaseWorldObject {
 						//CRVector3d clusterMiddle = ((World)world).getBroodCluster().getPosition();
 						//CRVector3d vecToCluster = this.getRelativeVectorTo(clusterMiddle);
 						if (!isMovingRandomly) {
-							if (lastHigherEqualPheromoneConcentration - currentPheromoneConcentration > 0) {
-								rotationChange = -(int) Math.toDegrees(this.getRelativeVectorTo(lastHigherEqualPheromoneConcentrationPosition).x);
+							if (higherPosition != null) {
+								rotationChange = -(int) Math.toDegrees(this.getRelativeVectorTo(higherPosition).x);
 							}
 							/*if (vecToCluster.y < 0 || Math.abs(vecToCluster.x) > 0.3) {
 								rotationChange = -(int) Math.toDegrees(vecToCluster.x);	
@@ -200,13 +280,13 @@ public class Ant extends BaseWorldObject {
 				
 				//-- do strict random walk, add big random rotation
 				if (isMovingRandomly) {
-					if (Math.random() < RANDOM_WALK_ANGLE_CHANGE_PROBABILITY) {
-						rotationChange += CRMaths.getRandomInteger(RANDOM_WALK_ANGLE_CHANGE_MIN, RANDOM_WALK_ANGLE_CHANGE_MAX, true);	
+					if (random.nextDouble() < RANDOM_WALK_ANGLE_CHANGE_PROBABILITY) {
+						rotationChange += random.getRandomInteger(RANDOM_WALK_ANGLE_CHANGE_MIN, RANDOM_WALK_ANGLE_CHANGE_MAX, true);	
 					}
 				}
 				//-- add a bit of randomness to every movement
-				if (Math.random() < WALK_RANDOMISATION_ANGLE_CHANGE_PROBABILITY) {
-					rotationChange += CRMaths.getRandomInteger(WALK_RANDOMISATION_ANGLE_CHANGE_MIN, WALK_RANDOMISATION_ANGLE_CHANGE_MAX, true);
+				if (random.nextDouble() < WALK_RANDOMISATION_ANGLE_CHANGE_PROBABILITY) {
+					rotationChange += random.getRandomInteger(WALK_RANDOMISATION_ANGLE_CHANGE_MIN, WALK_RANDOMISATION_ANGLE_CHANGE_MAX, true);
 				}
 				
 				if (kind != KIND.PASSIVE) {
@@ -227,6 +307,7 @@ public class Ant extends BaseWorldObject {
 		} else {
 			this.setThrustForce(maxThrustForce);
 		}
+		hasSensed = false;
 		
 		
 				
@@ -241,13 +322,15 @@ public class Ant extends BaseWorldObject {
 	public void update() {
             
 		
-		//-- output carrying info
+		//-- output carrying info, there is nowhere to show it when running headless
 		if (kind == KIND.EXTERNAL) {
-			CROutputPopup.getSingleton().displayOutput(this.id + " carrying" + pushedObjects.size() + "resistance:  " + feltResistance + " random: " + isMovingRandomly);
-			for (int i=0; i<pushedObjects.size(); i++) {
-				BaseWorldObject object = pushedObjects.get(i);
-				if (object != this) {
-					CROutputPopup.getSingleton().displayOutput("    " + object.getId() + "   rot " + object.getRotation() + "  pos" + object.getPosition().x + " " + object.getPosition().y);
+			if (!world.getController().isHeadless()) {
+				CROutputPopup.getSingleton().displayOutput(this.id + " carrying" + pushedObjects.size() + "resistance:  " + feltResistance + " random: " + isMovingRandomly);
+				for (int i=0; i<pushedObjects.size(); i++) {
+					BaseWorldObject object = pushedObjects.get(i);
+					if (object != this) {
+						CROutputPopup.getSingleton().displayOutput("    " + object.getId() + "   rot " + object.getRotation() + "  pos" + object.getPosition().x + " " + object.getPosition().y);
+					}
 				}
 			}
 		} else {
@@ -293,9 +376,9 @@ public class Ant extends BaseWorldObject {
 				slideProbability = -1; //don't slide if this is the first stone it encountered
 			}
 			//slideProbability = -1;
-			if (Math.random() <= slideProbability) {				
+			if (random.nextDouble() <= slideProbability) {				
 				//-- rotate by about 90 deg
-				double angleChange = CRMaths.getRandomInteger(15,35, true); //CRMaths.getRandomInteger(15,45, true); // CRMaths.getRandomGaussian(15, 5);  //CRMaths.getRandomInteger(15,25, true);  //getRandomGaussian(90, 10); //getRandomInteger(20,90)
+				double angleChange = random.getRandomInteger(15,35, true); //CRMaths.getRandomInteger(15,45, true); // CRMaths.getRandomGaussian(15, 5);  //CRMaths.getRandomInteger(15,25, true);  //getRandomGaussian(90, 10); //getRandomInteger(20,90)
 				this.setRotation(rotation + angleChange);
 				
 				feltResistance += object_.getResistance();
@@ -317,7 +400,7 @@ public class Ant extends BaseWorldObject {
 					pickUpProbability = -1;
 				}*/
 			//	pickUpProbability = 1;
-				if (Math.random() <= pickUpProbability) {
+				if (random.nextDouble() <= pickUpProbability) {
 					return true;
 				}
 					
@@ -388,7 +471,6 @@ public class Ant extends BaseWorldObject {
 		}
 				
 		if (canDrop ) {
-			BroodCluster broodCluster = ((World)world).getBroodCluster();
 			//if (world.getController().getTimeCounter() == 0 || world.getController().getTimeCounter() == CRSettings.getSingleton().getTimeUnitInterval()/2) {
 			//if (world.getController().getTimeCounter() % CRSettings.getSingleton().getTimeUnitInterval()/10 == 0 || feltResistance >=1 ) {
 				//double dropProbability = (resistanceMultiplier*Math.pow(feltResistance,3) + (1-resistanceMultiplier));
@@ -399,9 +481,9 @@ public class Ant extends BaseWorldObject {
 				double hormoneFactor;
                                 boolean useBrood = Settings.getSingleton().useBroodPheromones;
                                 if(useBrood)
-					hormoneFactor = broodCluster.getPheromoneConcentrationAt(position);
+					hormoneFactor = getBroodConcentration();
                                     else
-                                        hormoneFactor = ((World)world).getPheromoneConc(position);
+                                        hormoneFactor = getTemplateConcentration();
 				if (Settings.getSingleton().usePheromoneTemplate && useBrood && kind == KIND.EXTERNAL) {
                                     
 					//dropProbability = resistanceMultiplier*Math.pow(feltResistance,3)  + Math.pow(hormoneFactor,3);
@@ -419,7 +501,7 @@ public class Ant extends BaseWorldObject {
 				if (kind == KIND.PASSIVE) {
 					dropProbability = 1;
 				}
-				if (Math.random() <= dropProbability) {
+				if (random.nextDouble() <= dropProbability) {
 					//System.out.println(kind.toString() + " DROPPING with prob " + dropProbability + "  resistance " + feltResistance + "   hormone factor " + hormoneFactor + "  at " + position.toString());
 					//if (feltResistance >= 1) {
 					dropPushedObjects();
@@ -433,6 +515,85 @@ public class Ant extends BaseWorldObject {
 	
 	
 	
+	/**
+	 * Get brood pheromone concentration at own position, as sensed in a parallel update or measured now
+	 * @return double concentration
+	 */
+	protected double getBroodConcentration() {
+		if (hasSensed) {
+			return sensedBroodConcentration;
+		}
+		return measureBroodConcentration(null);
+	}
+	
+	/**
+	 * Get brood pheromone concentration and its gradient at own position, as sensed in a parallel update or measured now
+	 * @param gradient_ CRVector3d vector to store the gradient in, concentration per world unit
+	 * @return double concentration
+	 */
+	protected double getBroodConcentration(CRVector3d gradient_) {
+		if (hasSensed) {
+			gradient_.copyFrom(sensedBroodGradient);
+			return sensedBroodConcentration;
+		}
+		return measureBroodConcentration(gradient_);
+	}
+	
+	/**
+	 * Get concentration of the pheromone dropped by ants at own position, as sensed in a parallel update or measured now
+	 * @return double concentration
+	 */
+	protected double getTemplateConcentration() {
+		if (hasSensed) {
+			return sensedTemplateConcentration;
+		}
+		return measureTemplateConcentration();
+	}
+	
+	/**
+	 * Measure brood pheromone concentration at own position, from the brood channel of the pheromone if it has one
+	 * @param gradient_ CRVector3d vector to store the gradient in, or null if not needed
+	 * @return double concentration
+	 */
+	private double measureBroodConcentration(CRVector3d gradient_) {
+		World antWorld = (World)world;
+		if (antWorld.getBroodChannel() >= 0) {
+			if (gradient_ != null) {
+				return antWorld.getPheromoneConc(position, antWorld.getBroodChannel(), gradient_);
+			}
+			return measureConcentrations()[antWorld.getBroodChannel()];
+		}
+		if (gradient_ != null) {
+			return antWorld.getBroodCluster().getPheromoneConcentrationAt(position, gradient_);
+		}
+		return antWorld.getBroodCluster().getPheromoneConcentrationAt(position);
+	}
+	
+	/**
+	 * Measure concentration of the pheromone dropped by ants at own position, from the trail channel if the pheromone has a brood channel
+	 * @return double concentration
+	 */
+	private double measureTemplateConcentration() {
+		World antWorld = (World)world;
+		if (antWorld.getBroodChannel() >= 0) {
+			return measureConcentrations()[0];
+		}
+		return antWorld.getPheromoneConc(position);
+	}
+	
+	/**
+	 * Look up concentrations of all pheromone channels at own position
+	 * @return double[] concentrations by channel index
+	 */
+	private double[] measureConcentrations() {
+		World antWorld = (World)world;
+		if (pheromoneConcentrations == null || pheromoneConcentrations.length < antWorld.getPheromone().getNumOfChannels()) {
+			pheromoneConcentrations = new double[antWorld.getPheromone().getNumOfChannels()];
+		}
+		antWorld.getPheromoneConcs(position, pheromoneConcentrations);
+		return pheromoneConcentrations;
+	}
+	
 	/**
 	 * Set thrust force of all pushed stones (not ants) to 0 and clear the pushedObjects array.
 	 */
@@ -496,13 +657,19 @@ public class Ant extends BaseWorldObject {
 		double oldRotation = rotation;
 		super.setRotation(rotation_);
 		double change = rotation - oldRotation;
+		if (pushedObjects.size() <= 1) {
+			return;
+		}
+		//-- the whole chain turns by the same angle
+		double changeCos = Math.cos(Math.toRadians(change));
+		double changeSin = Math.sin(Math.toRadians(change));
 		for (BaseWorldObject pushedObject : pushedObjects) {
 			if (pushedObject.getClass() != Ant.class) {
 				pushedObject.setRotation(rotation_);
 				double distanceXDiff = position.x - pushedObject.getPosition().x;
 				double distanceYDiff = position.y - pushedObject.getPosition().y;
-				double deltaX = Math.cos(Math.toRadians(change))*distanceXDiff - Math.sin(Math.toRadians(change))*distanceYDiff;
-				double deltaY = Math.sin(Math.toRadians(change))*distanceXDiff + Math.cos(Math.toRadians(change))*distanceYDiff;
+				double deltaX = changeCos*distanceXDiff - changeSin*distanceYDiff;
+				double deltaY = changeSin*distanceXDiff + changeCos*distanceYDiff;
 				pushedObject.setPosition(new CRVector3d(position.x - deltaX, position.y - deltaY, 0));
 				((CRBinWorld)world).sortObjectToABin(pushedObject);
 				//System.out.println(this.id + "  rotating " + pushedObject.getId());
@@ -519,7 +686,7 @@ public class Ant extends BaseWorldObject {
 	protected void moveAwayFromDroppedObject(BaseWorldObject object_, boolean randomly_) {
 		int angleChange = 180;
 		if (randomly_) {
-			angleChange = CRMaths.getRandomInteger(140,180, true);
+			angleChange = random.getRandomInteger(140,180, true);
 		}
 		this.setRotation(rotation + angleChange);
 	}
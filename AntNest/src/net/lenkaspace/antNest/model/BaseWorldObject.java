@@ -28,21 +28,51 @@ public class BaseWorldObject extends CRBaseDynamicModel {
 	
 	/**
 	 * Find objects that should be pushed, i.e. which ones are attached
-	 * @param apartFromObjects_
-	 * @return
+	 * @param chainOfObjects_ ArrayList<BaseWorldObject> chain of pushed objects, starting with the pushing ant
 	 */
 	public void findPushedObjects(ArrayList<BaseWorldObject> chainOfObjects_) {
-		ArrayList<CRBaseSituatedModel> worldObjects = ((World)world).getSituatedModelsAroundPosition(position, size.y);
-		for (CRBaseSituatedModel situatedObject: worldObjects) {
+		findPushedObjects(chainOfObjects_, null);
+	}
+	
+	/**
+	 * Find objects that should be pushed, i.e. which ones are attached
+	 * @param chainOfObjects_ ArrayList<BaseWorldObject> chain of pushed objects, starting with the pushing ant
+	 * @param sensedObjects_ ArrayList<BaseWorldObject> objects found by senseObjectsAround() in the sense phase, or null to look at the world now
+	 */
+	public void findPushedObjects(ArrayList<BaseWorldObject> chainOfObjects_, ArrayList<BaseWorldObject> sensedObjects_) {
+		ArrayList<? extends CRBaseSituatedModel> worldObjects = sensedObjects_;
+		ArrayList<CRBaseSituatedModel> queryBuffer = null;
+		if (worldObjects == null) {
+			//-- pooled list, as the chain calls this recursively
+			queryBuffer = ((World)world).obtainQueryBuffer();
+			findObjectsAround(queryBuffer);
+			worldObjects = queryBuffer;
+		}
+		try {
+			findPushedObjectsAmong(chainOfObjects_, worldObjects);
+		} finally {
+			if (queryBuffer != null) {
+				((World)world).releaseQueryBuffer(queryBuffer);
+			}
+		}
+	}
+	
+	/**
+	 * Add objects that should be pushed from a list of candidates to the chain
+	 * @param chainOfObjects_ ArrayList<BaseWorldObject> chain of pushed objects, starting with the pushing ant
+	 * @param worldObjects_ ArrayList<? extends CRBaseSituatedModel> candidates
+	 */
+	private void findPushedObjectsAmong(ArrayList<BaseWorldObject> chainOfObjects_, ArrayList<? extends CRBaseSituatedModel> worldObjects_) {
+		for (int i=0; i<worldObjects_.size(); i++) {
+			CRBaseSituatedModel situatedObject = worldObjects_.get(i);
 			//-- find out of object is a stone or ant, if yes cast them to their common super class
 			if (situatedObject.getClass() == Ant.class || situatedObject.getClass() == Stone.class) {
 				BaseWorldObject worldObject = (BaseWorldObject) situatedObject;
+				//-- an object sensed by more than one chain goes to the first one that acts
 				if (!chainOfObjects_.contains(worldObject) && worldObject != this && worldObject.getIsBeingPushed() == false) {
-					//-- find out if colliding with stone and stone is ahead
-					CRVector3d relVectorToObject = this.getRelativeVectorTo(worldObject.getPosition());
-					boolean collidesWith = this.isCollidingWith(worldObject);
-							
-					if (collidesWith  && relVectorToObject.y > 0) { // && relVectorToObject.y > 0// && relVectorToObject.x <= maxPushAngleFraction //relVectorToObject.y > 0 && relVectorToObject.y < this.getSize().y / 2 + worldObject.getSize().y /2
+					//-- find out if colliding with stone and stone is ahead, always with current poses as
+					//-- chains that acted since the sense phase may have moved either object
+					if (isCollidingAhead(worldObject)) {
 	
 						//-- put the object right in front of self, in case it is a bit misaligned
 						//if (worldObject.getClass() != Ant.class) {
@@ -99,6 +129,50 @@ public class BaseWorldObject extends CRBaseDynamicModel {
 		}
 	}
 	
+	/**
+	 * Find stones and ants around this object that it may push, without changing anything.
+	 * Used in the sense phase of parallel updates; whether they collide ahead is checked when the chain acts.
+	 * @param sensedObjects_ ArrayList<BaseWorldObject> list to fill, its previous contents are discarded
+	 * @param queryBuffer_ ArrayList<CRBaseSituatedModel> list owned by the caller to use for the world query, as the world's buffers are not thread safe
+	 */
+	public void senseObjectsAround(ArrayList<BaseWorldObject> sensedObjects_, ArrayList<CRBaseSituatedModel> queryBuffer_) {
+		sensedObjects_.clear();
+		queryBuffer_.clear();
+		findObjectsAround(queryBuffer_);
+		for (int i=0; i<queryBuffer_.size(); i++) {
+			CRBaseSituatedModel situatedObject = queryBuffer_.get(i);
+			if (situatedObject.getClass() == Ant.class || situatedObject.getClass() == Stone.class) {
+				BaseWorldObject worldObject = (BaseWorldObject) situatedObject;
+				if (worldObject != this) {
+					sensedObjects_.add(worldObject);
+				}
+			}
+		}
+		queryBuffer_.clear();
+	}
+	
+	/**
+	 * Add stones and ants that may collide with this object to a list: contact candidates of the broad phase if it is used,
+	 * otherwise objects within own length
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the objects to
+	 */
+	private void findObjectsAround(ArrayList<CRBaseSituatedModel> result_) {
+		World antWorld = (World)world;
+		if (!antWorld.getContactCandidates(this, result_)) {
+			antWorld.getSituatedModelsAroundPosition(position, size.y, World.ANTS_AND_STONES, result_);
+		}
+	}
+	
+	/**
+	 * Find out if colliding with an object that is ahead
+	 * @param worldObject_ BaseWorldObject object
+	 * @return boolean
+	 */
+	protected boolean isCollidingAhead(BaseWorldObject worldObject_) {
+		CRVector3d relVectorToObject = this.getRelativeVectorTo(worldObject_.getPosition());
+		return this.isCollidingWith(worldObject_) && relVectorToObject.y > 0; // && relVectorToObject.x <= maxPushAngleFraction //relVectorToObject.y > 0 && relVectorToObject.y < this.getSize().y / 2 + worldObject.getSize().y /2
+	}
+	
 	/**
 	 * Triggered when an object was just added to the queue of pushed objects.
 	 * @param object_ BaseWorldObject object
@@ -120,6 +194,12 @@ public class BaseWorldObject extends CRBaseDynamicModel {
 	public double getResistance() { return resistance; }
 	
 	public boolean getIsBeingPushed() { return isBeingPushed; }
-	public void setIsBeingPushed(boolean val_) { isBeingPushed = val_; }
+	public void setIsBeingPushed(boolean val_) {
+		isBeingPushed = val_;
+		//-- objects that are pushed have to be updated
+		if (isBeingPushed && world != null) {
+			world.wakeDynamicModel(this);
+		}
+	}
 	
 }
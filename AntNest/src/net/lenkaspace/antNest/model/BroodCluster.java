@@ -1,17 +1,22 @@
 package net.lenkaspace.antNest.model;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import net.lenkaspace.antNest.Settings;
 import net.lenkaspace.antNest.model.Ant.KIND;
 import net.lenkaspace.creeper.helpers.CRMaths;
 import net.lenkaspace.creeper.model.CRBaseDynamicModel;
 import net.lenkaspace.creeper.model.CRBaseSituatedModel;
+import net.lenkaspace.creeper.model.CRField;
+import net.lenkaspace.creeper.model.CRGridField;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
 public class BroodCluster extends CRBaseDynamicModel {
 
 	private ArrayList<CRBaseSituatedModel> pheromoneClouds;
+	private HashSet<CRBaseSituatedModel> pheromoneCloudSet; //the same clouds, for isPheromoneCloud()
+	private CRGridField template; //concentrations at cell centres, set by rasterizeTemplate(), null to compute them from the clouds
 	
 	/**
 	 * Constructor.
@@ -27,6 +32,7 @@ public class BroodCluster extends CRBaseDynamicModel {
 		//-- create clouds:
 		Settings settings = Settings.getSingleton();
 		pheromoneClouds = new ArrayList<CRBaseSituatedModel>();
+		pheromoneCloudSet = new HashSet<CRBaseSituatedModel>();
 		int counter = 0;
 		for (CRVector3d pos : positions_) {
 			//-- check if size available
@@ -36,6 +42,7 @@ public class BroodCluster extends CRBaseDynamicModel {
 			}
 			CRBaseSituatedModel cloud = new CRBaseSituatedModel(1000 + counter, pos, siz, 0, CRBaseSituatedModel.SHAPE.CIRCLE, "cloud.png");
 			pheromoneClouds.add(cloud);
+			pheromoneCloudSet.add(cloud);
 			world_.addSituatedModel(cloud);
 			
 			//-- create passive ants in the middle of the pheromone cloud
@@ -59,27 +66,87 @@ public class BroodCluster extends CRBaseDynamicModel {
 	}
 	
 	public void onUpdateLoopStart() {
-		for (CRBaseSituatedModel cloud : pheromoneClouds) {
-			cloud.setIsVisible(Settings.getSingleton().showPheromone); 
-		}
 		super.onUpdateLoopStart();
 	}
 	
 	
 	
+	/**
+	 * Compute concentrations at the centres of the cells of a grid once, so that getPheromoneConcentrationAt()
+	 * interpolates between them instead of going through all clouds. Clouds don't move during a trial.
+	 * Interpolation smooths the tip and the edge of each cloud over a cell, so concentrations differ a little
+	 * from the exact ones there, e.g. they are slightly above 0 up to a cell outside of a cloud.
+	 * @param worldWidth_ double width of the world
+	 * @param worldHeight_ double height of the world
+	 * @param cellSize_ double side of a cell
+	 */
+	public void rasterizeTemplate(double worldWidth_, double worldHeight_, double cellSize_) {
+		template = new CRGridField(worldWidth_, worldHeight_, cellSize_);
+		rasterizeInto(template);
+		//-- the template doesn't change, so its sampling table stays valid for the whole trial
+		template.updateSamples();
+	}
+	
+	/**
+	 * Set every cell of a field to the concentration at its centre, e.g. to keep the brood pheromone in a channel of the pheromone field
+	 * @param field_ CRField field to fill
+	 */
+	public void rasterizeInto(CRField field_) {
+		double cellSize = field_.getCellSize();
+		for (int row=0; row<field_.getNumOfRows(); row++) {
+			for (int column=0; column<field_.getNumOfColumns(); column++) {
+				field_.set(row, column, computePheromoneConcentrationAt((column + 0.5) * cellSize, (row + 0.5) * cellSize, null));
+			}
+		}
+	}
+	
 	/**
 	 * Get hormone concentration at a specific location 
 	 * @param position_ CRVector3d at measured position
 	 * @return double concentration in range <0;1>
 	 */
 	public double getPheromoneConcentrationAt(CRVector3d position_) {
+		if (template != null) {
+			return template.sample(position_.x, position_.y);
+		}
+		return computePheromoneConcentrationAt(position_.x, position_.y, null);
+	}
+	
+	/**
+	 * Get hormone concentration at a specific location together with the direction in which it rises
+	 * @param position_ CRVector3d at measured position
+	 * @param gradient_ CRVector3d vector to store the gradient in, concentration per world unit
+	 * @return double concentration in range <0;1>
+	 */
+	public double getPheromoneConcentrationAt(CRVector3d position_, CRVector3d gradient_) {
+		if (template != null) {
+			return template.sample(position_.x, position_.y, gradient_);
+		}
+		return computePheromoneConcentrationAt(position_.x, position_.y, gradient_);
+	}
+	
+	/**
+	 * Compute hormone concentration at a specific location from all clouds
+	 * @param gradient_ CRVector3d vector to store the gradient in, or null
+	 */
+	private double computePheromoneConcentrationAt(double x_, double y_, CRVector3d gradient_) {
 		double returnVal = 0;
+		if (gradient_ != null) {
+			gradient_.x = 0;
+			gradient_.y = 0;
+			gradient_.z = 0;
+		}
 		for (CRBaseSituatedModel cloud : pheromoneClouds) {
-			double distance = Math.hypot(cloud.getPosition().x- position_.x, cloud.getPosition().y- position_.y);
+			double distance = Math.hypot(cloud.getPosition().x- x_, cloud.getPosition().y- y_);
 			double radius = cloud.getSize().x / 2;
 			if (distance <= radius ) {
 				//-- 1- (percentage of possible distance within circle), i.e. the closer to the middle the higher the concentration 
 				returnVal += 1-(distance/radius);
+				if (gradient_ != null && distance > 0) {
+					//-- rises by 1/radius per unit towards the middle
+					gradient_.x += (cloud.getPosition().x - x_) / (distance * radius);
+					gradient_.y += (cloud.getPosition().y - y_) / (distance * radius);
+				}
 			}
 		}
 		
@@ -94,7 +161,10 @@ public class BroodCluster extends CRBaseDynamicModel {
 		return returnVal;
 	}
 	
+	//==================================== GETTERS / SETTERS ====================================
 	
-	
+	public ArrayList<CRBaseSituatedModel> getPheromoneClouds() { return pheromoneClouds; }
+	public boolean isPheromoneCloud(CRBaseSituatedModel model_) { return pheromoneCloudSet.contains(model_); }
+	public CRGridField getTemplate() { return template; }
 
 }
@@ -8,112 +8,322 @@ package net.lenkaspace.antNest.model;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.util.concurrent.ForkJoinPool;
+import net.lenkaspace.creeper.model.CRDepositBuffer;
+import net.lenkaspace.creeper.model.CRField;
+import net.lenkaspace.creeper.model.CRFieldKernels;
+import net.lenkaspace.creeper.model.CRGridField;
+import net.lenkaspace.creeper.model.CRMultiField;
+import net.lenkaspace.creeper.model.CRSparseGridField;
+import net.lenkaspace.creeper.view.CRPaintSnapshot;
 import net.lenkaspace.creeper.vo.CRVector3d;
-import org.jblas.DoubleMatrix;
 
 /**
  *
  * @author Miles
  */
 public class Pheromone extends BaseWorldObject {
-    private final int actW = 660;
-    private final int gridW = 66;
-    private final int d = 10;
+    public static final double DEFAULT_CELL_SIZE = 10;
+    public static final double EVAPORATION_THRESHOLD = 1E-6; //concentration below which a sparse field may forget a cell
+    public static final String TRAIL_CHANNEL = "trail"; //channel of a multi-channel field that ants drop pheromone into
+    public static final String BROOD_CHANNEL = "brood"; //channel of a multi-channel field that World rasterizes the brood clouds into
     
     public double diffusion = 0.8;
     public double decay = 1.0 - 1E-3;
+    public double diffusionCoefficient = 0; //world units^2 per step spread by the stencil of a dense field, 0 spreads to the neighbours when dropped instead
     
     
-    DoubleMatrix conc = DoubleMatrix.zeros(66,66);
+    private final CRField conc;
+    private final CRMultiField channels; //null unless there are channels other than the trail
+    private final CRDepositBuffer deposits = new CRDepositBuffer(); //drops queued by queuePheromoneAct()
 
     public Pheromone() {
-        super(0, 0, new CRVector3d(0,0,0), new CRVector3d(660,660,0), 0, "");
+        this(660, 660, DEFAULT_CELL_SIZE, false);
+    }
+    
+    /**
+     * Constructor
+     * @param worldWidth_ double width of the world
+     * @param worldHeight_ double height of the world
+     * @param cellSize_ double side of a grid cell, in world units
+     * @param isSparse_ boolean true to store the grid in tiles that exist only where pheromone was dropped, for large worlds
+     */
+    public Pheromone(double worldWidth_, double worldHeight_, double cellSize_, boolean isSparse_) {
+        super(0, 0, new CRVector3d(0,0,0), new CRVector3d(worldWidth_,worldHeight_,0), 0, "");
+        isRenderedByImage = false;
+        if(isSparse_)
+            conc = new CRSparseGridField(worldWidth_, worldHeight_, cellSize_, EVAPORATION_THRESHOLD);
+        else
+            conc = new CRGridField(worldWidth_, worldHeight_, cellSize_);
+        channels = null;
+        addPheromoneGrid(conc.getRow(500), conc.getColumn(500), 0.5);
+    }
+    
+    /**
+     * Constructor of a dense field with several channels stored together, see CRMultiField. Ants drop pheromone
+     * into TRAIL_CHANNEL, the first channel. Other channels decay like the trail and don't diffuse until set
+     * otherwise by setChannelRates().
+     * @param worldWidth_ double width of the world
+     * @param worldHeight_ double height of the world
+     * @param cellSize_ double side of a grid cell, in world units
+     * @param otherChannelNames_ String[] names of the channels after the trail
+     */
+    public Pheromone(double worldWidth_, double worldHeight_, double cellSize_, String[] otherChannelNames_) {
+        super(0, 0, new CRVector3d(0,0,0), new CRVector3d(worldWidth_,worldHeight_,0), 0, "");
         isRenderedByImage = false;
-        addPheromoneGrid(50, 50, 0.5);
+        String[] channelNames = new String[otherChannelNames_.length + 1];
+        channelNames[0] = TRAIL_CHANNEL;
+        System.arraycopy(otherChannelNames_, 0, channelNames, 1, otherChannelNames_.length);
+        channels = new CRMultiField(worldWidth_, worldHeight_, cellSize_, channelNames);
+        for(int k = 0; k < channels.getNumOfChannels(); k++)
+            channels.setDecay(k, decay);
+        conc = channels.getChannel(0);
+        addPheromoneGrid(conc.getRow(500), conc.getColumn(500), 0.5);
     }
 
     public double getGradient(int x, int y) {
         int i,j;
-        i = Math.round(y / d);
-        j = Math.round(x / d);
-        if(i > 0 & i < gridW-1 & j > 0 & j < gridW-1)
+        i = conc.getRow(y);
+        j = conc.getColumn(x);
+        if(conc.isInterior(i, j))
             return conc.get(i,j);
         return 0.0;
     }
     
+    /**
+     * Get concentrations of all channels at a position, bilinearly interpolated, in one lookup
+     * @param x x position
+     * @param y y position
+     * @param result array at least getNumOfChannels() long, to store the concentrations in, by channel index
+     */
+    public void sampleChannels(double x, double y, double[] result) {
+        if(channels != null) {
+            channels.sample(x, y, result);
+            return;
+        }
+        result[0] = conc.sample(x, y, new CRVector3d(0,0,0));
+    }
+    
+    /**
+     * Get concentration of one channel at a position, bilinearly interpolated, together with its gradient
+     * @param x x position
+     * @param y y position
+     * @param channel channel index
+     * @param gradient vector to store the gradient in, concentration per world unit
+     * @return double interpolated concentration
+     */
+    public double sampleChannel(double x, double y, int channel, CRVector3d gradient) {
+        if(channels != null)
+            return channels.getChannel(channel).sample(x, y, gradient);
+        return conc.sample(x, y, gradient);
+    }
+    
+    public int getNumOfChannels() {
+        return channels != null ? channels.getNumOfChannels() : 1;
+    }
+    
+    /**
+     * Get index of a channel
+     * @param name channel name
+     * @return int index, -1 if there is no such channel
+     */
+    public int getChannelIndex(String name) {
+        if(channels != null)
+            return channels.getChannelIndex(name);
+        return TRAIL_CHANNEL.equals(name) ? 0 : -1;
+    }
+    
+    /**
+     * Set how fast a channel other than the trail decays and diffuses. The trail uses decay and diffusionCoefficient.
+     * @param channel channel index
+     * @param channelDecay factor applied every step
+     * @param channelDiffusionCoefficient world units^2 per step
+     */
+    public void setChannelRates(int channel, double channelDecay, double channelDiffusionCoefficient) {
+        channels.setDecay(channel, channelDecay);
+        channels.setDiffusionRate(channel, channelDiffusionCoefficient / (conc.getCellSize() * conc.getCellSize()));
+    }
+    
     public void addPheromoneAct(int x, int y) {
         int i,j;
-        i = (int) Math.round(Math.floor(y / d));
-        j = (int) Math.round(Math.floor(x / d));
-        if(i==66 | j==66)
-            System.out.println("");
-        if(i > 0 & i < gridW-1 & j > 0 & j < gridW-1)
+        i = conc.getRow(y);
+        j = conc.getColumn(x);
+        if(conc.isInterior(i, j))
             addPheromoneGrid(i, j, 0.5);
     }
     
+    /**
+     * Queue a drop at a position, the same as addPheromoneAct() does. Queued drops are added to the field in one
+     * pass by addQueuedPheromone(), in the order they were queued.
+     * @param x x position
+     * @param y y position
+     */
+    public void queuePheromoneAct(int x, int y) {
+        int i,j;
+        i = conc.getRow(y);
+        j = conc.getColumn(x);
+        if(!conc.isInterior(i, j))
+            return;
+        queuePheromone(i, j, 0.5);
+        if(diffusionCoefficient <= 0) {
+            //put around center
+            queuePheromone(i-1,j,0.5* diffusion);
+            queuePheromone(i,j-1,0.5* diffusion);
+            queuePheromone(i+1,j,0.5* diffusion);
+            queuePheromone(i,j+1,0.5* diffusion);
+        }
+    }
+    
+    /**
+     * Add all drops queued by queuePheromoneAct() to the field
+     */
+    public void addQueuedPheromone() {
+        if(deposits.isEmpty())
+            return;
+        conc.add(deposits, 1.0);
+        deposits.clear();
+    }
+    
+    private void queuePheromone(int i, int j, double amount) {
+        if(conc.isInside(i, j))
+            deposits.add(i * conc.getNumOfColumns() + j, amount);
+    }
+    
     public void addPheromoneGrid(int i, int j, double amount) {
         addPheromone(i, j, amount);
         
-        if(amount > 0.01) {
+        if(amount > 0.01 && diffusionCoefficient <= 0) {
             //put around center
-            if(i > 0)
-                addPheromone(i-1,j,amount* diffusion);
-            if(j > 0)
-                addPheromone(i,j-1,amount* diffusion);
-            if(i < gridW)
-                addPheromone(i+1,j,amount* diffusion);
-            if(j < gridW)
-                addPheromone(i,j+1,amount* diffusion);
+            addPheromone(i-1,j,amount* diffusion);
+            addPheromone(i,j-1,amount* diffusion);
+            addPheromone(i+1,j,amount* diffusion);
+            addPheromone(i,j+1,amount* diffusion);
         }
     }
     
     private void addPheromone(int i, int j, double amount) {
-        double newAmount = conc.get(i,j) + amount;
-        
-        if (newAmount > 1.0)
-            newAmount = 1.0;
-        
-        conc.put(i,j,newAmount);
+        if(conc.isInside(i, j))
+            conc.add(i, j, amount, 1.0);
     }
     
     public void step() {
-        //decay
-        conc.muli(decay);
+        step(null);
+    }
+    
+    /**
+     * Decay, and diffuse if diffusionCoefficient is set. Diffusion is split into as many stencil steps as needed
+     * to keep each of them stable, the last one applies the decay.
+     * @param pool ForkJoinPool threads for large grids, or null
+     */
+    public void step(ForkJoinPool pool) {
+        if(channels != null) {
+            //all channels at once, the trail with the current rates
+            channels.setDecay(0, decay);
+            channels.setDiffusionRate(0, diffusionCoefficient / (conc.getCellSize() * conc.getCellSize()));
+            channels.step(pool);
+            return;
+        }
+        if(!(conc instanceof CRGridField)) {
+            //decay, releasing evaporated tiles
+            conc.multiply(decay);
+            return;
+        }
+        CRGridField grid = (CRGridField) conc;
+        if(diffusionCoefficient <= 0) {
+            //decay
+            if(grid.getIsDecayLazy())
+                grid.advance();
+            else
+                grid.multiply(decay);
+            return;
+        }
+        double rate = diffusionCoefficient / (grid.getCellSize() * grid.getCellSize());
+        int substeps = (int) Math.ceil(rate / CRGridField.MAX_STABLE_RATE);
+        for(int s = 0; s < substeps; s++)
+            grid.diffuseAndDecay(rate / substeps, s == substeps - 1 ? decay : 1.0, pool);
+    }
+    
+    /**
+     * Switch lazy decay of a dense field on or off, see CRGridField.setIsDecayLazy(). Uses the current decay, and
+     * only saves time while diffusionCoefficient is 0, as diffusion updates every cell anyway.
+     * @param useLazyDecay true to decay cells when they are read or written only
+     */
+    public void setUseLazyDecay(boolean useLazyDecay) {
+        if(conc instanceof CRGridField)
+            ((CRGridField) conc).setIsDecayLazy(useLazyDecay, decay);
     }
     
+    public CRField getField() { return conc; }
+    public CRMultiField getChannels() { return channels; }
+    
 
     public void paint(Graphics grphcs) {
+        double[] values = new double[conc.getNumOfCells()];
+        conc.copyTo(values);
+        paintGrid(grphcs, values, new double[values.length], conc.getNumOfRows(), conc.getNumOfColumns());
+    }
+    
+    /**
+     * Copy the concentrations into a snapshot that can be painted by the rendering thread
+     * @param reusableSnapshot_ CRPaintSnapshot snapshot from a previous frame, reused if it is a PheromoneSnapshot
+     * @return CRPaintSnapshot
+     */
+    @Override
+    public CRPaintSnapshot createPaintSnapshot(CRPaintSnapshot reusableSnapshot_) {
+        PheromoneSnapshot snapshot;
+        if (reusableSnapshot_ instanceof PheromoneSnapshot) {
+            snapshot = (PheromoneSnapshot)reusableSnapshot_;
+        } else {
+            snapshot = new PheromoneSnapshot();
+        }
+        snapshot.copy(conc);
+        return snapshot;
+    }
+    
+    /**
+     * Paint concentrations and grid lines
+     * @param grphcs Graphics object
+     * @param values concentrations row by row, as copied by CRField.copyTo()
+     * @param alphas array as long as values, to map the concentrations to colour alphas in
+     * @param rows number of grid rows
+     * @param columns number of grid columns
+     */
+    private void paintGrid(Graphics grphcs, double[] values, double[] alphas, int rows, int columns) {
         
         Graphics2D g2 = (Graphics2D)grphcs;
+        CRFieldKernels.getDefault().scaleAndClamp(values, alphas, 0, rows * columns, 2.0, 1.0);
+        double d = conc.getCellSize();
+        int cellW = (int)Math.round(d);
+        int actW = (int)Math.round(columns * d);
+        int actH = (int)Math.round(rows * d);
         
-        for(int i = 0; i < conc.rows; i++) {
-            for(int j = 0; j < conc.columns; j++) {
-                if(conc.get(i,j) > 0) {
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < columns; j++) {
+                double value = values[i * columns + j];
+                if(value > 0) {
                     int x,y;
-                    x = d * j;
-                    y = d * i;
-                    float cVal = (float) conc.get(i,j);
-                    float alpha = cVal * 2f;
-                    if (alpha > 1f)
-                        alpha = 1f;
+                    x = (int)Math.round(d * j);
+                    y = (int)Math.round(d * i);
+                    float cVal = (float) value;
+                    float alpha = (float) alphas[i * columns + j];
                     g2.setColor(new Color(
                             1f,1f,1f  - cVal ,alpha
                     ));
-                    g2.fillRect(x+1, y+1, d-1, d-1);
+                    g2.fillRect(x+1, y+1, cellW-1, cellW-1);
                 }
             }
         }
         
         g2.setColor(new Color(230,230,230));
-        for(int x = 1; x < gridW;x++) {
+        for(int x = 1; x < columns;x++) {
             g2.drawLine(
                     (int)Math.round((float)x * d),
                     0, 
                     (int)Math.round((float)x * d), 
-                    actW
+                    actH
             );
         }
-        for(int y = 1; y < gridW; y++) {
+        for(int y = 1; y < rows; y++) {
             g2.drawLine(
                     0,
                     (int)Math.round((float)y * d),
@@ -124,10 +334,34 @@ public class Pheromone extends BaseWorldObject {
         
     }
 
+    /**
+     * Concentrations at one time step, painted the same way as the Pheromone itself
+     */
+    private class PheromoneSnapshot implements CRPaintSnapshot {
+        private double[] values = new double[0];
+        private double[] alphas = new double[0];
+        private int rows;
+        private int columns;
+        
+        private void copy(CRField field) {
+            rows = field.getNumOfRows();
+            columns = field.getNumOfColumns();
+            if (values.length != field.getNumOfCells()) {
+                values = new double[field.getNumOfCells()];
+                alphas = new double[values.length];
+            }
+            field.copyTo(values);
+        }
+        
+        public void paint(Graphics g_) {
+            paintGrid(g_, values, alphas, rows, columns);
+        }
+    }
+
     @Override
     public void update() {
         super.update(); 
-        step();
+        step(world != null ? world.getUpdatePool() : null);
     }
     
     
@@ -1,6 +1,5 @@
 package net.lenkaspace.antNest.model;
 
-import net.lenkaspace.antNest.Settings;
 import net.lenkaspace.creeper.view.CRRenderer;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
@@ -9,11 +8,11 @@ public class Stone extends BaseWorldObject {
 	public Stone(int id_, CRVector3d pos_) {
 		super(0.15, id_, pos_, new CRVector3d(2,2,0), 0, CRRenderer.CR_GRAY_DOT);
 		this.maxSpeed = 2;
+		spatialLayer = World.STONE_LAYER;
 	}
 	
 	
 	public void onUpdateLoopStart() {
-		isVisible = Settings.getSingleton().showStones;
 		this.thrustForce = 0;
 		super.onUpdateLoopStart();
 	}
@@ -25,6 +24,14 @@ public class Stone extends BaseWorldObject {
 	}
 	
 	
+	/**
+	 * Stones that lie still don't need to be updated. Being picked up wakes them.
+	 */
+	public boolean canSleep() {
+		return !getIsBeingPushed();
+	}
+	
+	
 	public void adjustPositionInBorderlessWorld() {
 		// ant will do this for the stone if it is being pushed to prevent irregularities
 	}
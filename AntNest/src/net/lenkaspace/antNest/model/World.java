@@ -6,6 +6,7 @@ import net.lenkaspace.antNest.Settings;
 import net.lenkaspace.antNest.model.Ant.KIND;
 import net.lenkaspace.creeper.CRController;
 import net.lenkaspace.creeper.helpers.CRMaths;
+import net.lenkaspace.creeper.model.CRBaseSituatedModel;
 import net.lenkaspace.creeper.model.CRBinWorld;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
@@ -22,10 +23,24 @@ public class World extends CRBinWorld {
 	public static final String TWO_VERT_CLUSTERS = "Rectangle - vertical";
 	public static final String SQUARE_WORLD = "Square";
 	
+	public static final String[] WORLD_NAMES = {TEST_WORLD, FOUR_SITES_WORLD, TEST_EXTERNAL_WORLD, TEST_EXTERNAL_RANDOM_WORLD, TEST_INTERNAL_WORLD,
+			RANDOM_WORLD, TRIANGLE_WORLD, TWO_HORIZ_CLUSTERS, TWO_VERT_CLUSTERS, SQUARE_WORLD};
+	
+	//-- spatial layers of the bins, pheromone and brood clouds stay in layer 0
+	public static final int ANT_LAYER = 1;
+	public static final int STONE_LAYER = 2;
+	public static final int ANTS_AND_STONES = (1 << ANT_LAYER) | (1 << STONE_LAYER);
+	
 	private ArrayList<Stone> stones;
 	private ArrayList<Ant> ants;
 	private BroodCluster broodCluster;
         private Pheromone pheromone;
+        private int broodChannel; //channel of the pheromone that holds the brood clouds, -1 if the pheromone has no channels
+	private boolean useGradientSteering; //Settings.useGradientSteering read at trial start, for the sense phase that runs on threads not bound to the settings
+	
+	private boolean showAnts; //display settings read at the start of each snapshot
+	private boolean showStones;
+	private boolean showPheromone;
 	
 	public World(CRController controller_) {
 		super(new CRVector3d(25,25,0), 0, new CRVector3d(660,660,0), controller_);
@@ -43,9 +58,10 @@ public class World extends CRBinWorld {
 	 * @param runNumber_ int current run number
 	 */
 	public void onTrialStart(int trialNumber_, int runNumber_) {
+		Settings settings = Settings.getSingleton();
+		setSpatialIndex(settings.spatialIndex, settings.spatialIndexCellSize);
 		this.clearChildren();
 		
-		Settings settings = Settings.getSingleton();
 		String currentWorld = settings.currentWorld;
 		
 		//-- create brood cluster
@@ -102,10 +118,36 @@ public class World extends CRBinWorld {
 		}
 		
 		
+		useGradientSteering = settings.useGradientSteering;
 		broodCluster = new BroodCluster(positions,sizes, this);
 		this.addDynamicModel(broodCluster);
+		if (settings.broodTemplateCellSize > 0 && settings.pheromoneChannels.isEmpty()) {
+			broodCluster.rasterizeTemplate(size.x, size.y, settings.broodTemplateCellSize);
+		}
 		
-                pheromone = new Pheromone();
+		if (settings.getConflict() != null) {
+			System.err.println("World - " + settings.getConflict());
+		}
+                if(settings.pheromoneChannels.isEmpty()) {
+                    pheromone = new Pheromone(size.x, size.y, settings.pheromoneCellSize, settings.useSparsePheromone);
+                    broodChannel = -1;
+                } else {
+                    //brood clouds go into a channel after the trail, so that ants read all pheromones in one lookup
+                    String[] channelNames = settings.pheromoneChannels.split(",");
+                    String[] otherChannelNames = new String[channelNames.length + 1];
+                    otherChannelNames[0] = Pheromone.BROOD_CHANNEL;
+                    System.arraycopy(channelNames, 0, otherChannelNames, 1, channelNames.length);
+                    pheromone = new Pheromone(size.x, size.y, settings.pheromoneCellSize, otherChannelNames);
+                    broodChannel = pheromone.getChannelIndex(Pheromone.BROOD_CHANNEL);
+                    pheromone.setChannelRates(broodChannel, 1, 0);
+                    broodCluster.rasterizeInto(pheromone.getChannels().getChannel(broodChannel));
+                    double[] decays = Settings.parseNumbers(settings.pheromoneChannelDecays);
+                    double[] diffusions = Settings.parseNumbers(settings.pheromoneChannelDiffusions);
+                    for(int i = 0; i < channelNames.length; i++)
+                        pheromone.setChannelRates(broodChannel + 1 + i, i < decays.length ? decays[i] : pheromone.decay, i < diffusions.length ? diffusions[i] : 0);
+                }
+                pheromone.diffusionCoefficient = settings.pheromoneDiffusion;
+                pheromone.setUseLazyDecay(settings.useLazyPheromoneDecay);
                 pheromone.setIsVisible(true);
                 this.addSituatedModel(pheromone);
 
@@ -271,6 +313,18 @@ public class World extends CRBinWorld {
 			
 		}
 		
+		//-- pushed objects are searched for within the length of an ant
+		double queryRadius = 0;
+		for (Ant ant : ants) {
+			queryRadius = Math.max(queryRadius, ant.getSize().y);
+		}
+		if (queryRadius > 0) {
+			setQueryRadiusHint(queryRadius);
+		}
+		setAutoTuneCellSize(settings.spatialIndexCellSize <= 0);
+		//-- an ant turning on the spot stays within half its length, objects moved further by turning chains or
+		//-- wrapped around the world are sorted to a bin, which lets the broad phase match them at query time
+		setUseBroadPhase(settings.useBroadPhase, getQueryRadiusHint() / 2, ANTS_AND_STONES);
 		
 		super.onTrialStart(trialNumber_, runNumber_);
 	}
@@ -319,22 +373,96 @@ public class World extends CRBinWorld {
     @Override
     public void update() {
         super.update();
-        for(Ant ant : ants)
+        //-- drop pheromone where the ants ended up, pushed ants included, in one pass over the field
+        for(int i = 0; i < ants.size(); i++) {
+            Ant ant = ants.get(i);
             if(ant.isDroppingPheromone)
-                pheromone.addPheromoneAct((int)Math.round(ant.getPosition().x), (int)Math.round(ant.getPosition().y));
+                pheromone.queuePheromoneAct((int)Math.round(ant.getPosition().x), (int)Math.round(ant.getPosition().y));
+        }
+        pheromone.addQueuedPheromone();
         pheromone.update();
     }
 	
     public double getPheromoneConc(CRVector3d location) {
         return pheromone.getGradient(Math.round((float) location.x), (int) Math.round(location.y));
     }
-	
+    
+    /**
+     * Get concentration of one pheromone channel at a location, bilinearly interpolated, together with the direction in which it rises
+     * @param location CRVector3d location
+     * @param channel int channel index, e.g. getBroodChannel()
+     * @param gradient CRVector3d vector to store the gradient in, concentration per world unit
+     * @return double concentration
+     */
+    public double getPheromoneConc(CRVector3d location, int channel, CRVector3d gradient) {
+        return pheromone.sampleChannel(location.x, location.y, channel, gradient);
+    }
+    
+    /**
+     * Get concentrations of all pheromone channels at a location in one lookup, the trail first. The trail is read
+     * as getPheromoneConc() reads it, from the nearest cell and 0 on the border, so that adding channels doesn't change
+     * what ants sense of it. Other channels are bilinearly interpolated.
+     * @param location CRVector3d location
+     * @param result double[] array at least getPheromone().getNumOfChannels() long
+     */
+    public void getPheromoneConcs(CRVector3d location, double[] result) {
+        pheromone.sampleChannels(location.x, location.y, result);
+        result[0] = getPheromoneConc(location);
+    }
+
+
+	//==================================== SNAPSHOTS ====================================
+
+	/**
+	 * Read display settings once per snapshot, so that they can change while the simulation is running
+	 */
+	protected void onSnapshotStart() {
+		Settings settings = Settings.getSingleton();
+		showAnts = settings.showAnts;
+		showStones = settings.showStones;
+		showPheromone = settings.showPheromone;
+	}
+
+	/**
+	 * Apply display settings to ants, stones and brood pheromone clouds
+	 * @param situatedModel_ CRBaseSituatedModel model
+	 * @return boolean true if the model should be rendered
+	 */
+	protected boolean isVisibleInSnapshot(CRBaseSituatedModel situatedModel_) {
+		if (situatedModel_ instanceof Ant) {
+			return showAnts;
+		} else if (situatedModel_ instanceof Stone) {
+			return showStones;
+		} else if (broodCluster != null && broodCluster.isPheromoneCloud(situatedModel_)) {
+			return showPheromone;
+		}
+		return super.isVisibleInSnapshot(situatedModel_);
+	}
+
 	
 	//==================================== GETTERS / SETTERS ====================================
 	
+	/**
+	 * Find the world name constant with the same text. World names are compared by reference,
+	 * so a name read from a file or command line has to be converted before it is used.
+	 * @param worldName_ String world name
+	 * @return String one of the world name constants, or null if there is no such world
+	 */
+	public static String getWorldName(String worldName_) {
+		for (String worldName : WORLD_NAMES) {
+			if (worldName.equals(worldName_)) {
+				return worldName;
+			}
+		}
+		return null;
+	}
+	
 	public ArrayList<Stone> getStones() { return stones; }
 	public ArrayList<Ant> getAnts() { return ants; }
 	public BroodCluster getBroodCluster() { return broodCluster; }
+	public Pheromone getPheromone() { return pheromone; }
+	public int getBroodChannel() { return broodChannel; }
+	public boolean isUsingGradientSteering() { return useGradientSteering; }
 	
 	
 
@@ -13,6 +13,7 @@ public class ReportController extends CRReportController {
 
 	public static String REPORT_WORLD_SNAPSHOT = "World";
 	public static String REPORT_PUSHING_TIME = "External ant pushing time";
+	public static String REPORT_TRIAL_METRICS = "Trial metrics";
 	
 	public ReportController(CRController controller_) {
 		super(controller_);
@@ -0,0 +1,117 @@
+package net.lenkaspace.antNest.report;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+import net.lenkaspace.antNest.model.BroodCluster;
+import net.lenkaspace.antNest.model.Stone;
+import net.lenkaspace.antNest.model.World;
+import net.lenkaspace.creeper.model.CRBaseSituatedModel;
+import net.lenkaspace.creeper.report.CRBaseReport;
+import net.lenkaspace.creeper.report.CRTimeSeriesReport;
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * Summarises each trial in one row of numbers: final stone distribution and external ant pushing time.
+ * Rows are kept in memory and used by the parameter sweep to build a results table. Doesn't display or save anything.
+ */
+public class TrialMetricsReport extends CRBaseReport {
+
+	private List<Map<String, String>> rows;
+
+	/**
+	 * Constructor
+	 * @param title_ String title of the report
+	 */
+	public TrialMetricsReport(String title_) {
+		super(title_, null, false);
+		rows = new ArrayList<Map<String, String>>();
+	}
+
+	//==================================== SIMULATION EVENTS ====================================
+
+	public void onSimulationStart() {
+		rows.clear();
+	}
+
+	/**
+	 * Called by CRController each time a trial ends.
+	 * Measures where the stones are and adds a new row.
+	 * @param trialNumber_ int ending trial number
+	 * @param runNumber_ int current run number
+	 */
+	public void onTrialEnd(int trialNumber_, int runNumber_) {
+		World world = (World)controller.getWorld();
+		Map<String, String> row = new LinkedHashMap<String, String>();
+		row.put("trial", String.valueOf(trialNumber_));
+
+		//-- stones: distance to the middle of the world and to the edge of the nearest brood cloud
+		CRVector3d worldCenter = new CRVector3d(world.getSize().x/2,world.getSize().y/2,0);
+		List<CRBaseSituatedModel> clouds = new ArrayList<CRBaseSituatedModel>();
+		BroodCluster broodCluster = world.getBroodCluster();
+		if (broodCluster != null) {
+			clouds.addAll(broodCluster.getPheromoneClouds());
+		}
+		DescriptiveStatistics centreDistances = new DescriptiveStatistics();
+		DescriptiveStatistics broodDistances = new DescriptiveStatistics();
+		int numOfStonesInsideBrood = 0;
+		for (Stone stone : world.getStones()) {
+			CRVector3d position = stone.getPosition();
+			centreDistances.addValue(Math.hypot(position.x - worldCenter.x, position.y - worldCenter.y));
+			if (clouds.size() > 0) {
+				//-- negative inside a cloud
+				double nearestEdgeDistance = Double.MAX_VALUE;
+				for (CRBaseSituatedModel cloud : clouds) {
+					double edgeDistance = Math.hypot(position.x - cloud.getPosition().x, position.y - cloud.getPosition().y) - cloud.getSize().x/2;
+					nearestEdgeDistance = Math.min(nearestEdgeDistance, edgeDistance);
+				}
+				broodDistances.addValue(nearestEdgeDistance);
+				if (nearestEdgeDistance < 0) {
+					numOfStonesInsideBrood++;
+				}
+			}
+		}
+		row.put("stones", String.valueOf(world.getStones().size()));
+		row.put("stoneCentreDistanceMean", formatStatistic(centreDistances.getN(), centreDistances.getMean()));
+		row.put("stoneCentreDistanceSd", formatStatistic(centreDistances.getN(), centreDistances.getStandardDeviation()));
+		row.put("stoneCentreDistanceMedian", formatStatistic(centreDistances.getN(), centreDistances.getPercentile(50)));
+		row.put("stoneBroodEdgeDistanceMean", formatStatistic(broodDistances.getN(), broodDistances.getMean()));
+		row.put("stoneBroodEdgeDistanceSd", formatStatistic(broodDistances.getN(), broodDistances.getStandardDeviation()));
+		row.put("stonesInsideBroodFraction", formatStatistic(broodDistances.getN(), numOfStonesInsideBrood / (double)Math.max(broodDistances.getN(), 1)));
+
+		//-- pushing time of external ants
+		DescriptiveStatistics pushingTimes = ((CRTimeSeriesReport)reportController.getReport(ReportController.REPORT_PUSHING_TIME)).getTrialStatistics(0);
+		row.put("pushingTimeN", String.valueOf(pushingTimes.getN()));
+		row.put("pushingTimeMean", formatStatistic(pushingTimes.getN(), pushingTimes.getMean()));
+		row.put("pushingTimeSd", formatStatistic(pushingTimes.getN(), pushingTimes.getStandardDeviation()));
+		row.put("pushingTimeMedian", formatStatistic(pushingTimes.getN(), pushingTimes.getPercentile(50)));
+		row.put("pushingTimeMax", formatStatistic(pushingTimes.getN(), pushingTimes.getMax()));
+
+		rows.add(row);
+	}
+
+	/**
+	 * Format a statistic, or return an empty string if there were no values
+	 * @param n_ long number of values
+	 * @param value_ double statistic
+	 * @return String
+	 */
+	private static String formatStatistic(long n_, double value_) {
+		if (n_ == 0 || Double.isNaN(value_)) {
+			return "";
+		}
+		return String.valueOf(value_);
+	}
+
+	//==================================== GETTERS / SETTERS ====================================
+
+	/**
+	 * Get one row of metrics per finished trial of the current simulation
+	 * @return List<Map<String, String>> rows, column name -> value
+	 */
+	public List<Map<String, String>> getRows() { return rows; }
+}
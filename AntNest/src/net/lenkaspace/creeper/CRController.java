@@ -3,12 +3,15 @@ package net.lenkaspace.creeper;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.Timer;
 
+import net.lenkaspace.creeper.helpers.CRRandom;
 import net.lenkaspace.creeper.images.CRImageProvider;
 import net.lenkaspace.creeper.model.CRWorld;
 import net.lenkaspace.creeper.report.CRReportController;
@@ -20,7 +23,8 @@ import net.lenkaspace.creeper.vo.CRVector3d;
 
 /**
  * The main controller holding all the parts together.
- * Maintains the main update loop and other threads
+ * Maintains the main update loop and other threads.
+ * Can also run without any GUI, see runHeadless()
  * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
@@ -42,21 +46,48 @@ public class CRController implements Runnable  {
 	//-- time, runs, trials
 	protected int timeCounter; 
 	protected int timeUnits;
-	protected int updateDelay;
+	protected volatile int updateDelay;		//target time between two update loops (ms), i.e. the fixed time step, set by the UI thread
 	protected int trialNumber;
 	protected int totalTrials;
 	protected int trialDuration;
 	protected int runNumber;
 	protected int totalRuns;
+	protected int firstRunNumber = 1;
+	protected long randomSeed;
+	
+	//-- headless execution
+	protected boolean isHeadless;			//if true, no window, renderer, timers or output popup are created
+	protected boolean isSimulationFinished;
+	protected long tickCounter;				//number of update loops executed since the simulation started
+	protected int progressInterval;			//how often (ms) runHeadless() prints progress. 0 = never
+	
+	//-- tick rate
+	protected static final long MAX_TICK_LAG = 250000000L;	//if the update thread falls behind by more than this (ns), it stops trying to catch up
+	protected double achievedTickRate;
+	protected long tickRateWindowStartTime;
+	protected long tickRateWindowStartTicks;
 	
 	/**
 	 * Constructor
 	 * @param applicationName_ Name of the application that will appear on the application window
 	 */
 	public CRController(String applicationName_) { 
-		mainFrame = new JFrame();
-		mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		mainFrame.setTitle(applicationName_);
+		this(applicationName_, false);
+	}
+	
+	/**
+	 * Constructor
+	 * @param applicationName_ Name of the application that will appear on the application window
+	 * @param isHeadless_ boolean if true, no GUI is created and the simulation is driven by runHeadless()
+	 */
+	public CRController(String applicationName_, boolean isHeadless_) { 
+		isHeadless = isHeadless_;
+		progressInterval = 5000;
+		if (!isHeadless) {
+			mainFrame = new JFrame();
+			mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			mainFrame.setTitle(applicationName_);
+		}
         
 		//-- tell CRSettings init hasn't been completed yet
 		CRSettings settings = CRSettings.getSingleton();
@@ -69,20 +100,22 @@ public class CRController implements Runnable  {
 			totalTrials = 1;
 			
 	        //-- create UI
-	        try {
-	        	mainFrame.getContentPane().setBounds(0, 0, settings.getWindowSize().width, settings.getWindowSize().height);
-	        	mainFrame.setSize(settings.getWindowSize().width, settings.getWindowSize().height);
-	        	mainFrame.setLayout(new FlowLayout(FlowLayout.LEFT, 10, 10));        
-		        
-		    	//--- create renderer:
-		    	renderer = new CRRenderer();
-		    	mainFrame.add("West", renderer);
-		       
-		        //--- create controls panel on the right:
-		    	controlPanelPlaceHolder = CRComponentFactory.createFlowLayoutJPanel(485, 620, mainFrame);
-	        } catch (Exception e) {
-	            System.err.println("Cannot initialise GUI");
-	        }
+			if (!isHeadless) {
+		        try {
+		        	mainFrame.getContentPane().setBounds(0, 0, settings.getWindowSize().width, settings.getWindowSize().height);
+		        	mainFrame.setSize(settings.getWindowSize().width, settings.getWindowSize().height);
+		        	mainFrame.setLayout(new FlowLayout(FlowLayout.LEFT, 10, 10));        
+			        
+			    	//--- create renderer:
+			    	renderer = new CRRenderer();
+			    	mainFrame.add("West", renderer);
+			       
+			        //--- create controls panel on the right:
+			    	controlPanelPlaceHolder = CRComponentFactory.createFlowLayoutJPanel(485, 620, mainFrame);
+		        } catch (Exception e) {
+		            System.err.println("Cannot initialise GUI");
+		        }
+			}
 	       
 	        //-- create reference to basic image provider
 	        imageProvider = new CRImageProvider();
@@ -93,13 +126,17 @@ public class CRController implements Runnable  {
 	        
 	        //-- create basic world and set it to renderer
 	        world = new CRWorld(0, new CRVector3d(700,650,0), this);
-	        renderer.setWorld(world);
-	        
-	        //-- create control panel
-	        createDefaultControlPanel();
+	        if (renderer != null) {
+	        	renderer.setWorld(world);
+	        }
 	        
-	        //-- show the ui
-	        mainFrame.setVisible(true);
+	        if (!isHeadless) {
+		        //-- create control panel
+		        createDefaultControlPanel();
+		        
+		        //-- show the ui
+		        mainFrame.setVisible(true);
+	        }
 	        
 	        //-- tell settings that init is done
 	        settings.setIsInitDone(true);
@@ -124,10 +161,24 @@ public class CRController implements Runnable  {
 	 * Call after everything has been initialised.
 	 */
 	public void startSimulation(String reportFolderName_, int trialDuration_, int totalRuns_) {
+		startSimulation(reportFolderName_, trialDuration_, totalRuns_, 1);
+	}
+	
+	/**
+	 * Start all threads, numbering runs from firstRunNumber_.
+	 * Used when runs of one experiment are split between several controllers, so that each
+	 * controller saves its reports into its own Run folders.
+	 * Call after everything has been initialised.
+	 * @param reportFolderName_ String report folder name
+	 * @param trialDuration_ int trial duration in time units
+	 * @param totalRuns_ int number of runs executed by this controller
+	 * @param firstRunNumber_ int number of the first run, >= 1
+	 */
+	public void startSimulation(String reportFolderName_, int trialDuration_, int totalRuns_, int firstRunNumber_) {
 		if (CRSettings.getSingleton().getIsInitDone()) {
 			System.out.println("===================== SIMULATION STARTED ====================");
-			//-- create update thread
-			if (updateThread == null) {
+			//-- create update thread. A headless simulation is driven by runHeadless() instead
+			if (updateThread == null && !isHeadless) {
 				updateThread = new Thread(this);
 			    updateThread.setPriority(Thread.NORM_PRIORITY);
 			    updateThread.start();
@@ -136,10 +187,22 @@ public class CRController implements Runnable  {
 		    //-- set the variables
 		    timeCounter = 0;
 			timeUnits = 0;
+			tickCounter = 0;
+			isSimulationFinished = false;
 			
 		    trialDuration = trialDuration_;
 		    totalRuns = totalRuns_;
-		    runNumber = 1;
+		    firstRunNumber = firstRunNumber_;
+		    runNumber = firstRunNumber;
+		    
+		    //-- pick the base seed of this simulation
+		    CRSettings settings = CRSettings.getSingleton();
+		    if (settings.getIsRandomSeedSet()) {
+		    	randomSeed = settings.getRandomSeed();
+		    } else {
+		    	randomSeed = new SplittableRandom().nextLong();
+		    }
+		    System.out.println("RANDOM SEED: " + randomSeed);
 
 		    //-- init the first run and start it
 		    reportController.setReportFolderName(reportFolderName_);
@@ -159,6 +222,9 @@ public class CRController implements Runnable  {
 	public void initRun() {
     	trialNumber = 1;
     	
+    	//-- each run has its own random sequence, which only depends on the seed and the run number
+    	CRRandom.getSingleton().setSeed(CRRandom.mixSeed(randomSeed, runNumber));
+    	
     	//-- tell objects that a new run started
     	reportController.onRunStart(runNumber);
     	world.onRunStart(runNumber);
@@ -183,68 +249,179 @@ public class CRController implements Runnable  {
 	//==================================== UPDATE LOOP ====================================
         
 	/**
-     * Main thread 
+     * Main thread.
+     * Executes update loops at a fixed rate of one per updateDelay, or in batches without waiting in turbo mode.
+     * While time is not running, the thread is parked until startTime() wakes it up.
      */
     public void run() {
+    	long nextTickTime = System.nanoTime();
+    	resetTickRate(nextTickTime);
     	while (true) {
-        	if (CRSettings.getSingleton().isTimeRunning()) {
-        		//-- clear output panel so that new output can be shown
-        		CROutputPopup outputPanel = CROutputPopup.getSingleton();
-        		outputPanel.clearOutput();
-	        	
-        		//-- update all world objects
-        		reportController.onUpdateLoopStart(timeCounter, timeUnits);
-        		world.update();
-        		reportController.onUpdateLoopEnd(timeCounter, timeUnits);
-        		
-        		//-- update time counter
-        		timeCounter++;
-	        	if (timeCounter == CRSettings.getSingleton().getTimeUnitInterval()) { 
-	        		timeUnits++;
-	        		timeCounter = 0;	
-	        	}
-	        	
-	        	//-- show current time
-	        	outputPanel.displayTimeOutput(" TIME ELAPSED: "+timeUnits + "  "+timeCounter + "    TRIAL:"+trialNumber+"/"+totalTrials + "     RUN:"+runNumber+"/"+totalRuns);
-	        	
-	        	//---- end trial?
-	        	if (timeUnits - trialDuration == 0 && timeUnits > 0 ) {
-	        		//-- tell the objects a trial ended
-	        		world.onTrialEnd(trialNumber, runNumber);
-	        		reportController.onTrialEnd(trialNumber, runNumber);
-	        		//-- pause time
-	        		stopTime();
-	        		
-	        		//--- end run (a collection of trials) as well?
-	        		if (trialNumber == totalTrials) {
-	        			//-- tell the objects a run ended
-	        			world.onRunEnd(runNumber);
-	        			reportController.onRunEnd(runNumber);
-	        			//--- end simulation?
-	        			if (runNumber >= totalRuns) {
-	        				reportController.onSimulationEnd();
-	        				System.out.println("===================== SIMULATION ENDED ====================");
-	        				if (CRSettings.getSingleton().getShouldQuitAfterDone()) {
-	        					System.exit(0);
-	        				}
-	        			} else {
-	        				runNumber++;
-	        				initRun();
-	        			}
-	        		} else {
-	        			//--- just init a new trial
-	        			trialNumber ++;
-	        			this.initTrial();
-	        		}
-	        	}
-        	}
-        	//-- make update thread sleep
-        	try {
-	    		Thread.sleep(updateDelay);
-	    	} catch (InterruptedException e) { 
-	    		e.printStackTrace();
-	    	};
+    		CRSettings settings = CRSettings.getSingleton();
+    		if (!settings.isTimeRunning()) {
+    			LockSupport.park(this);
+    			//-- resumed (or woken up spuriously): start counting from now
+    			nextTickTime = System.nanoTime();
+    			resetTickRate(nextTickTime);
+    			continue;
+    		}
+    		
+    		if (settings.getIsTurbo()) {
+    			//-- a batch of update loops without any waiting
+    			for (int i=0; i<settings.getTurboBatchSize() && settings.isTimeRunning(); i++) {
+    				executeUpdateLoop();
+    			}
+    			nextTickTime = System.nanoTime();
+    		} else {
+    			long now = System.nanoTime();
+    			if (now < nextTickTime) {
+    				LockSupport.parkNanos(this, nextTickTime - now);
+    				continue;
+    			}
+    			executeUpdateLoop();
+    			nextTickTime += updateDelay * 1000000L;
+    			if (now - nextTickTime > MAX_TICK_LAG) {
+    				nextTickTime = now;
+    			}
+    		}
+    		updateTickRate(System.nanoTime());
+    	}
+    }
+    
+    /**
+     * Start a new window over which the achieved tick rate is measured
+     * @param now_ long current System.nanoTime()
+     */
+    protected void resetTickRate(long now_) {
+    	tickRateWindowStartTime = now_;
+    	tickRateWindowStartTicks = tickCounter;
+    }
+    
+    /**
+     * Recalculate the achieved tick rate about once a second
+     * @param now_ long current System.nanoTime()
+     */
+    protected void updateTickRate(long now_) {
+    	long elapsed = now_ - tickRateWindowStartTime;
+    	if (elapsed >= 1000000000L) {
+    		if (tickCounter >= tickRateWindowStartTicks) {
+    			achievedTickRate = (tickCounter - tickRateWindowStartTicks) / (elapsed / 1e9);
+    		}
+    		resetTickRate(now_);
+    	}
+    }
+    
+    /**
+     * Run the whole simulation in the calling thread, as fast as possible and without GUI, timers or sleeps.
+     * Call after startSimulation() on a headless controller. Returns when the last run has ended.
+     * Prints the achieved ticks/s and an ETA every progressInterval ms.
+     */
+    public void runHeadless() {
+    	if (!isHeadless) {
+    		System.err.println("CRController::runHeadless - controller has a GUI, use startSimulation() only");
+    		return;
+    	}
+    	long totalTicks = (long)totalRuns * totalTrials * trialDuration * CRSettings.getSingleton().getTimeUnitInterval();
+    	long startTime = System.nanoTime();
+    	long lastProgressTime = startTime;
+    	long lastProgressTicks = 0;
+    	
+    	while (!isSimulationFinished) {
+    		executeUpdateLoop();
+    		
+    		//-- only look at the clock every 1024 ticks
+    		if (progressInterval > 0 && (tickCounter & 1023) == 0) {
+    			long now = System.nanoTime();
+    			if (now - lastProgressTime >= progressInterval * 1000000L) {
+    				double ticksPerSecond = (tickCounter - lastProgressTicks) / ((now - lastProgressTime) / 1e9);
+    				long ticksLeft = totalTicks - tickCounter;
+    				System.out.println("RUN " + runNumber + "/" + (firstRunNumber + totalRuns - 1) + "  TRIAL " + trialNumber + "/" + totalTrials + "  TIME " + timeUnits + "/" + trialDuration
+    						+ "   " + (int)ticksPerSecond + " ticks/s   ETA " + formatDuration((long)(ticksLeft / Math.max(ticksPerSecond, 1))));
+    				lastProgressTime = now;
+    				lastProgressTicks = tickCounter;
+    			}
+    		}
     	}
+    	
+    	double seconds = (System.nanoTime() - startTime) / 1e9;
+    	System.out.println("Executed " + tickCounter + " ticks in " + formatDuration((long)seconds) + " (" + (int)(tickCounter / Math.max(seconds, 1e-9)) + " ticks/s)");
+    }
+    
+    /**
+     * Execute a single update loop: update reports and all world objects, advance the time
+     * and handle the end of a trial, run or the whole simulation.
+     */
+    protected void executeUpdateLoop() {
+    	//-- clear output panel so that new output can be shown
+    	CROutputPopup outputPanel = null;
+    	if (!isHeadless) {
+    		outputPanel = CROutputPopup.getSingleton();
+    		outputPanel.clearOutput();
+    	}
+    	
+		//-- update all world objects
+		reportController.onUpdateLoopStart(timeCounter, timeUnits);
+		world.update();
+		reportController.onUpdateLoopEnd(timeCounter, timeUnits);
+		//-- hand a copy of the world to the renderer when it is ready for the next frame
+		if (!isHeadless) {
+			world.publishSnapshotIfRequested();
+		}
+		
+		//-- update time counter
+		tickCounter++;
+		timeCounter++;
+    	if (timeCounter == CRSettings.getSingleton().getTimeUnitInterval()) { 
+    		timeUnits++;
+    		timeCounter = 0;	
+    	}
+    	
+    	//-- show current time
+    	if (outputPanel != null) {
+    		outputPanel.displayTimeOutput(" TIME ELAPSED: "+timeUnits + "  "+timeCounter + "    TRIAL:"+trialNumber+"/"+totalTrials + "     RUN:"+runNumber+"/"+(firstRunNumber + totalRuns - 1));
+    		outputPanel.displayTimeOutput(" TICKS/S: " + (int)achievedTickRate + " / " + (CRSettings.getSingleton().getIsTurbo() ? "turbo" : String.valueOf((int)getTargetTickRate())));
+    	}
+    	
+    	//---- end trial?
+    	if (timeUnits - trialDuration == 0 && timeUnits > 0 ) {
+    		//-- tell the objects a trial ended
+    		world.onTrialEnd(trialNumber, runNumber);
+    		reportController.onTrialEnd(trialNumber, runNumber);
+    		//-- pause time
+    		stopTime();
+    		
+    		//--- end run (a collection of trials) as well?
+    		if (trialNumber == totalTrials) {
+    			//-- tell the objects a run ended
+    			world.onRunEnd(runNumber);
+    			reportController.onRunEnd(runNumber);
+    			//--- end simulation?
+    			if (runNumber >= firstRunNumber + totalRuns - 1) {
+    				isSimulationFinished = true;
+    				reportController.onSimulationEnd();
+    				System.out.println("===================== SIMULATION ENDED ====================");
+    				if (CRSettings.getSingleton().getShouldQuitAfterDone() && !isHeadless) {
+    					System.exit(0);
+    				}
+    			} else {
+    				runNumber++;
+    				initRun();
+    			}
+    		} else {
+    			//--- just init a new trial
+    			trialNumber ++;
+    			this.initTrial();
+    		}
+    	}
+    }
+    
+    /**
+     * Format a number of seconds as HH:MM:SS
+     * @param seconds_ long number of seconds
+     * @return String formatted duration
+     */
+    protected static String formatDuration(long seconds_) {
+    	return String.format("%02d:%02d:%02d", seconds_ / 3600, (seconds_ / 60) % 60, seconds_ % 60);
     }
     
     
@@ -256,6 +433,10 @@ public class CRController implements Runnable  {
     public void startTime() {
     	
     	CRSettings settings = CRSettings.getSingleton();
+    	if (isHeadless) {
+    		settings.setIsTimeRunning(true);
+    		return;
+    	}
     	
     	//-- create render thread
     	if (renderTimer != null && settings.isTimeRunning()) {
@@ -274,14 +455,23 @@ public class CRController implements Runnable  {
     	outputTimer.start();
     	
     	settings.setIsTimeRunning(true);
+    	
+    	//-- wake up the update thread
+    	if (updateThread != null) {
+    		LockSupport.unpark(updateThread);
+    	}
     }
     
     /**
      * Stop painter timer
      */
     public void stopTime() {
-    	renderTimer.stop();
-    	outputTimer.stop();
+    	if (renderTimer != null) {
+    		renderTimer.stop();
+    	}
+    	if (outputTimer != null) {
+    		outputTimer.stop();
+    	}
     	CRSettings.getSingleton().setIsTimeRunning(false);
     }	
     
@@ -298,12 +488,29 @@ public class CRController implements Runnable  {
     	updateDelay = (settings.getMaxUpdateDelay() - (int)((settings.getMaxUpdateDelay()-settings.getMinUpdateDelay())*value_));
     }
     
+    /**
+     * Get the tick rate the update thread is trying to keep when not in turbo mode
+     * @return double update loops per second
+     */
+    public double getTargetTickRate() { return 1000.0 / Math.max(updateDelay, 1); }
+    
+    /**
+     * Get the tick rate measured over about the last second while time was running
+     * @return double update loops per second
+     */
+    public double getAchievedTickRate() { return achievedTickRate; }
+    
     
     /**
      * Remove old control panel, store reference to the new one and place it instead of the old one
      * @param controlPanel_ CRControlPanel new control panel
      */
     public void setControlPanel(CRControlPanel controlPanel_) {
+    	if (controlPanelPlaceHolder == null) {
+    		//-- headless, nowhere to place it
+    		controlPanel = controlPanel_;
+    		return;
+    	}
     	//-- remove the new one:
     	controlPanelPlaceHolder.removeAll();
     	controlPanel = null;
@@ -334,7 +541,9 @@ public class CRController implements Runnable  {
     public CRWorld getWorld() { return world; }
     public void setWorld(CRWorld world_) {
     	world = world_;
-    	renderer.setWorld(world);
+    	if (renderer != null) {
+    		renderer.setWorld(world);
+    	}
     }
     
     public CRReportController getReportController() { return reportController; }
@@ -359,7 +568,19 @@ public class CRController implements Runnable  {
     public int getTrialDuration() { return trialDuration; }
     public int getTrialNumber() { return trialNumber; }
     public int getRunNumber() { return runNumber; }
+    public int getFirstRunNumber() { return firstRunNumber; }
+    public long getRandomSeed() { return randomSeed; }
     
     public CRRenderer getRenderer() { return renderer; }
+    
+    public boolean isHeadless() { return isHeadless; }
+    public boolean isSimulationFinished() { return isSimulationFinished; }
+    public long getTickCounter() { return tickCounter; }
+    
+    /**
+     * Set how often runHeadless() prints ticks/s and ETA
+     * @param value_ int interval in ms, 0 to never print progress
+     */
+    public void setProgressInterval(int value_) { progressInterval = value_; }
    
 }
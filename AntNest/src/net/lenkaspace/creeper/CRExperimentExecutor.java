@@ -0,0 +1,96 @@
+package net.lenkaspace.creeper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.lenkaspace.creeper.report.CRReportController;
+
+/**
+ * Executes independent headless simulations in parallel, each in its own thread with its own
+ * controller, world, settings and report folder.
+ */
+public class CRExperimentExecutor {
+
+	protected int poolSize;
+
+	//==================================== CONSTRUCTORS =================================
+
+	/**
+	 * Constructor
+	 * @param poolSize_ int max number of simulations executed at the same time. If <= 0, the number of available processors is used.
+	 */
+	public CRExperimentExecutor(int poolSize_) {
+		if (poolSize_ <= 0) {
+			poolSize_ = Runtime.getRuntime().availableProcessors();
+		}
+		poolSize = poolSize_;
+	}
+
+	//==================================== EXECUTION ====================================
+
+	/**
+	 * Execute all jobs and wait until they are finished.
+	 * Report folders of the jobs are cleaned before the first job starts.
+	 * @param jobs_ List<CRSimulationJob> jobs to execute
+	 * @return List<CRSimulationJob> jobs that finished without an error, in order of completion
+	 */
+	public List<CRSimulationJob> execute(List<? extends CRSimulationJob> jobs_) {
+		List<CRSimulationJob> finishedJobs = new ArrayList<CRSimulationJob>();
+
+		//-- clean each report folder once
+		Set<String> reportFolders = new LinkedHashSet<String>();
+		for (CRSimulationJob job : jobs_) {
+			reportFolders.add(job.getReportFolderPath());
+		}
+		for (String reportFolder : reportFolders) {
+			CRReportController.cleanFolder(reportFolder);
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.min(poolSize, Math.max(jobs_.size(), 1)));
+		CompletionService<CRSimulationJob> completionService = new ExecutorCompletionService<CRSimulationJob>(executorService);
+		try {
+			for (CRSimulationJob job : jobs_) {
+				completionService.submit(job);
+			}
+			for (int i=0; i<jobs_.size(); i++) {
+				Future<CRSimulationJob> future = completionService.take();
+				try {
+					CRSimulationJob job = future.get();
+					finishedJobs.add(job);
+					onJobFinished(job, finishedJobs.size(), jobs_.size());
+				} catch (ExecutionException e) {
+					System.err.println("CRExperimentExecutor - simulation failed: " + e.getCause());
+					e.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			System.err.println("CRExperimentExecutor - interrupted");
+			Thread.currentThread().interrupt();
+		} finally {
+			executorService.shutdownNow();
+		}
+		return finishedJobs;
+	}
+
+	/**
+	 * Called in the calling thread of execute() each time a job finishes successfully
+	 * @param job_ CRSimulationJob finished job
+	 * @param finishedCount_ int number of jobs finished so far
+	 * @param totalCount_ int number of jobs
+	 */
+	protected void onJobFinished(CRSimulationJob job_, int finishedCount_, int totalCount_) {
+		System.out.println("FINISHED RUN " + job_.getRunNumber() + "   (" + finishedCount_ + "/" + totalCount_ + ")");
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	public int getPoolSize() { return poolSize; }
+}
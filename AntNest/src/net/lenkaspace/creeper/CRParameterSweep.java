@@ -0,0 +1,162 @@
+package net.lenkaspace.creeper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A declarative description of a parameter sweep, read from properties:
+ * <pre>
+ *   grid.numOfExternalWorkers=5,10,20     every combination of all grid values is used
+ *   grid.currentWorld=Random world,Square
+ *   set.1=numOfPassiveAnts=20;broodClusterDistance=80    explicit parameter sets, each combined with the grid
+ *   set.2=numOfPassiveAnts=50;broodClusterDistance=120
+ *   seeds=1,2,3                           or replicates=3, i.e. seeds 1..3
+ * </pre>
+ * Every parameter set is executed once per seed.
+ */
+public class CRParameterSweep {
+
+	public static final String GRID_PREFIX = "grid.";
+	public static final String SET_PREFIX = "set.";
+	public static final String SEEDS_KEY = "seeds";
+	public static final String REPLICATES_KEY = "replicates";
+
+	//-- numbered sets by their number, so that set.10 comes after set.2, then other names alphabetically
+	private static final Comparator<String> SET_NAME_ORDER = new Comparator<String>() {
+		public int compare(String name1_, String name2_) {
+			boolean isNumber1 = name1_.matches("[0-9]{1,18}");
+			boolean isNumber2 = name2_.matches("[0-9]{1,18}");
+			if (isNumber1 != isNumber2) {
+				return isNumber1 ? -1 : 1;
+			}
+			if (isNumber1) {
+				int result = Long.compare(Long.parseLong(name1_), Long.parseLong(name2_));
+				if (result != 0) {
+					return result;
+				}
+			}
+			//-- also keeps e.g. set.01 and set.1 apart
+			return name1_.compareTo(name2_);
+		}
+	};
+
+	private List<Map<String, String>> parameterSets;
+	private long[] seeds;
+
+	//==================================== CONSTRUCTORS =================================
+
+	/**
+	 * Constructor
+	 * @param properties_ Properties sweep description. Keys that don't belong to the sweep are ignored.
+	 * @throws IllegalArgumentException if the description can't be parsed
+	 */
+	public CRParameterSweep(Properties properties_) {
+		//-- explicit sets, ordered by their number / name, see SET_NAME_ORDER
+		TreeMap<String, String> sets = new TreeMap<String, String>(SET_NAME_ORDER);
+		TreeMap<String, String> grid = new TreeMap<String, String>();
+		Enumeration<?> keys = properties_.propertyNames();
+		while (keys.hasMoreElements()) {
+			String key = (String)keys.nextElement();
+			if (key.startsWith(SET_PREFIX)) {
+				sets.put(key.substring(SET_PREFIX.length()), properties_.getProperty(key));
+			} else if (key.startsWith(GRID_PREFIX)) {
+				grid.put(key.substring(GRID_PREFIX.length()), properties_.getProperty(key));
+			}
+		}
+
+		parameterSets = new ArrayList<Map<String, String>>();
+		if (sets.isEmpty()) {
+			parameterSets.add(new LinkedHashMap<String, String>());
+		}
+		for (Map.Entry<String, String> set : sets.entrySet()) {
+			Map<String, String> parameterSet = new LinkedHashMap<String, String>();
+			for (String assignment : set.getValue().split(";")) {
+				int separatorIndex = assignment.indexOf('=');
+				if (separatorIndex <= 0) {
+					throw new IllegalArgumentException("Expected name=value in set." + set.getKey() + ", got " + assignment);
+				}
+				parameterSet.put(assignment.substring(0, separatorIndex).trim(), assignment.substring(separatorIndex+1).trim());
+			}
+			parameterSets.add(parameterSet);
+		}
+
+		//-- cartesian product with the grid, the last grid parameter changes fastest
+		for (Map.Entry<String, String> parameter : grid.entrySet()) {
+			List<Map<String, String>> expandedSets = new ArrayList<Map<String, String>>();
+			for (Map<String, String> parameterSet : parameterSets) {
+				for (String value : parameter.getValue().split(",")) {
+					Map<String, String> expandedSet = new LinkedHashMap<String, String>(parameterSet);
+					expandedSet.put(parameter.getKey(), value.trim());
+					expandedSets.add(expandedSet);
+				}
+			}
+			parameterSets = expandedSets;
+		}
+
+		//-- seeds
+		String seedsValue = properties_.getProperty(SEEDS_KEY);
+		String replicatesValue = properties_.getProperty(REPLICATES_KEY);
+		try {
+			if (seedsValue != null) {
+				String[] seedStrings = seedsValue.split(",");
+				seeds = new long[seedStrings.length];
+				for (int i=0; i<seedStrings.length; i++) {
+					seeds[i] = Long.parseLong(seedStrings[i].trim());
+				}
+			} else {
+				int replicates = replicatesValue != null ? Integer.parseInt(replicatesValue.trim()) : 1;
+				seeds = new long[Math.max(replicates, 1)];
+				for (int i=0; i<seeds.length; i++) {
+					seeds[i] = i+1;
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Seeds and replicates must be whole numbers");
+		}
+	}
+
+	/**
+	 * Check whether properties describe a sweep
+	 * @param properties_ Properties
+	 * @return boolean true if there is at least one grid or set key
+	 */
+	public static boolean isSweep(Properties properties_) {
+		Enumeration<?> keys = properties_.propertyNames();
+		while (keys.hasMoreElements()) {
+			if (isSweepKey((String)keys.nextElement())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether a property key is read by this class
+	 * @param key_ String property key
+	 * @return boolean
+	 */
+	public static boolean isSweepKey(String key_) {
+		return key_.startsWith(GRID_PREFIX) || key_.startsWith(SET_PREFIX) || key_.equals(SEEDS_KEY) || key_.equals(REPLICATES_KEY);
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	/**
+	 * Get all parameter sets, without seeds
+	 * @return List<Map<String, String>> parameter name -> value
+	 */
+	public List<Map<String, String>> getParameterSets() { return parameterSets; }
+	public long[] getSeeds() { return seeds; }
+
+	/**
+	 * Get number of simulations in the sweep, i.e. parameter sets x seeds
+	 * @return int
+	 */
+	public int getNumOfSimulations() { return parameterSets.size() * seeds.length; }
+}
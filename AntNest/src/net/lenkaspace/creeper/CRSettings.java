@@ -4,7 +4,9 @@ package net.lenkaspace.creeper;
 import java.awt.Dimension;
 
 /**
- * A signleton class that stores various settings
+ * A signleton class that stores various settings.
+ * A copy can be bound to a thread with bindToCurrentThread(), getSingleton() then returns the copy
+ * in that thread. This lets several simulations run in parallel, each with its own settings.
  * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
@@ -20,7 +22,8 @@ public class CRSettings {
 	private boolean shouldPrintTextReports;
 	private boolean shouldDraw;
 	private boolean isInitDone;
-	private boolean isTimeRunning;
+	private volatile boolean isTimeRunning;		//volatile: set from the GUI, read by the update thread
+	private volatile boolean isTurbo;			//if true, update loops are executed in batches without any waiting
 		
 	//-- numerical values
 	private int timeUnitInterval = 60; 			//defines a basic time units in the simulation based on number of update loops. Set this so that timeUnitInterval = 1s
@@ -30,6 +33,11 @@ public class CRSettings {
 	private int maxUpdateDelay = 20; 			//defines max value of how long update thread waits between 2 updates
 	private int reportFreezeDisplayDelay = 200;	//defines how long a report that should be printed and closed stays opened. This assures successful printing
 	private int initialTimeSpeed = 75; 			//defines initial time speed on scale <0;100>
+	private int turboBatchSize = 100;			//defines how many update loops are executed between two checks of the time controls in turbo mode
+	private long randomSeed;					//base seed of the random numbers, only used if isRandomSeedSet
+	private boolean isRandomSeedSet;
+	private boolean isParallelUpdate;			//if true, dynamic models sense the world in parallel before they act, see CRWorld.update()
+	private int updateThreads = 0;				//defines how many threads sense in parallel. 0 uses all available processors
 	
     private CRSettings() 	{
     	windowSize = new Dimension(1230, 670);
@@ -38,16 +46,58 @@ public class CRSettings {
 		shouldPrintTextReports = true;	
 		shouldQuitAfterDone = true; 	
 	}
+    
+    /**
+     * Copy constructor
+     * @param source_ CRSettings settings to copy
+     */
+    public CRSettings(CRSettings source_) {
+    	windowSize = new Dimension(source_.windowSize);
+    	shouldQuitAfterDone = source_.shouldQuitAfterDone;
+    	shouldPrintGraphicReports = source_.shouldPrintGraphicReports;
+    	shouldPrintTextReports = source_.shouldPrintTextReports;
+    	shouldDraw = source_.shouldDraw;
+    	isInitDone = source_.isInitDone;
+    	isTimeRunning = source_.isTimeRunning;
+    	isTurbo = source_.isTurbo;
+    	turboBatchSize = source_.turboBatchSize;
+    	timeUnitInterval = source_.timeUnitInterval;
+    	renderingDelay = source_.renderingDelay;
+    	outputDelay = source_.outputDelay;
+    	minUpdateDelay = source_.minUpdateDelay;
+    	maxUpdateDelay = source_.maxUpdateDelay;
+    	reportFreezeDisplayDelay = source_.reportFreezeDisplayDelay;
+    	initialTimeSpeed = source_.initialTimeSpeed;
+    	randomSeed = source_.randomSeed;
+    	isRandomSeedSet = source_.isRandomSeedSet;
+    	isParallelUpdate = source_.isParallelUpdate;
+    	updateThreads = source_.updateThreads;
+    }
         
     //==================================== SINGLETON ====================================
     private static CRSettings singletonReference;
+    private static final ThreadLocal<CRSettings> threadReference = new ThreadLocal<CRSettings>();
 	
 	public static CRSettings getSingleton()	  {
+	  CRSettings boundSettings = threadReference.get();
+	  if (boundSettings != null)
+		  return boundSettings;
 	  if (singletonReference == null)
 		  singletonReference = new CRSettings();		
 	  return singletonReference;
 	}
 	
+	/**
+	 * Make getSingleton() return the given settings in the calling thread
+	 * @param settings_ CRSettings settings of the simulation executed by the calling thread
+	 */
+	public static void bindToCurrentThread(CRSettings settings_) { threadReference.set(settings_); }
+	
+	/**
+	 * Make getSingleton() return the global settings in the calling thread again
+	 */
+	public static void unbindFromCurrentThread() { threadReference.remove(); }
+	
 	//==================================== OTHER ========================================
 	
 	/**
@@ -81,6 +131,12 @@ public class CRSettings {
 	public void setIsTimeRunning(boolean value_) { isTimeRunning = value_; }
 	public boolean isTimeRunning() { return isTimeRunning; }
 
+	public void setIsTurbo(boolean value_) { isTurbo = value_; }
+	public boolean getIsTurbo() { return isTurbo; }
+	
+	public int getTurboBatchSize() { return turboBatchSize; }
+	public void setTurboBatchSize(int value_) { turboBatchSize = Math.max(value_, 1); }
+
 	public int getTimeUnitInterval() { return timeUnitInterval;	}
 	public void setTimeUnitInterval(int value_) { timeUnitInterval = value_; }
 
@@ -99,6 +155,27 @@ public class CRSettings {
 	public int getReportFreezeDisplayDelay() { return reportFreezeDisplayDelay; }
 	public void setReportFreezeDisplayDelay(int value_) { reportFreezeDisplayDelay = value_; }
 	
+	/**
+	 * Set the base seed of the random numbers. Each run uses a seed derived from this one and the run number,
+	 * so any run can be repeated. If not set, a new base seed is picked when a simulation starts.
+	 * @param value_ long seed
+	 */
+	public void setRandomSeed(long value_) { randomSeed = value_; isRandomSeedSet = true; }
+	public long getRandomSeed() { return randomSeed; }
+	public boolean getIsRandomSeedSet() { return isRandomSeedSet; }
+	
+	/**
+	 * Switch two-phase updates on or off. When on, all dynamic models first sense a frozen world in parallel
+	 * and then act one by one in their usual order. Results don't depend on the number of threads, but differ
+	 * from serial updates, where each model sees the actions of the models updated before it.
+	 * @param value_ boolean
+	 */
+	public void setIsParallelUpdate(boolean value_) { isParallelUpdate = value_; }
+	public boolean getIsParallelUpdate() { return isParallelUpdate; }
+	
+	public int getUpdateThreads() { return updateThreads; }
+	public void setUpdateThreads(int value_) { updateThreads = Math.max(value_, 0); }
+	
 	public int getInitialTimeSpeed() { return initialTimeSpeed; }
 	public void setInitialTimeSpeed(int value_) { if (value_ < 1) { value_ = 1; } else if (value_ > 100) { value_ = 100; } initialTimeSpeed = value_; }
 	
@@ -0,0 +1,149 @@
+package net.lenkaspace.creeper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import net.lenkaspace.creeper.helpers.CRRandom;
+
+/**
+ * One headless simulation executed by CRExperimentExecutor. Holds its own copy of CRSettings, which is bound
+ * to the executing thread while the simulation runs, and creates its own controller, world and reports.
+ * Subclasses create the controller and bind any other per-simulation settings.
+ */
+public abstract class CRSimulationJob implements Callable<CRSimulationJob> {
+
+	protected CRSettings settings;
+	protected CRController controller;
+	protected String baseFolderName;
+	protected String reportFolderName;
+	protected int trialDuration;
+	protected int totalTrials;
+	protected int runNumber;
+	protected int progressInterval;
+	protected Map<String, String> parameters;
+	protected List<Map<String, String>> resultRows;
+
+	//==================================== CONSTRUCTORS =================================
+
+	/**
+	 * Constructor
+	 * @param settings_ CRSettings settings of this simulation. A copy is made so that the original can be changed for other jobs.
+	 * @param reportFolderName_ String report folder name, shared by all jobs of one experiment
+	 * @param trialDuration_ int trial duration in time units
+	 * @param totalTrials_ int number of trials
+	 * @param runNumber_ int run number. Reports are saved into the Run folder of this number
+	 */
+	public CRSimulationJob(CRSettings settings_, String reportFolderName_, int trialDuration_, int totalTrials_, int runNumber_) {
+		settings = new CRSettings(settings_);
+		baseFolderName = "bin";
+		reportFolderName = reportFolderName_;
+		trialDuration = trialDuration_;
+		totalTrials = totalTrials_;
+		runNumber = runNumber_;
+		progressInterval = 0;
+		parameters = new LinkedHashMap<String, String>();
+		resultRows = new ArrayList<Map<String, String>>();
+	}
+
+	//==================================== EXECUTION ====================================
+
+	/**
+	 * Run the whole simulation in the calling thread
+	 * @return CRSimulationJob this job
+	 */
+	public CRSimulationJob call() {
+		CRSettings.bindToCurrentThread(settings);
+		//-- reseeded by the controller at the start of each run
+		CRRandom.bindToCurrentThread(new CRRandom(0));
+		bindContext();
+		try {
+			controller = createController();
+			controller.getReportController().setBaseFolderName(baseFolderName);
+			//-- the executor cleans the shared report folder once, before any job starts
+			controller.getReportController().setShouldCleanReportFolder(false);
+			controller.setProgressInterval(progressInterval);
+			controller.setTotalTrials(totalTrials);
+			controller.startSimulation(reportFolderName, trialDuration, 1, runNumber);
+			controller.runHeadless();
+			onSimulationEnd();
+		} finally {
+			unbindContext();
+			CRRandom.unbindFromCurrentThread();
+			CRSettings.unbindFromCurrentThread();
+		}
+		return this;
+	}
+
+	/**
+	 * Create a headless controller with a world and reports.
+	 * Called in the executing thread, after the settings have been bound.
+	 * @return CRController new controller
+	 */
+	protected abstract CRController createController();
+
+	/**
+	 * Bind any per-simulation state other than CRSettings to the executing thread
+	 */
+	protected void bindContext() {
+
+	}
+
+	/**
+	 * Undo bindContext()
+	 */
+	protected void unbindContext() {
+
+	}
+
+	/**
+	 * Called in the executing thread after the last trial has ended, before anything is unbound.
+	 * Use this to collect results from the world into resultRows.
+	 */
+	protected void onSimulationEnd() {
+
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	public CRSettings getSettings() { return settings; }
+	public CRController getController() { return controller; }
+	public String getReportFolderName() { return reportFolderName; }
+	public int getRunNumber() { return runNumber; }
+	
+	/**
+	 * Get parameters this job was set up with, e.g. by a parameter sweep
+	 * @return Map<String, String> parameter name -> value, in order
+	 */
+	public Map<String, String> getParameters() { return parameters; }
+	
+	/**
+	 * Get the base random seed, see CRSettings.setRandomSeed()
+	 * @return long seed
+	 */
+	public long getSeed() { return settings.getRandomSeed(); }
+	public void setSeed(long value_) { settings.setRandomSeed(value_); }
+	
+	/**
+	 * Get results collected by onSimulationEnd(), typically one row per trial
+	 * @return List<Map<String, String>> rows, column name -> value
+	 */
+	public List<Map<String, String>> getResultRows() { return resultRows; }
+
+	/**
+	 * Get path of the folder that contains Run folders of this job
+	 * @return String base folder name + report folder name
+	 */
+	public String getReportFolderPath() { return baseFolderName + "/" + reportFolderName; }
+
+	public String getBaseFolderName() { return baseFolderName; }
+	public void setBaseFolderName(String value_) { baseFolderName = value_; }
+
+	/**
+	 * Set how often (ms) progress is printed. Default is 0, i.e. never.
+	 * @param value_ int
+	 */
+	public void setProgressInterval(int value_) { progressInterval = value_; }
+}
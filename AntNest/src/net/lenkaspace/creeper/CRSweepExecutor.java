@@ -0,0 +1,137 @@
+package net.lenkaspace.creeper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes the simulations of a parameter sweep in parallel and streams their results into one csv table,
+ * one row per trial, as soon as each simulation finishes. Columns are run, seed, the parameters of the job
+ * and the result columns of the job.
+ */
+public class CRSweepExecutor extends CRExperimentExecutor {
+
+	protected String resultsFileName;
+	protected PrintWriter resultsWriter;
+	protected List<String> columnNames;
+
+	/**
+	 * Constructor
+	 * @param poolSize_ int max number of simulations executed at the same time. If <= 0, the number of available processors is used.
+	 * @param resultsFileName_ String path of the results csv file
+	 */
+	public CRSweepExecutor(int poolSize_, String resultsFileName_) {
+		super(poolSize_);
+		resultsFileName = resultsFileName_;
+	}
+
+	//==================================== EXECUTION ====================================
+
+	/**
+	 * Execute all jobs and wait until they are finished, writing results on the way.
+	 * @param jobs_ List<CRSimulationJob> jobs to execute
+	 * @return List<CRSimulationJob> jobs that finished without an error, in order of completion
+	 */
+	public List<CRSimulationJob> execute(List<? extends CRSimulationJob> jobs_) {
+		columnNames = null;
+		List<CRSimulationJob> finishedJobs;
+		try {
+			//-- the results file is opened when the first job finishes, i.e. after super has cleaned the report folders
+			finishedJobs = super.execute(jobs_);
+		} finally {
+			if (resultsWriter != null) {
+				resultsWriter.close();
+				resultsWriter = null;
+			}
+		}
+		return finishedJobs;
+	}
+
+	/**
+	 * Write result rows of a finished job
+	 * @param job_ CRSimulationJob finished job
+	 * @param finishedCount_ int number of jobs finished so far
+	 * @param totalCount_ int number of jobs
+	 */
+	protected void onJobFinished(CRSimulationJob job_, int finishedCount_, int totalCount_) {
+		super.onJobFinished(job_, finishedCount_, totalCount_);
+		for (Map<String, String> resultRow : job_.getResultRows()) {
+			writeRow(job_, resultRow);
+		}
+		if (resultsWriter != null) {
+			resultsWriter.flush();
+		}
+	}
+
+	/**
+	 * Write one row. The first row defines the columns.
+	 * @param job_ CRSimulationJob job the row belongs to
+	 * @param resultRow_ Map<String, String> result column name -> value
+	 */
+	protected void writeRow(CRSimulationJob job_, Map<String, String> resultRow_) {
+		if (resultsWriter == null) {
+			try {
+				File resultsFile = new File(resultsFileName);
+				if (resultsFile.getParentFile() != null) {
+					resultsFile.getParentFile().mkdirs();
+				}
+				resultsWriter = new PrintWriter(new FileWriter(resultsFile));
+			} catch (IOException e) {
+				System.err.println("CRSweepExecutor - cannot write " + resultsFileName);
+				return;
+			}
+		}
+		if (columnNames == null) {
+			columnNames = new ArrayList<String>();
+			columnNames.add("run");
+			columnNames.add("seed");
+			columnNames.addAll(job_.getParameters().keySet());
+			columnNames.addAll(resultRow_.keySet());
+			writeLine(columnNames);
+		}
+
+		List<String> values = new ArrayList<String>();
+		for (String columnName : columnNames) {
+			String value;
+			if (columnName.equals("run")) {
+				value = String.valueOf(job_.getRunNumber());
+			} else if (columnName.equals("seed")) {
+				value = String.valueOf(job_.getSeed());
+			} else if (job_.getParameters().containsKey(columnName)) {
+				value = job_.getParameters().get(columnName);
+			} else {
+				value = resultRow_.get(columnName);
+			}
+			values.add(value != null ? value : "");
+		}
+		writeLine(values);
+	}
+
+	/**
+	 * Write values as one csv line, quoting values that need it
+	 * @param values_ List<String> values
+	 */
+	protected void writeLine(List<String> values_) {
+		StringBuilder line = new StringBuilder();
+		for (int i=0; i<values_.size(); i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			String value = values_.get(i);
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+				line.append('"').append(value.replace("\"", "\"\"")).append('"');
+			} else {
+				line.append(value);
+			}
+		}
+		resultsWriter.println(line.toString());
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	public String getResultsFileName() { return resultsFileName; }
+}
@@ -0,0 +1,207 @@
+package net.lenkaspace.creeper.benchmark;
+
+import java.util.Arrays;
+
+import net.lenkaspace.creeper.helpers.CRRandom;
+import net.lenkaspace.creeper.model.CRField;
+import net.lenkaspace.creeper.model.CRFieldKernels;
+import net.lenkaspace.creeper.model.CRGridField;
+import net.lenkaspace.creeper.model.CRMultiField;
+
+/**
+ * Compares the plain loops of CRFieldKernels with CRFieldKernels.getDefault() on square grids with random values:
+ * decay (CRGridField.multiply()), diffusion (CRGridField.diffuseAndDecay()), a step of a CRMultiField with several
+ * channels, and the mapping of values to colour alphas used for painting. Every operation is computed on the same
+ * values by both kernels, and the results are compared.
+ * The default kernels are the vector ones only when the benchmark runs from the multi-release jar on Java 17 or
+ * later, with --add-modules jdk.incubator.vector. Otherwise both columns measure the same loops.
+ * Grids of 4096 cells along each side need a larger heap than the default one, e.g. run with -Xmx4g and
+ * sizes=512,1024,2048,4096.
+ * Arguments are key=value pairs, all optional:
+ * <pre>
+ *   sizes=512,1024,2048        cells along each side of the grids to test
+ *   channels=3                 channels of the multi-channel field
+ *   rate=0.2                   diffusion rate per step
+ *   decay=0.999                decay per step
+ *   steps=20                   measured steps, after 5 warm up steps
+ *   seed=1
+ * </pre>
+ */
+public class CRFieldKernelsBenchmark {
+
+	private static final int WARM_UP_STEPS = 5;
+
+	private int[] sizes = {512, 1024, 2048};
+	private int numOfChannels = 3;
+	private double rate = 0.2;
+	private double decay = 0.999;
+	private int numOfSteps = 20;
+	private long seed = 1;
+
+	public static void main(String[] args) {
+		CRFieldKernelsBenchmark benchmark = new CRFieldKernelsBenchmark();
+		for (String arg : args) {
+			int separatorIndex = arg.indexOf('=');
+			if (separatorIndex <= 0 || !benchmark.setValue(arg.substring(0, separatorIndex).trim(), arg.substring(separatorIndex+1).trim())) {
+				System.err.println("CRFieldKernelsBenchmark - unknown argument " + arg);
+				System.exit(1);
+			}
+		}
+		benchmark.run();
+	}
+
+	/**
+	 * Set a parameter
+	 * @param key_ String parameter name
+	 * @param value_ String value
+	 * @return boolean false if the parameter doesn't exist or the value is invalid
+	 */
+	public boolean setValue(String key_, String value_) {
+		try {
+			if (key_.equals("sizes")) {
+				String[] values = value_.split(",");
+				sizes = new int[values.length];
+				for (int i=0; i<values.length; i++) {
+					sizes[i] = Integer.parseInt(values[i].trim());
+				}
+			} else if (key_.equals("channels")) {
+				numOfChannels = Integer.parseInt(value_);
+			} else if (key_.equals("rate")) {
+				rate = Double.parseDouble(value_);
+			} else if (key_.equals("decay")) {
+				decay = Double.parseDouble(value_);
+			} else if (key_.equals("steps")) {
+				numOfSteps = Integer.parseInt(value_);
+			} else if (key_.equals("seed")) {
+				seed = Long.parseLong(value_);
+			} else {
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Run all measurements and print one line per grid size and operation
+	 */
+	public void run() {
+		CRFieldKernels scalarKernels = new CRFieldKernels();
+		CRFieldKernels defaultKernels = CRFieldKernels.getDefault();
+		System.out.println("kernels: " + scalarKernels.getName() + " vs " + defaultKernels.getName());
+		System.out.println(String.format("%-10s %8s %14s %14s %10s %10s",
+				"operation", "size", "scalar ms/step", "default ms/step", "speed-up", "identical"));
+		for (int size : sizes) {
+			measureGrid(size, scalarKernels, defaultKernels);
+			measureMultiField(size, scalarKernels, defaultKernels);
+			measureAlphas(size, scalarKernels, defaultKernels);
+		}
+	}
+
+	/**
+	 * Measure decay and diffusion of a CRGridField
+	 */
+	private void measureGrid(int size_, CRFieldKernels scalarKernels_, CRFieldKernels defaultKernels_) {
+		CRGridField[] fields = new CRGridField[2];
+		CRFieldKernels[] kernels = {scalarKernels_, defaultKernels_};
+		long[] decayTimes = new long[2];
+		long[] diffusionTimes = new long[2];
+		for (int k=0; k<2; k++) {
+			fields[k] = new CRGridField(size_, size_, 1);
+			fields[k].setKernels(kernels[k]);
+			fill(fields[k], new CRRandom(seed));
+			for (int step=0; step<WARM_UP_STEPS + numOfSteps; step++) {
+				long startTime = System.nanoTime();
+				fields[k].multiply(decay);
+				long middleTime = System.nanoTime();
+				fields[k].diffuseAndDecay(rate, decay, null);
+				long endTime = System.nanoTime();
+				if (step >= WARM_UP_STEPS) {
+					decayTimes[k] += middleTime - startTime;
+					diffusionTimes[k] += endTime - middleTime;
+				}
+			}
+		}
+		boolean isIdentical = Arrays.equals(getValues(fields[0]), getValues(fields[1]));
+		print("decay", size_, decayTimes, isIdentical);
+		print("diffusion", size_, diffusionTimes, isIdentical);
+	}
+
+	/**
+	 * Measure steps of a CRMultiField whose channels diffuse and decay at different rates
+	 */
+	private void measureMultiField(int size_, CRFieldKernels scalarKernels_, CRFieldKernels defaultKernels_) {
+		String[] channelNames = new String[numOfChannels];
+		for (int c=0; c<numOfChannels; c++) {
+			channelNames[c] = "channel" + c;
+		}
+		CRMultiField[] fields = new CRMultiField[2];
+		CRFieldKernels[] kernels = {scalarKernels_, defaultKernels_};
+		long[] times = new long[2];
+		for (int k=0; k<2; k++) {
+			fields[k] = new CRMultiField(size_, size_, 1, channelNames);
+			fields[k].setKernels(kernels[k]);
+			for (int c=0; c<numOfChannels; c++) {
+				fields[k].setDecay(c, Math.pow(decay, c + 1));
+				fields[k].setDiffusionRate(c, Math.min(rate, CRGridField.MAX_STABLE_RATE) * c / numOfChannels);
+				fill(fields[k].getChannel(c), new CRRandom(seed + c));
+			}
+			for (int step=0; step<WARM_UP_STEPS + numOfSteps; step++) {
+				long startTime = System.nanoTime();
+				fields[k].step(null);
+				if (step >= WARM_UP_STEPS) {
+					times[k] += System.nanoTime() - startTime;
+				}
+			}
+		}
+		boolean isIdentical = true;
+		for (int c=0; c<numOfChannels; c++) {
+			isIdentical &= Arrays.equals(getValues(fields[0].getChannel(c)), getValues(fields[1].getChannel(c)));
+		}
+		print("channels" + numOfChannels, size_, times, isIdentical);
+	}
+
+	/**
+	 * Measure mapping of values to colour alphas, as Pheromone does when it paints
+	 */
+	private void measureAlphas(int size_, CRFieldKernels scalarKernels_, CRFieldKernels defaultKernels_) {
+		CRGridField field = new CRGridField(size_, size_, 1);
+		fill(field, new CRRandom(seed));
+		double[] values = getValues(field);
+		double[][] alphas = new double[2][values.length];
+		CRFieldKernels[] kernels = {scalarKernels_, defaultKernels_};
+		long[] times = new long[2];
+		for (int k=0; k<2; k++) {
+			for (int step=0; step<WARM_UP_STEPS + numOfSteps; step++) {
+				long startTime = System.nanoTime();
+				kernels[k].scaleAndClamp(values, alphas[k], 0, values.length, 2.0, 1.0);
+				if (step >= WARM_UP_STEPS) {
+					times[k] += System.nanoTime() - startTime;
+				}
+			}
+		}
+		print("alphas", size_, times, Arrays.equals(alphas[0], alphas[1]));
+	}
+
+	private void print(String operation_, int size_, long[] times_, boolean isIdentical_) {
+		double scalarTime = times_[0] / 1e6 / numOfSteps;
+		double defaultTime = times_[1] / 1e6 / numOfSteps;
+		System.out.println(String.format("%-10s %8d %14.3f %14.3f %10.2f %10s",
+				operation_, size_, scalarTime, defaultTime, scalarTime / defaultTime, isIdentical_));
+	}
+
+	private static void fill(CRField field_, CRRandom random_) {
+		for (int row=0; row<field_.getNumOfRows(); row++) {
+			for (int column=0; column<field_.getNumOfColumns(); column++) {
+				field_.set(row, column, random_.nextDouble());
+			}
+		}
+	}
+
+	private static double[] getValues(CRField field_) {
+		double[] values = new double[field_.getNumOfCells()];
+		field_.copyTo(values);
+		return values;
+	}
+}
@@ -0,0 +1,216 @@
+package net.lenkaspace.creeper.benchmark;
+
+import java.util.ArrayList;
+
+import net.lenkaspace.creeper.helpers.CRRandom;
+import net.lenkaspace.creeper.model.CRBaseSituatedModel;
+import net.lenkaspace.creeper.model.CRBinWorld;
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * Compares the spatial indexes of CRBinWorld on randomly placed objects.
+ * Each tick, the world is updated (e.g. the cell list is rebuilt), a fraction of the objects moves by up to 2 units
+ * and is sorted to its new bin, and objects around random object positions are queried into a reused list.
+ * With clustered=true, half of the objects are packed into a few dense clusters, like stones in nest walls.
+ * Arguments are key=value pairs, all optional:
+ * <pre>
+ *   objects=10000,100000,1000000   numbers of objects to test
+ *   indexes=bins,cellList,adaptive spatial index types to test
+ *   clustered=false                put half of the objects into dense clusters
+ *   autoTune=false                 let the world choose the cell size, see CRBinWorld.setAutoTuneCellSize()
+ *   objectsPerCell=4               average density, the world grows with the number of objects
+ *   cellSize=25                    size of a bin / cell
+ *   radius=10                      query radius
+ *   movedFraction=0.1              fraction of objects that move each tick
+ *   queries=10000                  queries per tick
+ *   ticks=20                       measured ticks, after 3 warm up ticks
+ *   seed=1
+ * </pre>
+ */
+public class CRSpatialIndexBenchmark {
+
+	private static final int WARM_UP_TICKS = 3;
+
+	private int[] numsOfObjects = {10000, 100000, 1000000};
+	private String[] indexTypes = CRBinWorld.SPATIAL_INDEX_TYPES;
+	private boolean isClustered = false;
+	private boolean isAutoTuned = false;
+	private double objectsPerCell = 4;
+	private double cellSize = 25;
+	private double radius = 10;
+	private double movedFraction = 0.1;
+	private int numOfQueries = 10000;
+	private int numOfTicks = 20;
+	private long seed = 1;
+
+	public static void main(String[] args) {
+		CRSpatialIndexBenchmark benchmark = new CRSpatialIndexBenchmark();
+		for (String arg : args) {
+			int separatorIndex = arg.indexOf('=');
+			if (separatorIndex <= 0 || !benchmark.setValue(arg.substring(0, separatorIndex).trim(), arg.substring(separatorIndex+1).trim())) {
+				System.err.println("CRSpatialIndexBenchmark - unknown argument " + arg);
+				System.exit(1);
+			}
+		}
+		benchmark.run();
+	}
+
+	/**
+	 * Set a parameter
+	 * @param key_ String parameter name
+	 * @param value_ String value
+	 * @return boolean false if the parameter doesn't exist or the value is invalid
+	 */
+	public boolean setValue(String key_, String value_) {
+		try {
+			if (key_.equals("objects")) {
+				String[] values = value_.split(",");
+				numsOfObjects = new int[values.length];
+				for (int i=0; i<values.length; i++) {
+					numsOfObjects[i] = Integer.parseInt(values[i].trim());
+				}
+			} else if (key_.equals("indexes")) {
+				indexTypes = value_.split(",");
+				for (int i=0; i<indexTypes.length; i++) {
+					indexTypes[i] = indexTypes[i].trim();
+					if (!CRBinWorld.isSpatialIndexType(indexTypes[i])) {
+						return false;
+					}
+				}
+			} else if (key_.equals("clustered")) {
+				isClustered = Boolean.parseBoolean(value_);
+			} else if (key_.equals("autoTune")) {
+				isAutoTuned = Boolean.parseBoolean(value_);
+			} else if (key_.equals("objectsPerCell")) {
+				objectsPerCell = Double.parseDouble(value_);
+			} else if (key_.equals("cellSize")) {
+				cellSize = Double.parseDouble(value_);
+			} else if (key_.equals("radius")) {
+				radius = Double.parseDouble(value_);
+			} else if (key_.equals("movedFraction")) {
+				movedFraction = Double.parseDouble(value_);
+			} else if (key_.equals("queries")) {
+				numOfQueries = Integer.parseInt(value_);
+			} else if (key_.equals("ticks")) {
+				numOfTicks = Integer.parseInt(value_);
+			} else if (key_.equals("seed")) {
+				seed = Long.parseLong(value_);
+			} else {
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Run all measurements and print one line per index and number of objects
+	 */
+	public void run() {
+		System.out.println(String.format("%-10s %10s %10s %12s %14s %14s %14s %14s",
+				"index", "objects", "cell size", "build ms", "update ms/tick", "move ms/tick", "query us", "neighbours"));
+		for (int numOfObjects : numsOfObjects) {
+			for (String indexType : indexTypes) {
+				measure(numOfObjects, indexType);
+			}
+		}
+	}
+
+	/**
+	 * Measure one index with a number of objects. All indexes get the same objects, moves and queries.
+	 * @param numOfObjects_ int number of objects
+	 * @param indexType_ String one of CRBinWorld.SPATIAL_INDEX_TYPES
+	 */
+	private void measure(int numOfObjects_, String indexType_) {
+		double worldSide = Math.ceil(Math.sqrt(numOfObjects_ / objectsPerCell)) * cellSize;
+		CRRandom random = new CRRandom(seed);
+		ArrayList<CRBaseSituatedModel> models = new ArrayList<CRBaseSituatedModel>(numOfObjects_);
+		//-- clusters of about 1000 objects, 100 per cell
+		int numOfClusters = Math.max(1, numOfObjects_ / 2000);
+		double clusterRadius = cellSize * Math.sqrt(10) / 2; //squares of 10 cells
+		double[] clusterX = new double[numOfClusters];
+		double[] clusterY = new double[numOfClusters];
+		for (int i=0; i<numOfClusters; i++) {
+			clusterX[i] = random.nextDouble() * worldSide;
+			clusterY[i] = random.nextDouble() * worldSide;
+		}
+		for (int i=0; i<numOfObjects_; i++) {
+			CRVector3d position = new CRVector3d(random.nextDouble() * worldSide, random.nextDouble() * worldSide, 0);
+			if (isClustered && i % 2 == 0) {
+				int cluster = (i / 2) % numOfClusters;
+				position.x = wrap(clusterX[cluster] + (random.nextDouble() * 2 - 1) * clusterRadius, worldSide);
+				position.y = wrap(clusterY[cluster] + (random.nextDouble() * 2 - 1) * clusterRadius, worldSide);
+			}
+			models.add(new CRBaseSituatedModel(i, position, new CRVector3d(2,2,0), 0, CRBaseSituatedModel.SHAPE.RECTANGLE, ""));
+		}
+
+		//-- build
+		long startTime = System.nanoTime();
+		CRBinWorld world = new CRBinWorld(new CRVector3d(cellSize, cellSize, 0), 0, new CRVector3d(worldSide, worldSide, 0), null);
+		world.setSpatialIndex(indexType_, cellSize);
+		world.setSituatedModels(models);
+		world.getSpatialIndex().rebuild(models);
+		world.setQueryRadiusHint(radius);
+		world.setAutoTuneCellSize(isAutoTuned);
+		double buildTime = (System.nanoTime() - startTime) / 1e6;
+
+		//-- ticks
+		int numOfMoves = (int)(numOfObjects_ * movedFraction);
+		long updateTime = 0;
+		long moveTime = 0;
+		long queryTime = 0;
+		long numOfNeighbours = 0;
+		ArrayList<CRBaseSituatedModel> queryBuffer = new ArrayList<CRBaseSituatedModel>();
+		for (int tick=0; tick<WARM_UP_TICKS + numOfTicks; tick++) {
+			boolean isMeasured = tick >= WARM_UP_TICKS;
+
+			startTime = System.nanoTime();
+			world.update();
+			long endTime = System.nanoTime();
+			if (isMeasured) {
+				updateTime += endTime - startTime;
+			}
+
+			startTime = System.nanoTime();
+			for (int i=0; i<numOfMoves; i++) {
+				CRBaseSituatedModel model = models.get((int)(random.nextDouble() * numOfObjects_));
+				CRVector3d position = model.getPosition();
+				model.getPreviousPosition().copyFrom(position);
+				position.x = wrap(position.x + (random.nextDouble() * 4 - 2), worldSide);
+				position.y = wrap(position.y + (random.nextDouble() * 4 - 2), worldSide);
+				world.sortObjectToABin(model);
+			}
+			endTime = System.nanoTime();
+			if (isMeasured) {
+				moveTime += endTime - startTime;
+			}
+
+			startTime = System.nanoTime();
+			for (int i=0; i<numOfQueries; i++) {
+				CRBaseSituatedModel model = models.get((int)(random.nextDouble() * numOfObjects_));
+				queryBuffer.clear();
+				world.getSituatedModelsAroundPosition(model.getPosition(), radius, queryBuffer);
+				numOfNeighbours += queryBuffer.size();
+			}
+			endTime = System.nanoTime();
+			if (isMeasured) {
+				queryTime += endTime - startTime;
+			}
+		}
+
+		System.out.println(String.format("%-10s %10d %10.2f %12.1f %14.3f %14.3f %14.3f %14d",
+				indexType_, numOfObjects_, world.getCellSize(), buildTime,
+				updateTime / 1e6 / numOfTicks, moveTime / 1e6 / numOfTicks,
+				queryTime / 1e3 / ((double)numOfTicks * numOfQueries), numOfNeighbours));
+	}
+
+	private static double wrap(double value_, double max_) {
+		if (value_ < 0) {
+			return value_ + max_;
+		} else if (value_ >= max_) {
+			return value_ - max_;
+		}
+		return value_;
+	}
+}
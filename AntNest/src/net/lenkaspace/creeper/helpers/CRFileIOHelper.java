@@ -28,7 +28,7 @@ public class CRFileIOHelper {
 	 * @param component_ Component to print
 	 * @param fileName String filename without an extension
 	 */
-	public static void componentToJpeg(Component component_ , String fileName){ 
+	public static synchronized void componentToJpeg(Component component_ , String fileName){ 
 		if (fileName.length() > 0) {
 			//-- add .jpg to file name:
 			fileName += ".jpg";
@@ -48,6 +48,23 @@ public class CRFileIOHelper {
 		}
 	}
 	
+	/**
+	 * Save an image into an image file
+	 * @param image_ BufferedImage to save
+	 * @param fileName String filename without an extension
+	 */
+	public static void imageToJpeg(BufferedImage image_, String fileName){ 
+		if (fileName.length() > 0) {
+			//-- add .jpg to file name:
+			fileName += ".jpg";
+			try { 
+				ImageIO.write(image_, "jpg", new File(fileName));
+			} catch (Exception e){
+				System.err.println("Error in writing " + fileName +":" +e.getMessage()) ;
+			} 
+		}
+	}
+	
 	/**
 	 * Put a string into a new txt file
 	 * @param stringToPrint_ String contents of the file
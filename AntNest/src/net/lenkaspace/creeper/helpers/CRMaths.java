@@ -1,9 +1,8 @@
 package net.lenkaspace.creeper.helpers;
 
-import java.util.Random;
-
 /**
- * Provides static methods with mathematical functions
+ * Provides static methods with mathematical functions.
+ * Random numbers come from CRRandom.getSingleton(), i.e. the generator of the current simulation.
  * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
@@ -51,7 +50,7 @@ public class CRMaths {
 	    //get the range, casting to long to avoid overflow problems
 	    long range = (long)aEnd - (long)aStart + 1;
 	    // compute a fraction of the range, 0 <= frac < range
-	    long fraction = (long)(range * Math.random());
+	    long fraction = (long)(range * CRRandom.getSingleton().nextDouble());
 	    int randomNumber =  (int)(fraction + aStart); 
 	    if (inclZero_) {
 	    	return (double)randomNumber/10;
@@ -75,29 +74,14 @@ public class CRMaths {
 	 * @param canBePositiveOrNegative the function can also return numbers from <-end;-start>
 	 */
 	public static int getRandomInteger(int start_, int end_, boolean canBePositiveOrNegative) {
-		if ( start_ > end_ ) {
-	      throw new IllegalArgumentException("Start cannot exceed End.");
-	    }
-	    //get the range, casting to long to avoid overflow problems
-	    long range = (long)end_ - (long)start_ + 1;
-	    // compute a fraction of the range, 0 <= frac < range
-	    long fraction = (long)(range * Math.random());
-	    int randomNumber =  (int)((fraction + start_)); 
-	    
-	    if (canBePositiveOrNegative && Math.random() < 0.5) {
-	    	randomNumber = -randomNumber;
-		}
-	    
-	    return randomNumber;
-	    
+		return CRRandom.getSingleton().getRandomInteger(start_, end_, canBePositiveOrNegative);
 	}
 	
 	/**
 	 * Return a random Gaussian number
 	 */
 	public static double getRandomGaussian (double mean_, double variance_) {
-		Random rand = new Random();
-		return (mean_ + rand.nextGaussian()*variance_);
+		return CRRandom.getSingleton().getRandomGaussian(mean_, variance_);
 	}
 	
 	
@@ -0,0 +1,147 @@
+package net.lenkaspace.creeper.helpers;
+
+import java.util.SplittableRandom;
+
+/**
+ * A fast, seedable random number generator. Not thread safe: each simulation uses its own instance,
+ * bound to the simulation thread with bindToCurrentThread(), and model objects that draw many numbers
+ * can keep their own stream created with split().
+ * All random functions of CRMaths use getSingleton().
+ */
+public class CRRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private SplittableRandom random;
+	private double nextGaussian;
+	private boolean hasNextGaussian;
+
+	//==================================== SINGLETON ====================================
+	private static CRRandom singletonReference;
+	private static final ThreadLocal<CRRandom> threadReference = new ThreadLocal<CRRandom>();
+
+	public static CRRandom getSingleton() {
+		CRRandom boundRandom = threadReference.get();
+		if (boundRandom != null)
+			return boundRandom;
+		if (singletonReference == null)
+			singletonReference = new CRRandom(System.nanoTime());
+		return singletonReference;
+	}
+
+	/**
+	 * Make getSingleton() return the given generator in the calling thread
+	 * @param random_ CRRandom generator of the simulation executed by the calling thread
+	 */
+	public static void bindToCurrentThread(CRRandom random_) { threadReference.set(random_); }
+
+	/**
+	 * Make getSingleton() return the global generator in the calling thread again
+	 */
+	public static void unbindFromCurrentThread() { threadReference.remove(); }
+
+	//==================================== CONSTRUCTORS =================================
+
+	/**
+	 * Constructor
+	 * @param seed_ long seed
+	 */
+	public CRRandom(long seed_) {
+		setSeed(seed_);
+	}
+
+	private CRRandom(SplittableRandom random_) {
+		random = random_;
+		hasNextGaussian = false;
+	}
+
+	//==================================== SEEDING ======================================
+
+	/**
+	 * Restart the sequence of numbers from a new seed
+	 * @param seed_ long seed
+	 */
+	public void setSeed(long seed_) {
+		random = new SplittableRandom(seed_);
+		hasNextGaussian = false;
+	}
+
+	/**
+	 * Create a new, statistically independent generator. The sequence of the new generator only depends
+	 * on the state of this one, so splitting in a deterministic order gives reproducible streams.
+	 * @return CRRandom new generator
+	 */
+	public CRRandom split() {
+		return new CRRandom(random.split());
+	}
+
+	/**
+	 * Combine a seed with a stream number into a new, well mixed seed, e.g. to get one seed per run
+	 * @param seed_ long base seed
+	 * @param stream_ long stream number
+	 * @return long mixed seed
+	 */
+	public static long mixSeed(long seed_, long stream_) {
+		long z = seed_ + (stream_ + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	//==================================== NUMBERS ======================================
+
+	/**
+	 * Return a random double between <0;1)
+	 */
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * Return a random integer between <start;end>
+	 * @param start_ int start of the interval, included
+	 * @param end_ int end of the interval, included
+	 * @param canBePositiveOrNegative_ the function can also return numbers from <-end;-start>
+	 */
+	public int getRandomInteger(int start_, int end_, boolean canBePositiveOrNegative_) {
+		if ( start_ > end_ ) {
+			throw new IllegalArgumentException("Start cannot exceed End.");
+		}
+		//-- get the range, casting to long to avoid overflow problems
+		long range = (long)end_ - (long)start_ + 1;
+		int randomNumber = (int)(random.nextLong(range) + start_);
+		if (canBePositiveOrNegative_ && random.nextDouble() < 0.5) {
+			randomNumber = -randomNumber;
+		}
+		return randomNumber;
+	}
+
+	/**
+	 * Return a random Gaussian number
+	 * @param mean_ double mean
+	 * @param variance_ double multiplier of the standard normal deviate (i.e. standard deviation)
+	 */
+	public double getRandomGaussian(double mean_, double variance_) {
+		return mean_ + nextGaussian() * variance_;
+	}
+
+	/**
+	 * Return a standard normal deviate, using the polar Box-Muller method. Every other call is free.
+	 */
+	public double nextGaussian() {
+		if (hasNextGaussian) {
+			hasNextGaussian = false;
+			return nextGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2 * random.nextDouble() - 1;
+			v2 = 2 * random.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+		nextGaussian = v2 * multiplier;
+		hasNextGaussian = true;
+		return v1 * multiplier;
+	}
+}
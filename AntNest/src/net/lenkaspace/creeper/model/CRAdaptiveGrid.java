@@ -0,0 +1,265 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A two level grid that adapts to uneven density. Coarse cells hold their models in one list, until more than
+ * splitThreshold models gather in a cell. The cell is then split into subdivisions x subdivisions fine cells, so
+ * that a query in a crowded area, e.g. next to a wall of stones, only goes through the fine cells it reaches.
+ * A split cell merges back when it holds fewer than half of splitThreshold models. Cells are only split and merged
+ * in update(), so the order of models stays deterministic.
+ * Every model knows its list (a coarse cell or a fine cell) and its slot in it, so moving it takes constant time.
+ * Spatial layers are checked model by model.
+ */
+public class CRAdaptiveGrid implements CRSpatialIndex {
+
+	private static final int NONE = -1;
+
+	private final CRGridAxis columnAxis;
+	private final CRGridAxis rowAxis;
+	private final CRGridAxis fineColumnAxis;
+	private final CRGridAxis fineRowAxis;
+	private final int subdivisions;
+	private final int splitThreshold;
+	private final int numOfCells;
+
+	//-- lists of models: one per coarse cell first, then blocks of subdivisions^2 fine cells created by the first split of a cell
+	private final ArrayList<ArrayList<CRBaseSituatedModel>> leaves;
+	private final ArrayList<Integer> leafCells; //coarse cell of each list after the coarse ones
+	private final int[] fineLeafStart; //first fine list of each coarse cell, NONE if never split
+	private final boolean[] isSplit;
+	private final int[] cellCount; //models in each coarse cell, including its fine cells
+	private int numOfSplitCells;
+
+	/**
+	 * Constructor
+	 * @param worldWidth_ double width of the world
+	 * @param worldHeight_ double height of the world
+	 * @param cellSize_ double side of a coarse cell
+	 * @param subdivisions_ int number of fine cells along each side of a split cell
+	 * @param splitThreshold_ int number of models above which a coarse cell splits
+	 * @param isWrapped_ boolean true if queries at one edge of the world should reach to the opposite edge
+	 */
+	public CRAdaptiveGrid(double worldWidth_, double worldHeight_, double cellSize_, int subdivisions_, int splitThreshold_, boolean isWrapped_) {
+		columnAxis = new CRGridAxis(worldWidth_, cellSize_, isWrapped_);
+		rowAxis = new CRGridAxis(worldHeight_, cellSize_, isWrapped_);
+		subdivisions = Math.max(2, subdivisions_);
+		fineColumnAxis = new CRGridAxis(worldWidth_, cellSize_ / subdivisions, isWrapped_);
+		fineRowAxis = new CRGridAxis(worldHeight_, cellSize_ / subdivisions, isWrapped_);
+		splitThreshold = Math.max(2, splitThreshold_);
+		numOfCells = columnAxis.numOfCells * rowAxis.numOfCells;
+
+		leaves = new ArrayList<ArrayList<CRBaseSituatedModel>>(numOfCells);
+		for (int i=0; i<numOfCells; i++) {
+			leaves.add(new ArrayList<CRBaseSituatedModel>());
+		}
+		leafCells = new ArrayList<Integer>();
+		fineLeafStart = new int[numOfCells];
+		isSplit = new boolean[numOfCells];
+		cellCount = new int[numOfCells];
+		for (int i=0; i<numOfCells; i++) {
+			fineLeafStart[i] = NONE;
+		}
+		numOfSplitCells = 0;
+	}
+
+	//==================================== BUILDING =====================================
+
+	public void rebuild(List<? extends CRBaseSituatedModel> models_) {
+		clear();
+		for (int i=0; i<models_.size(); i++) {
+			onModelMoved(models_.get(i));
+		}
+		update(models_);
+	}
+
+	/**
+	 * Split crowded coarse cells and merge emptied ones
+	 */
+	public void update(List<? extends CRBaseSituatedModel> models_) {
+		for (int cell=0; cell<numOfCells; cell++) {
+			if (!isSplit[cell] && cellCount[cell] > splitThreshold) {
+				split(cell);
+			} else if (isSplit[cell] && cellCount[cell] < splitThreshold / 2) {
+				merge(cell);
+			}
+		}
+	}
+
+	public void onModelMoved(CRBaseSituatedModel model_) {
+		double x = model_.getPosition().x;
+		double y = model_.getPosition().y;
+		int cell = rowAxis.getCell(y) * columnAxis.numOfCells + columnAxis.getCell(x);
+		int leaf = isSplit[cell] ? getFineLeaf(cell, x, y) : cell;
+		boolean isInALeaf = isInItsLeaf(model_);
+		if (isInALeaf && model_.binIndex == leaf) {
+			return;
+		}
+		if (isInALeaf) {
+			removeFromItsLeaf(model_);
+		}
+		addToLeaf(model_, leaf, cell);
+	}
+
+	public void clear() {
+		for (int i=0; i<leaves.size(); i++) {
+			leaves.get(i).clear();
+		}
+		for (int cell=0; cell<numOfCells; cell++) {
+			isSplit[cell] = false;
+			cellCount[cell] = 0;
+		}
+		numOfSplitCells = 0;
+	}
+
+	public boolean needsRebuild() { return false; }
+
+	//==================================== QUERIES ======================================
+
+	/**
+	 * Add models of some layers from the cells reached by a circle around a position to a list.
+	 * Coarse cells are visited row by row, the reached fine cells of a split coarse cell row by row as well.
+	 */
+	public void getModelsAroundPosition(double x_, double y_, double radius_, int layerMask_, ArrayList<CRBaseSituatedModel> result_) {
+		double squaredRadius = radius_ * radius_;
+		for (int rowSegment=0; rowSegment<2; rowSegment++) {
+			int lastRow = rowAxis.getLastCell(y_, radius_, rowSegment);
+			for (int row=rowAxis.getFirstCell(y_, radius_, rowSegment); row<=lastRow; row++) {
+				double yDistance = rowAxis.getDistance(y_, row);
+				for (int columnSegment=0; columnSegment<2; columnSegment++) {
+					int lastColumn = columnAxis.getLastCell(x_, radius_, columnSegment);
+					for (int column=columnAxis.getFirstCell(x_, radius_, columnSegment); column<=lastColumn; column++) {
+						double xDistance = columnAxis.getDistance(x_, column);
+						if (xDistance*xDistance + yDistance*yDistance > squaredRadius) {
+							continue;
+						}
+						int cell = row * columnAxis.numOfCells + column;
+						if (!isSplit[cell]) {
+							addModels(leaves.get(cell), layerMask_, result_);
+							continue;
+						}
+						//-- fine cells of a split cell, tested one by one
+						for (int fineRow=0; fineRow<subdivisions; fineRow++) {
+							double fineYDistance = fineRowAxis.getDistance(y_, row * subdivisions + fineRow);
+							if (fineYDistance*fineYDistance > squaredRadius) {
+								continue;
+							}
+							for (int fineColumn=0; fineColumn<subdivisions; fineColumn++) {
+								double fineXDistance = fineColumnAxis.getDistance(x_, column * subdivisions + fineColumn);
+								if (fineXDistance*fineXDistance + fineYDistance*fineYDistance <= squaredRadius) {
+									addModels(leaves.get(fineLeafStart[cell] + fineRow * subdivisions + fineColumn), layerMask_, result_);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public int getNumOfCells() { return numOfCells; }
+	public int getNumOfSplitCells() { return numOfSplitCells; }
+	public int getNumOfModelsInCell(int cell_) { return cellCount[cell_]; }
+	public boolean isCellSplit(int cell_) { return isSplit[cell_]; }
+
+	//==================================== HELPERS ======================================
+
+	private static void addModels(ArrayList<CRBaseSituatedModel> leaf_, int layerMask_, ArrayList<CRBaseSituatedModel> result_) {
+		boolean isFiltered = layerMask_ != CRBinWorld.ALL_LAYERS;
+		for (int i=0; i<leaf_.size(); i++) {
+			CRBaseSituatedModel model = leaf_.get(i);
+			if (!isFiltered || (layerMask_ & (1 << model.spatialLayer)) != 0) {
+				result_.add(model);
+			}
+		}
+	}
+
+	/**
+	 * Get the fine list of a position within a split coarse cell
+	 */
+	private int getFineLeaf(int cell_, double x_, double y_) {
+		int column = cell_ % columnAxis.numOfCells;
+		int row = cell_ / columnAxis.numOfCells;
+		int fineColumn = Math.min(subdivisions - 1, Math.max(0, fineColumnAxis.getCell(x_) - column * subdivisions));
+		int fineRow = Math.min(subdivisions - 1, Math.max(0, fineRowAxis.getCell(y_) - row * subdivisions));
+		return fineLeafStart[cell_] + fineRow * subdivisions + fineColumn;
+	}
+
+	private int getCellOfLeaf(int leaf_) {
+		return leaf_ < numOfCells ? leaf_ : leafCells.get(leaf_ - numOfCells);
+	}
+
+	/**
+	 * Move models of a coarse cell to its fine cells, in their order
+	 */
+	private void split(int cell_) {
+		if (fineLeafStart[cell_] == NONE) {
+			fineLeafStart[cell_] = leaves.size();
+			for (int i=0; i<subdivisions*subdivisions; i++) {
+				leaves.add(new ArrayList<CRBaseSituatedModel>());
+				leafCells.add(cell_);
+			}
+		}
+		isSplit[cell_] = true;
+		numOfSplitCells++;
+		ArrayList<CRBaseSituatedModel> coarseLeaf = leaves.get(cell_);
+		for (int i=0; i<coarseLeaf.size(); i++) {
+			CRBaseSituatedModel model = coarseLeaf.get(i);
+			int leaf = getFineLeaf(cell_, model.getPosition().x, model.getPosition().y);
+			model.binIndex = leaf;
+			model.binSlot = leaves.get(leaf).size();
+			leaves.get(leaf).add(model);
+		}
+		coarseLeaf.clear();
+	}
+
+	/**
+	 * Move models of the fine cells of a coarse cell back to it, fine cell by fine cell
+	 */
+	private void merge(int cell_) {
+		ArrayList<CRBaseSituatedModel> coarseLeaf = leaves.get(cell_);
+		for (int i=0; i<subdivisions*subdivisions; i++) {
+			ArrayList<CRBaseSituatedModel> fineLeaf = leaves.get(fineLeafStart[cell_] + i);
+			for (int j=0; j<fineLeaf.size(); j++) {
+				CRBaseSituatedModel model = fineLeaf.get(j);
+				model.binIndex = cell_;
+				model.binSlot = coarseLeaf.size();
+				coarseLeaf.add(model);
+			}
+			fineLeaf.clear();
+		}
+		isSplit[cell_] = false;
+		numOfSplitCells--;
+	}
+
+	private boolean isInItsLeaf(CRBaseSituatedModel model_) {
+		int leaf = model_.binIndex;
+		int slot = model_.binSlot;
+		if (leaf < 0 || leaf >= leaves.size() || slot < 0) {
+			return false;
+		}
+		ArrayList<CRBaseSituatedModel> list = leaves.get(leaf);
+		return slot < list.size() && list.get(slot) == model_;
+	}
+
+	private void addToLeaf(CRBaseSituatedModel model_, int leaf_, int cell_) {
+		ArrayList<CRBaseSituatedModel> list = leaves.get(leaf_);
+		model_.binIndex = leaf_;
+		model_.binLayer = NONE;
+		model_.binSlot = list.size();
+		list.add(model_);
+		cellCount[cell_]++;
+	}
+
+	private void removeFromItsLeaf(CRBaseSituatedModel model_) {
+		ArrayList<CRBaseSituatedModel> list = leaves.get(model_.binIndex);
+		CRBaseSituatedModel lastModel = list.remove(list.size() - 1);
+		if (lastModel != model_) {
+			list.set(model_.binSlot, lastModel);
+			lastModel.binSlot = model_.binSlot;
+		}
+		model_.binSlot = NONE;
+		cellCount[getCellOfLeaf(model_.binIndex)]--;
+	}
+}
@@ -17,6 +17,8 @@ public class CRBaseDynamicModel extends CRBaseSituatedModel {
 	
 	protected double maxSpeed; //multiplied by thurstForce to determine final speed
 	
+	int dynamicModelIndex; //index in the dynamic models of the world, used to wake the model up
+	
 	
 	
 	/**
@@ -34,7 +36,7 @@ public class CRBaseDynamicModel extends CRBaseSituatedModel {
 		thrustForce = 0;
 		minThrustForce = -1;
 		maxThrustForce = 1;
-		
+		dynamicModelIndex = -1;
 	}
 	
 	
@@ -49,6 +51,15 @@ public class CRBaseDynamicModel extends CRBaseSituatedModel {
 		super.onTrialStart(trialNumber_, runNumber_);
 	}
 	
+	/**
+	 * Called from CRWorld before onUpdateLoopStart() of all objects is called, only if CRSettings parallel update is on.
+	 * Models sense at the same time in different threads, so this must only read the world and write own variables.
+	 * Don't use random numbers or thread-bound singletons here. Act on what was sensed in onUpdateLoopStart().
+	 */
+	public void onSense() {
+		
+	}
+	
 	/**
 	 * Called from CRWorld before update() of all objects is called.
 	 * Use this to reset any temporary variables. 
@@ -65,6 +76,15 @@ public class CRBaseDynamicModel extends CRBaseSituatedModel {
 		
 	}
 	
+	/**
+	 * Called from CRWorld at the end of each update loop. A model that can sleep isn't updated any more
+	 * until something wakes it with CRWorld.wakeDynamicModel(), so only return true if updating it wouldn't change anything.
+	 * @return boolean false by default
+	 */
+	public boolean canSleep() {
+		return false;
+	}
+	
 	//==================================== UPDATE LOOP ==========================================
 	
 	/**
@@ -80,8 +100,8 @@ public class CRBaseDynamicModel extends CRBaseSituatedModel {
 	public void applyThrusters()  {	
 			
     	//-- calculate the position change:
-		double xVelocity = Math.sin(Math.toRadians(rotation)) * thrustForce * maxSpeed;
-    	double yVelocity = -Math.cos(Math.toRadians(rotation)) * thrustForce * maxSpeed;
+		double xVelocity = getRotationSin() * thrustForce * maxSpeed;
+    	double yVelocity = -getRotationCos() * thrustForce * maxSpeed;
     	
     	previousPosition.copyFrom(position);
     	position.x += xVelocity;
@@ -1,9 +1,8 @@
 package net.lenkaspace.creeper.model;
 
 import java.awt.Graphics;
-import java.awt.Point;
-import java.awt.Polygon;
 
+import net.lenkaspace.creeper.view.CRPaintSnapshot;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
 /**
@@ -31,6 +30,27 @@ public class CRBaseSituatedModel extends CRBaseModel {
         protected boolean isRenderedByImage = true;
 	
 	public int binIndex;
+	int binSlot; //index in the list of the bin at binIndex
+	int binLayer; //layer of the bin at binIndex
+	protected int spatialLayer; //layer of CRBinWorld bins, 0 - 31
+	int cellListIndex; //index in the CRCellList of the world, if used
+	int broadPhaseIndex; //index in the CRSweepAndPrune of the world, if used
+	
+	//-- pose cache, recomputed by updatePose() when rotation, position or size differ from the values it was computed for
+	private double trigRotation;
+	private double rotationSin;
+	private double rotationCos;
+	private double poseX;
+	private double poseY;
+	private double poseRotation;
+	private double poseWidth;
+	private double poseHeight;
+	private double[] cornerX;
+	private double[] cornerY;
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
 	
 	
 	
@@ -53,7 +73,17 @@ public class CRBaseSituatedModel extends CRBaseModel {
 		isVisible = true;
 		shape = shape_;
 		
+		trigRotation = Double.NaN;
+		poseRotation = Double.NaN;
+		cornerX = new double[4];
+		cornerY = new double[4];
+		
 		binIndex = -1;
+		binSlot = -1;
+		binLayer = -1;
+		spatialLayer = 0;
+		cellListIndex = -1;
+		broadPhaseIndex = -1;
 	}
 	
 	//==================================== SIMULATION EVENTS ====================================
@@ -70,34 +100,16 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	//==================================== COLLISION DETECTION===================================
 	
 	/**
-	 * Find out if colliding with another object
+	 * Find out if colliding with another object.
+	 * Two rectangles collide if they overlap, including touching, which is decided in double precision
+	 * by isOverlappingRectangle(). Other shapes are treated as circles with diameter of their width.
 	 * @param anotherObject_ CRBaseSituatedModel another object
 	 * @return boolean true if collision detected
 	 */
 	public boolean isCollidingWith(CRBaseSituatedModel anotherObject_) {
 		
-		//-- rectangle-polygon collision detection
 		if (this.shape == SHAPE.RECTANGLE && anotherObject_.getShape() == SHAPE.RECTANGLE){
-			
-			CRVector3d[] selfCorners = this.getCorners();
-			CRVector3d[] anotherObjectCorners = anotherObject_.getCorners();
-					
-			int[] anotherObjectsXCorrds = new int[4];
-			int[] anotherObjectsYCorrds = new int[4];
-			
-			for (int i=0; i<4; i++) {
-				anotherObjectsXCorrds[i] = (int)anotherObjectCorners[i].x;
-				anotherObjectsYCorrds[i] = (int)anotherObjectCorners[i].y;
-			}
-				
-			Polygon polygon = new Polygon(anotherObjectsXCorrds, anotherObjectsYCorrds,4);
-			for (int i=0; i<4; i++) {
-				if (polygon.contains(new Point((int)selfCorners[i].x, (int) selfCorners[i].y))) {
-					return true;			
-				}
-			}
-			
-
+			return isOverlappingRectangle(anotherObject_);
 		} else {
 			//---- circle-circle collision detection
 			double distanceOfMiddles = Math.hypot(position.x - anotherObject_.getPosition().x, position.y - anotherObject_.getPosition().y);
@@ -108,6 +120,57 @@ public class CRBaseSituatedModel extends CRBaseModel {
     	return false;
 	}
 	
+	/**
+	 * Find out if own rectangle overlaps with the rectangle of another object, using the separating axis test
+	 * for oriented rectangles. Cached bounding boxes aligned with the world axes are compared first, which rejects
+	 * most pairs. Doesn't allocate anything.
+	 * @param anotherObject_ CRBaseSituatedModel another object, treated as a rectangle whatever its shape
+	 * @return boolean true if the rectangles overlap or touch
+	 */
+	public boolean isOverlappingRectangle(CRBaseSituatedModel anotherObject_) {
+		updatePose();
+		anotherObject_.updatePose();
+		
+		//-- bounding boxes
+		if (maxX < anotherObject_.minX || anotherObject_.maxX < minX || maxY < anotherObject_.minY || anotherObject_.maxY < minY) {
+			return false;
+		}
+		
+		//-- own axes: width along (cos, sin), height along (-sin, cos), see getCorners()
+		double cos = rotationCos;
+		double sin = rotationSin;
+		double halfWidth = size.x / 2;
+		double halfHeight = size.y / 2;
+		
+		double otherCos = anotherObject_.rotationCos;
+		double otherSin = anotherObject_.rotationSin;
+		double otherHalfWidth = anotherObject_.size.x / 2;
+		double otherHalfHeight = anotherObject_.size.y / 2;
+		
+		double dx = anotherObject_.position.x - position.x;
+		double dy = anotherObject_.position.y - position.y;
+		
+		//-- projections of the other rectangle's axes on own axes
+		double cosOfDifference = Math.abs(cos*otherCos + sin*otherSin); // |u1.u2| = |v1.v2|
+		double sinOfDifference = Math.abs(cos*otherSin - sin*otherCos); // |u1.v2| = |v1.u2|
+		
+		//-- own axes
+		if (Math.abs(dx*cos + dy*sin) > halfWidth + otherHalfWidth*cosOfDifference + otherHalfHeight*sinOfDifference) {
+			return false;
+		}
+		if (Math.abs(-dx*sin + dy*cos) > halfHeight + otherHalfWidth*sinOfDifference + otherHalfHeight*cosOfDifference) {
+			return false;
+		}
+		//-- axes of the other rectangle
+		if (Math.abs(dx*otherCos + dy*otherSin) > otherHalfWidth + halfWidth*cosOfDifference + halfHeight*sinOfDifference) {
+			return false;
+		}
+		if (Math.abs(-dx*otherSin + dy*otherCos) > otherHalfHeight + halfWidth*sinOfDifference + halfHeight*cosOfDifference) {
+			return false;
+		}
+		return true;
+	}
+	
 	//=========================== VECTORS & ADJUSTMENTS ===========================
 	/**
 	 * Get coordinates of corners, based on shape and current rotation
@@ -115,24 +178,12 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	 */
 	public CRVector3d[] getCorners() {
 		if (shape == SHAPE.RECTANGLE) {
+			updatePose();
+			//-- top right, bottom right, bottom left, top left before rotation
 			CRVector3d[] corners = new CRVector3d[4];
-			
-			//-- top right
-			corners[0] =  new CRVector3d(position.x + size.x/2, position.y - size.y/2, 0);
-			rotateVectorInLocalCoordinates(corners[0]);
-			
-			//-- bottom right
-			corners[1] =  new CRVector3d(position.x + size.x/2, position.y + size.y/2, 0);
-			rotateVectorInLocalCoordinates(corners[1]);
-			
-			//-- bottom left
-			corners[2] =  new CRVector3d(position.x - size.x/2, position.y + size.y/2, 0);
-			rotateVectorInLocalCoordinates(corners[2]);
-			
-			//-- top left
-			corners[3] =  new CRVector3d(position.x - size.x/2, position.y - size.y/2, 0);
-			rotateVectorInLocalCoordinates(corners[3]);
-		
+			for (int i=0; i<4; i++) {
+				corners[i] = new CRVector3d(cornerX[i], cornerY[i], 0);
+			}
 			return corners;
 		} else {
 			return null;
@@ -144,12 +195,50 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	 * @param vector_ CRVector3d vector to rotate
 	 */
 	public void rotateVectorInLocalCoordinates(CRVector3d vector_) {
-		CRVector3d temp = new CRVector3d();
+		updateRotationTrig();
 		double xDiff = position.x - vector_.x;
 		double yDiff = position.y - vector_.y;
-		temp.x = position.x - xDiff*Math.cos(Math.toRadians(rotation)) - yDiff*Math.sin(Math.toRadians(rotation));
-		temp.y = position.y - xDiff*Math.sin(Math.toRadians(rotation)) + yDiff*Math.cos(Math.toRadians(rotation));
-		vector_.copyFrom(temp);
+		double x = position.x - xDiff*rotationCos - yDiff*rotationSin;
+		vector_.y = position.y - xDiff*rotationSin + yDiff*rotationCos;
+		vector_.x = x;
+	}
+	
+	/**
+	 * Make sure the cached sine and cosine of the rotation, the corners and the bounding box match the current pose.
+	 * The getters call this, and it only recalculates anything after rotation, position or size changed.
+	 * The pose may be read by several threads at the same time once it is up to date, see CRWorld.sense().
+	 */
+	public void updatePose() {
+		updateRotationTrig();
+		if (position.x == poseX && position.y == poseY && rotation == poseRotation && size.x == poseWidth && size.y == poseHeight) {
+			return;
+		}
+		poseX = position.x;
+		poseY = position.y;
+		poseRotation = rotation;
+		poseWidth = size.x;
+		poseHeight = size.y;
+		
+		//-- corners in the order of getCorners(), rotated as by rotateVectorInLocalCoordinates()
+		for (int i=0; i<4; i++) {
+			double xDiff = (i == 0 || i == 1) ? -size.x/2 : size.x/2;
+			double yDiff = (i == 0 || i == 3) ? size.y/2 : -size.y/2;
+			cornerX[i] = position.x - xDiff*rotationCos - yDiff*rotationSin;
+			cornerY[i] = position.y - xDiff*rotationSin + yDiff*rotationCos;
+		}
+		minX = Math.min(Math.min(cornerX[0], cornerX[1]), Math.min(cornerX[2], cornerX[3]));
+		maxX = Math.max(Math.max(cornerX[0], cornerX[1]), Math.max(cornerX[2], cornerX[3]));
+		minY = Math.min(Math.min(cornerY[0], cornerY[1]), Math.min(cornerY[2], cornerY[3]));
+		maxY = Math.max(Math.max(cornerY[0], cornerY[1]), Math.max(cornerY[2], cornerY[3]));
+	}
+	
+	private void updateRotationTrig() {
+		if (rotation != trigRotation) {
+			double angle = Math.toRadians(rotation);
+			rotationSin = Math.sin(angle);
+			rotationCos = Math.cos(angle);
+			trigRotation = rotation;
+		}
 	}
 	
 	/**
@@ -199,11 +288,11 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	 * @return CRVector3d vector translated to local coordinates
 	 */
 	protected CRVector3d getVectorInLocalCoordinateSystem(CRVector3d vector_, boolean invertRotation_) {
-		double rot = Math.toRadians(rotation);
-		if (invertRotation_) { rot = -rot; }
+		updateRotationTrig();
+		double sin = invertRotation_ ? -rotationSin : rotationSin;
 		CRVector3d tempVec = new CRVector3d();
-		tempVec.x = vector_.x*Math.cos(rot) + vector_.y*Math.sin(rot);
-		tempVec.y = - vector_.x*Math.sin(rot) + vector_.y*Math.cos(rot);
+		tempVec.x = vector_.x*rotationCos + vector_.y*sin;
+		tempVec.y = - vector_.x*sin + vector_.y*rotationCos;
 		return tempVec;
 	}
 	
@@ -221,6 +310,18 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	
 	//==================================== GETTERS / SETTERS ====================================
 	public double getRotation() { return rotation; }
+	public double getRotationSin() { updateRotationTrig(); return rotationSin; }
+	public double getRotationCos() { updateRotationTrig(); return rotationCos; }
+	
+	/**
+	 * Get corners and the bounding box aligned with the world axes from the pose cache, see updatePose() and getCorners()
+	 */
+	public double getCornerX(int corner_) { updatePose(); return cornerX[corner_]; }
+	public double getCornerY(int corner_) { updatePose(); return cornerY[corner_]; }
+	public double getMinX() { updatePose(); return minX; }
+	public double getMinY() { updatePose(); return minY; }
+	public double getMaxX() { updatePose(); return maxX; }
+	public double getMaxY() { updatePose(); return maxY; }
 	public void setRotation(double rotation_) { 
 		rotation = rotation_; 
 		if (rotation > 180){
@@ -245,6 +346,20 @@ public class CRBaseSituatedModel extends CRBaseModel {
 	}
 	
 	public CRVector3d getPreviousPosition() { return previousPosition; }
+	
+	/**
+	 * Set layer of the CRBinWorld bins this model is stored in, so that queries can include or skip it by layer.
+	 * Takes effect when the model is next sorted to a bin.
+	 * @param spatialLayer_ int layer between 0 and CRBinWorld.NUM_OF_LAYERS - 1
+	 */
+	public void setSpatialLayer(int spatialLayer_) {
+		if (spatialLayer_ < 0 || spatialLayer_ >= CRBinWorld.NUM_OF_LAYERS) {
+			System.err.println("CRBaseSituatedModel - invalid spatial layer " + spatialLayer_);
+			return;
+		}
+		spatialLayer = spatialLayer_;
+	}
+	public int getSpatialLayer() { return spatialLayer; }
 
 	public CRVector3d getSize() { return size; }
 	public void setSize(CRVector3d size_) { size = size_; }
@@ -268,5 +383,16 @@ public class CRBaseSituatedModel extends CRBaseModel {
             if(isRenderedByImage())
                 return;
         }
+        
+        /**
+         * Create a copy of what paint() needs, so that it can be painted by the rendering thread while the model keeps changing.
+         * Only called for models that are not rendered by an image. Override together with paint().
+         * @param reusableSnapshot_ CRPaintSnapshot a snapshot created by this method earlier that is no longer used and can be
+         * refilled instead of creating a new one, or null. Can be a snapshot of a different model.
+         * @return CRPaintSnapshot snapshot, or null if there is nothing to paint
+         */
+        public CRPaintSnapshot createPaintSnapshot(CRPaintSnapshot reusableSnapshot_) {
+            return null;
+        }
 	
 }
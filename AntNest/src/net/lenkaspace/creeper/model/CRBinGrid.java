@@ -0,0 +1,169 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A uniform grid of bins over the world, the default spatial index of CRBinWorld.
+ * Each bin keeps a separate list for every spatial layer (see CRBaseSituatedModel.setSpatialLayer()), so queries
+ * can ask for objects of some layers only, without going through the others.
+ * Every object knows its bin and its slot in the bin, so moving it to another bin takes constant time.
+ */
+public class CRBinGrid implements CRSpatialIndex {
+
+	private final CRGridAxis columnAxis;
+	private final CRGridAxis rowAxis;
+	private final int numberOfBins;
+	private final ArrayList<CRBaseSituatedModel>[][] situatedModelBins; //[layer][bin], a layer is created when its first object arrives
+	private int usedLayers; //mask of layers that have bins
+
+	/**
+	 * Constructor
+	 * @param worldWidth_ double width of the world
+	 * @param worldHeight_ double height of the world
+	 * @param binWidth_ double width of a bin
+	 * @param binHeight_ double height of a bin
+	 * @param isWrapped_ boolean true if queries at one edge of the world should reach to the opposite edge
+	 */
+	@SuppressWarnings("unchecked")
+	public CRBinGrid(double worldWidth_, double worldHeight_, double binWidth_, double binHeight_, boolean isWrapped_) {
+		columnAxis = new CRGridAxis(worldWidth_, binWidth_, isWrapped_);
+		rowAxis = new CRGridAxis(worldHeight_, binHeight_, isWrapped_);
+		numberOfBins = columnAxis.numOfCells * rowAxis.numOfCells;
+		situatedModelBins = new ArrayList[CRBinWorld.NUM_OF_LAYERS][];
+		usedLayers = 0;
+	}
+
+	//==================================== BUILDING =====================================
+
+	public void rebuild(List<? extends CRBaseSituatedModel> models_) {
+		clear();
+		for (int i=0; i<models_.size(); i++) {
+			onModelMoved(models_.get(i));
+		}
+	}
+
+	public void update(List<? extends CRBaseSituatedModel> models_) {
+		//-- bins are always up to date
+	}
+
+	public void onModelMoved(CRBaseSituatedModel model_) {
+		int currentBinIndex = getBinIndexForPosition(model_.getPosition().x, model_.getPosition().y);
+		boolean isInABin = isInItsBin(model_);
+		//-- change to a different bin if should
+		if (!isInABin || model_.binIndex != currentBinIndex || model_.binLayer != model_.getSpatialLayer()) {
+			//-- take the model out of its old bin
+			if (isInABin) {
+				removeFromItsBin(model_);
+			}
+			//-- put it to a new bin
+			addToBin(model_, currentBinIndex);
+		}
+	}
+
+	public void clear() {
+		for (int layer=0; layer<CRBinWorld.NUM_OF_LAYERS; layer++) {
+			if (situatedModelBins[layer] != null) {
+				for (int i=0; i<numberOfBins; i++) {
+					situatedModelBins[layer][i].clear();
+				}
+			}
+		}
+	}
+
+	public boolean needsRebuild() { return false; }
+
+	//==================================== QUERIES ======================================
+
+	/**
+	 * Add models of some layers from bins reached by a circle around a position to a list.
+	 * Every bin that the circle reaches is included, also across the edges of a wrapped world, and no bin is included twice.
+	 * Bins are visited row by row, layers of a bin from the lowest.
+	 */
+	public void getModelsAroundPosition(double x_, double y_, double radius_, int layerMask_, ArrayList<CRBaseSituatedModel> result_) {
+		int layers = layerMask_ & usedLayers;
+		if (layers == 0) {
+			return;
+		}
+		double squaredRadius = radius_ * radius_;
+		for (int rowSegment=0; rowSegment<2; rowSegment++) {
+			int lastRow = rowAxis.getLastCell(y_, radius_, rowSegment);
+			for (int row=rowAxis.getFirstCell(y_, radius_, rowSegment); row<=lastRow; row++) {
+				double yDistance = rowAxis.getDistance(y_, row);
+				for (int columnSegment=0; columnSegment<2; columnSegment++) {
+					int lastColumn = columnAxis.getLastCell(x_, radius_, columnSegment);
+					for (int column=columnAxis.getFirstCell(x_, radius_, columnSegment); column<=lastColumn; column++) {
+						double xDistance = columnAxis.getDistance(x_, column);
+						if (xDistance*xDistance + yDistance*yDistance <= squaredRadius) {
+							int binIndex = row * columnAxis.numOfCells + column;
+							for (int remainingLayers=layers; remainingLayers!=0; remainingLayers&=remainingLayers-1) {
+								ArrayList<CRBaseSituatedModel> bin = situatedModelBins[Integer.numberOfTrailingZeros(remainingLayers)][binIndex];
+								for (int i=0; i<bin.size(); i++) {
+									result_.add(bin.get(i));
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get index of the bin containing a position. Positions outside of the world belong to the nearest edge bin.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @return int bin index, row by row
+	 */
+	public int getBinIndexForPosition(double x_, double y_) {
+		return rowAxis.getCell(y_) * columnAxis.numOfCells + columnAxis.getCell(x_);
+	}
+
+	public int getNumberOfBins() { return numberOfBins; }
+	public int getNumOfColumns() { return columnAxis.numOfCells; }
+
+	//==================================== HELPERS ======================================
+
+	/**
+	 * Find out if an object is stored in the bin it remembers. It isn't after the bins were cleared or when another index was used.
+	 * @param situatedModel_ CRBaseSituatedModel object
+	 * @return boolean
+	 */
+	private boolean isInItsBin(CRBaseSituatedModel situatedModel_) {
+		int binIndex = situatedModel_.binIndex;
+		int binSlot = situatedModel_.binSlot;
+		int layer = situatedModel_.binLayer;
+		if (binIndex < 0 || binIndex >= numberOfBins || binSlot < 0 || layer < 0 || layer >= CRBinWorld.NUM_OF_LAYERS || situatedModelBins[layer] == null) {
+			return false;
+		}
+		ArrayList<CRBaseSituatedModel> bin = situatedModelBins[layer][binIndex];
+		return binSlot < bin.size() && bin.get(binSlot) == situatedModel_;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addToBin(CRBaseSituatedModel situatedModel_, int binIndex_) {
+		int layer = situatedModel_.getSpatialLayer();
+		if (situatedModelBins[layer] == null) {
+			situatedModelBins[layer] = new ArrayList[numberOfBins];
+			for (int i=0; i<numberOfBins; i++) {
+				situatedModelBins[layer][i] = new ArrayList<CRBaseSituatedModel>();
+			}
+			usedLayers |= 1 << layer;
+		}
+		ArrayList<CRBaseSituatedModel> bin = situatedModelBins[layer][binIndex_];
+		situatedModel_.binIndex = binIndex_;
+		situatedModel_.binLayer = layer;
+		situatedModel_.binSlot = bin.size();
+		bin.add(situatedModel_);
+	}
+
+	private void removeFromItsBin(CRBaseSituatedModel situatedModel_) {
+		ArrayList<CRBaseSituatedModel> bin = situatedModelBins[situatedModel_.binLayer][situatedModel_.binIndex];
+		CRBaseSituatedModel lastModel = bin.remove(bin.size() - 1);
+		if (lastModel != situatedModel_) {
+			bin.set(situatedModel_.binSlot, lastModel);
+			lastModel.binSlot = situatedModel_.binSlot;
+		}
+		situatedModel_.binSlot = -1;
+	}
+}
@@ -15,14 +15,43 @@ import net.lenkaspace.creeper.vo.CRVector3d;
  * As an example of where this can be used, see
  * http://lenkaspace.net/lab/swarmSystems/controllingAntConstruction
  * 
+ * The objects are held by a CRSpatialIndex, chosen with setSpatialIndex(): uniform bins (CRBinGrid, the default),
+ * a CRCellList or a CRAdaptiveGrid that splits crowded bins. With setAutoTuneCellSize(), the cell size is
+ * re-chosen by a CRSpatialIndexTuner from the query radius and the density of objects as the simulation runs.
+ * With setUseBroadPhase(), a CRSweepAndPrune also finds pairs of objects that may touch, once per update loop,
+ * see getContactCandidates().
+ * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
  */
 public class CRBinWorld extends CRWorld {
 
-	private ArrayList<CRBaseSituatedModel>[] situatedModelBins;
-	private int numberOfBins;
+	public static final int NUM_OF_LAYERS = 32;
+	public static final int ALL_LAYERS = -1; //layer mask with all layers
+	
+	//-- spatial index types
+	public static final String BIN_GRID = "bins";
+	public static final String CELL_LIST = "cellList";
+	public static final String ADAPTIVE_GRID = "adaptive";
+	public static final String[] SPATIAL_INDEX_TYPES = {BIN_GRID, CELL_LIST, ADAPTIVE_GRID};
+	
+	public static final int ADAPTIVE_GRID_SUBDIVISIONS = 4;
+	public static final int ADAPTIVE_GRID_SPLIT_THRESHOLD = 32;
+	public static final int AUTO_TUNE_INTERVAL = 250; //update loops between checks of the cell size
+	public static final double AUTO_TUNE_TOLERANCE = 0.25; //relative change of the cell size needed to rebuild the index
+	
 	private CRVector3d binSize;
+	private CRGridAxis columnAxis;
+	private CRGridAxis rowAxis;
+	private CRSpatialIndex spatialIndex;
+	private String spatialIndexType;
+	private double cellSize; //of the spatial index, can differ from binSize when tuned
+	private boolean isAutoTuningCellSize;
+	private double queryRadiusHint;
+	private CRSpatialIndexTuner tuner;
+	private int updatesSinceTuning;
+	private CRSweepAndPrune broadPhase; //null if not used
+	private ArrayList<ArrayList<CRBaseSituatedModel>> queryBuffers; //lists given out by obtainQueryBuffer()
 	
 	/**
 	 * Constructor
@@ -34,12 +63,17 @@ public class CRBinWorld extends CRWorld {
 	public CRBinWorld(CRVector3d binSize_, int id_, CRVector3d size_, CRController controller_) {
 		super(id_, size_, controller_);
 		binSize = new CRVector3d(binSize_);
-		numberOfBins = ((int)Math.ceil(size.x / binSize.x) * (int)Math.ceil(size.y / binSize.y));
-		situatedModelBins = new ArrayList[numberOfBins];
+		columnAxis = new CRGridAxis(size.x, binSize.x, isBorderless);
+		rowAxis = new CRGridAxis(size.y, binSize.y, isBorderless);
+		queryBuffers = new ArrayList<ArrayList<CRBaseSituatedModel>>();
+		spatialIndexType = BIN_GRID;
+		cellSize = binSize.x;
+		spatialIndex = new CRBinGrid(size.x, size.y, binSize.x, binSize.y, isBorderless);
+		isAutoTuningCellSize = false;
+		queryRadiusHint = Math.max(binSize.x, binSize.y) / 2;
+		tuner = new CRSpatialIndexTuner(3);
+		updatesSinceTuning = 0;
 		//System.out.println("Created " + numberOfBins + " bins");
-		for (int i=0; i<numberOfBins; i++) {
-			situatedModelBins[i] = new ArrayList<CRBaseSituatedModel>();
-		}
 	}
 	
 	
@@ -50,26 +84,25 @@ public class CRBinWorld extends CRWorld {
 	 * @param dynamicModel_ CRBaseSituatedModel situated model
 	 */
 	public void sortObjectToABin(CRBaseSituatedModel dynamicModel_) {
-		int previousBinIndex = -1;
-		if (dynamicModel_.getPreviousPosition().x != CRVector3d.INVALID_COMPONENT) {
-			previousBinIndex = getBinIndexForPosition(dynamicModel_.getPreviousPosition());
-		}
-		int currentBinIndex = getBinIndexForPosition(dynamicModel_.getPosition());
-		//-- change to a different bin if should
-		if(previousBinIndex != currentBinIndex) {
-			//-- take dynamic model out of its old bin
-			if (previousBinIndex >= 0) {
-				if (situatedModelBins[previousBinIndex].contains(dynamicModel_)) {
-					situatedModelBins[previousBinIndex].remove(dynamicModel_);
-				}
-			}
-			
-			//-- put it to a new bin
-			if (!situatedModelBins[currentBinIndex].contains(dynamicModel_)) {
-				situatedModelBins[currentBinIndex].add(dynamicModel_);			
-			}
-			dynamicModel_.binIndex = currentBinIndex;
+		spatialIndex.onModelMoved(dynamicModel_);
+		if (broadPhase != null) {
+			broadPhase.onModelMoved(dynamicModel_);
+		}
+	}
+	
+	/**
+	 * Main update function. Lets the spatial index reorganise itself and re-tunes its cell size if required.
+	 */
+	public void update() {
+		if (isAutoTuningCellSize && ++updatesSinceTuning >= AUTO_TUNE_INTERVAL) {
+			updatesSinceTuning = 0;
+			tuneCellSize();
 		}
+		spatialIndex.update(getSituatedModels());
+		if (broadPhase != null) {
+			broadPhase.update(getSituatedModels());
+		}
+		super.update();
 	}
 	
 	//==================================== OBJECT MANIPULATION ==================================
@@ -89,6 +122,9 @@ public class CRBinWorld extends CRWorld {
 		else if (position.y < 0 ) { position.y = size.y; }
 		
 		sortObjectToABin(situatedModel_);
+		if (broadPhase != null) {
+			broadPhase.invalidate();
+		}
 	}
 	
 	
@@ -97,14 +133,134 @@ public class CRBinWorld extends CRWorld {
 	 * Subclasses should override this to implement clearing of any additional arrays
 	 */
 	public void clearChildren() {
-		if (situatedModelBins != null) {
-			for (int i=0; i<numberOfBins; i++) {
-				situatedModelBins[i].clear();
-			}
+		if (spatialIndex != null) {
+			spatialIndex.clear();
+		}
+		if (broadPhase != null) {
+			broadPhase.clear();
 		}
 		super.clearChildren();
 	}
 	
+	//==================================== SPATIAL INDEX ==================================
+	
+	/**
+	 * Choose the spatial index. Objects already in the world are moved over. Nothing changes if the same type and cell size are already used.
+	 * Indexes return neighbouring objects in a different order, so simulations with the same seed differ between them.
+	 * @param type_ String one of SPATIAL_INDEX_TYPES
+	 * @param cellSize_ double size of a bin / cell, 0 for the bin size given to the constructor
+	 */
+	public void setSpatialIndex(String type_, double cellSize_) {
+		double newCellSize = cellSize_ > 0 ? cellSize_ : binSize.x;
+		if (type_.equals(spatialIndexType) && newCellSize == cellSize) {
+			return;
+		}
+		CRSpatialIndex newIndex = createSpatialIndex(type_, newCellSize);
+		if (newIndex == null) {
+			System.err.println("CRBinWorld - unknown spatial index " + type_);
+			return;
+		}
+		spatialIndex.clear();
+		spatialIndexType = type_;
+		cellSize = newCellSize;
+		spatialIndex = newIndex;
+		spatialIndex.rebuild(getSituatedModels());
+	}
+	
+	/**
+	 * Create a spatial index over this world. Override to plug in other types.
+	 * @param type_ String one of SPATIAL_INDEX_TYPES
+	 * @param cellSize_ double size of a bin / cell
+	 * @return CRSpatialIndex new empty index, or null if the type is unknown
+	 */
+	protected CRSpatialIndex createSpatialIndex(String type_, double cellSize_) {
+		if (type_.equals(BIN_GRID)) {
+			return new CRBinGrid(size.x, size.y, cellSize_, cellSize_, isBorderless);
+		} else if (type_.equals(CELL_LIST)) {
+			return new CRCellList(size.x, size.y, cellSize_, cellSize_, isBorderless);
+		} else if (type_.equals(ADAPTIVE_GRID)) {
+			return new CRAdaptiveGrid(size.x, size.y, cellSize_, ADAPTIVE_GRID_SUBDIVISIONS, ADAPTIVE_GRID_SPLIT_THRESHOLD, isBorderless);
+		}
+		return null;
+	}
+	
+	/**
+	 * Let a CRSpatialIndexTuner choose the cell size from the query radius hint and the density of objects, now and every AUTO_TUNE_INTERVAL update loops.
+	 * The index is rebuilt when the recommended size differs from the current one by more than AUTO_TUNE_TOLERANCE.
+	 * @param value_ boolean
+	 */
+	public void setAutoTuneCellSize(boolean value_) {
+		isAutoTuningCellSize = value_;
+		updatesSinceTuning = 0;
+		if (isAutoTuningCellSize) {
+			tuneCellSize();
+		}
+	}
+	public boolean getAutoTuneCellSize() { return isAutoTuningCellSize; }
+	
+	/**
+	 * Set radius of typical queries, used when tuning the cell size
+	 * @param queryRadiusHint_ double radius
+	 */
+	public void setQueryRadiusHint(double queryRadiusHint_) { queryRadiusHint = queryRadiusHint_; }
+	public double getQueryRadiusHint() { return queryRadiusHint; }
+	
+	public CRSpatialIndex getSpatialIndex() { return spatialIndex; }
+	public String getSpatialIndexType() { return spatialIndexType; }
+	public double getCellSize() { return cellSize; }
+	public CRSpatialIndexTuner getTuner() { return tuner; }
+	
+	/**
+	 * Find out if a spatial index type exists
+	 * @param type_ String type
+	 * @return boolean
+	 */
+	public static boolean isSpatialIndexType(String type_) {
+		for (String type : SPATIAL_INDEX_TYPES) {
+			if (type.equals(type_)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void tuneCellSize() {
+		double recommendedSize = tuner.recommendCellSize(getSituatedModels(), size.x, size.y, queryRadiusHint);
+		if (Math.abs(recommendedSize - cellSize) > AUTO_TUNE_TOLERANCE * cellSize) {
+			setSpatialIndex(spatialIndexType, recommendedSize);
+		}
+	}
+	
+	//==================================== BROAD PHASE ==================================
+	
+	/**
+	 * Switch the sort-and-sweep broad phase on or off. If on, it finds pairs of objects of the given layers
+	 * whose bounding boxes, enlarged by a margin, overlap at the start of each update loop.
+	 * @param value_ boolean true to use it
+	 * @param margin_ double distance by which the bounding boxes are enlarged, should cover how far objects move before they look for contacts
+	 * @param layerMask_ int mask of spatial layers to include
+	 */
+	public void setUseBroadPhase(boolean value_, double margin_, int layerMask_) {
+		if (broadPhase != null) {
+			broadPhase.clear();
+		}
+		broadPhase = value_ ? new CRSweepAndPrune(margin_, layerMask_) : null;
+	}
+	public boolean getUseBroadPhase() { return broadPhase != null; }
+	public CRSweepAndPrune getBroadPhase() { return broadPhase; }
+	
+	/**
+	 * Add objects that may touch an object, as found by the broad phase at the start of the update loop, to a list.
+	 * Objects that moved further than the margin since are included as long as they were passed to sortObjectToABin().
+	 * Can be called from several threads at the same time, as long as no object is sorted to a bin meanwhile.
+	 * @param situatedModel_ CRBaseSituatedModel object
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the objects to
+	 * @return boolean false if the broad phase is off, doesn't know the object or the object moved further than the margin, use getSituatedModelsAroundPosition() then
+	 */
+	public boolean getContactCandidates(CRBaseSituatedModel situatedModel_, ArrayList<CRBaseSituatedModel> result_) {
+		return broadPhase != null && broadPhase.getCandidates(situatedModel_, result_);
+	}
+	
 	//==================================== GETTERS / SETTERS ==================================
 	
 	/**
@@ -113,8 +269,7 @@ public class CRBinWorld extends CRWorld {
 	 * @return int index of a bin
 	 */
 	public int getBinIndexForPosition(CRVector3d position_) {
-		CRVector3d binCoordinates = getBinCoordinatesForPosition(position_);
-		return getBinIndexForBinCoordinates(binCoordinates);
+		return rowAxis.getCell(position_.y) * columnAxis.numOfCells + columnAxis.getCell(position_.x);
 	}
 	
 	/**
@@ -124,107 +279,81 @@ public class CRBinWorld extends CRWorld {
 	 */
 	public int getBinIndexForBinCoordinates(CRVector3d binCoordinates_) {
 		//-- index as all columns from previous rows + current column
-		return (int)(binCoordinates_.y*(int)Math.ceil(size.x / binSize.x) + binCoordinates_.x);
+		return (int)(binCoordinates_.y*columnAxis.numOfCells + binCoordinates_.x);
 	}
 	
 	/**
-	 * Convert a position into bin coordinates 
+	 * Get all CRBaseSituatedModels that are in bins reached by a circle around a position.
 	 * @param position_ CRVector3d position
-	 * @return CRVector3d in format [column, row, 0]
+	 * @param radius_ double radius of the circle
+	 * @return ArrayList<CRBaseSituatedModel> new list of objects from applicable bins
 	 */
-	private CRVector3d getBinCoordinatesForPosition(CRVector3d position_) {
-		int numRows = (int)Math.ceil(size.y / binSize.y);
-		int numCols = (int)Math.ceil(size.x / binSize.x);
-		int row = Math.min(numRows, Math.max(0, (int)(Math.floor(position_.y / binSize.y))));
-		int col = Math.min(numCols, Math.max(0, (int)(Math.floor(position_.x / binSize.x))));
-		return new CRVector3d(col, row, 0);
+	public ArrayList<CRBaseSituatedModel> getSituatedModelsAroundPosition(CRVector3d position_, double radius_) {
+		ArrayList<CRBaseSituatedModel> returnArrayList = new ArrayList<CRBaseSituatedModel>();
+		getSituatedModelsAroundPosition(position_, radius_, ALL_LAYERS, returnArrayList);
+		return returnArrayList;
 	}
 	
 	/**
-	 * Get all CRBaseSituatedModels that are in a bin around a position. It is possible that all objects from neighbouring bins
-	 * will be included if circle around a position reaches to those bins.
-	 * @param position CRVector3d position
-	 * @param radius_ int radius around a position for testing if other bins should be included
-	 * @return ArrayList<CRBaseSituatedModel> list of objects from applicable bins
+	 * Add all CRBaseSituatedModels that are in bins reached by a circle around a position to a list, see getSituatedModelsAroundPosition(CRVector3d, double, int, ArrayList)
+	 * @param position_ CRVector3d position
+	 * @param radius_ double radius of the circle
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the objects to
 	 */
-	public ArrayList<CRBaseSituatedModel> getSituatedModelsAroundPosition(CRVector3d position_, double radius_) {
-		int binIndex = getBinIndexForPosition(position_);
-		ArrayList<CRBaseSituatedModel> returnArrayList = new ArrayList<CRBaseSituatedModel>();
-		returnArrayList.addAll(situatedModelBins[binIndex]);
-		
-		//-- test if other bin indexes are applicable
-		CRVector3d binCoordinates = getBinCoordinatesForPosition(position_);
-		
-		boolean addedNorth = false;
-		boolean addedSouth = false;
-		boolean addedWest = false;
-		boolean addedEast = false;
-		
-		int northBinY = (int)(binCoordinates.y - 1);
-		int southBinY = (int)(binCoordinates.y + 1);
-		int westBinX = (int)(binCoordinates.x - 1);
-		int eastBinX = (int)(binCoordinates.x + 1);
-		
-		int numRows = (int)Math.ceil(size.y / binSize.y);
-		int numCols = (int)Math.ceil(size.x / binSize.x);
-		
-		if (position_.y - radius_ <= binCoordinates.y*binSize.y) { // test if reaching to the bin north of here
- 			addedNorth = true;
-			//-- wrap the coordinate around
-			if (northBinY < 0 ) {
-				northBinY = numRows-1;
-			}
-			//-- add the bin to the list
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(binCoordinates.x, northBinY, 0))]);
-		}
-		if (position_.y + radius_ >= southBinY*binSize.y || position_.y + radius_ >= size.y) { //test bin south of here if north not added
-			addedSouth = true;
-			//-- wrap the coordinate around
-			if (southBinY >= numRows) {
-				southBinY = 0;
-			}
-			//-- add the bin to the list
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(binCoordinates.x, southBinY, 0))]);
+	public void getSituatedModelsAroundPosition(CRVector3d position_, double radius_, ArrayList<CRBaseSituatedModel> result_) {
+		getSituatedModelsAroundPosition(position_, radius_, ALL_LAYERS, result_);
+	}
+	
+	/**
+	 * Add CRBaseSituatedModels of some layers that are in bins reached by a circle around a position to a list, without allocating anything.
+	 * Every bin that the circle reaches is included, also across the edges of a borderless world, and no bin is included twice.
+	 * Can be called from several threads at the same time, as long as no object is moved.
+	 * @param position_ CRVector3d position
+	 * @param radius_ double radius of the circle
+	 * @param layerMask_ int mask with bit (1 << layer) set for every wanted layer, or ALL_LAYERS
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the objects to, e.g. one from obtainQueryBuffer()
+	 */
+	public void getSituatedModelsAroundPosition(CRVector3d position_, double radius_, int layerMask_, ArrayList<CRBaseSituatedModel> result_) {
+		if (spatialIndex.needsRebuild()) {
+			spatialIndex.rebuild(getSituatedModels());
 		}
-		
-		
-		if (position_.x - radius_ <= binCoordinates.x*binSize.x) { // test bin west of here
-			addedWest = true;
-			//-- wrap the coordinate around
-			if (westBinX < 0 ) {
-				westBinX = numCols-1;
-			}
-			//-- add the bin to the list
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(westBinX, binCoordinates.y, 0))]);
-		} 
-		if (position_.x + radius_ >= eastBinX*binSize.x || position_.x + radius_ >= size.x) { // test bin east of here
-			addedEast = true;
-			//-- wrap the coordinate around
-			if (eastBinX >= numCols) {
-				eastBinX = 0;
-			}
-			//-- add the bin to the list
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(eastBinX, binCoordinates.y, 0))]);
+		spatialIndex.getModelsAroundPosition(position_.x, position_.y, radius_, layerMask_, result_);
+	}
+	
+	/**
+	 * Get an empty list for getSituatedModelsAroundPosition(), reused between queries. Give it back with releaseQueryBuffer().
+	 * For the simulation thread only.
+	 * @return ArrayList<CRBaseSituatedModel> empty list
+	 */
+	public ArrayList<CRBaseSituatedModel> obtainQueryBuffer() {
+		if (queryBuffers.isEmpty()) {
+			return new ArrayList<CRBaseSituatedModel>();
 		}
-		
-		
-		//-- if added north and west, north west should also be added, etc.
-		if (addedNorth && addedWest) {
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(westBinX, northBinY, 0))]);
-		}
-		if (addedNorth && addedEast) {
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(eastBinX, northBinY, 0))]);
-		} 
-		if (addedSouth && addedWest) {
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(westBinX, southBinY, 0))]);
-		}
-		if (addedSouth && addedEast) {
-			returnArrayList.addAll(situatedModelBins[getBinIndexForBinCoordinates(new CRVector3d(eastBinX, southBinY, 0))]);
-		} 
-		
-		return returnArrayList;
+		return queryBuffers.remove(queryBuffers.size() - 1);
 	}
 	
+	/**
+	 * Give back a list obtained from obtainQueryBuffer()
+	 * @param buffer_ ArrayList<CRBaseSituatedModel> list that is not used any more
+	 */
+	public void releaseQueryBuffer(ArrayList<CRBaseSituatedModel> buffer_) {
+		buffer_.clear();
+		queryBuffers.add(buffer_);
+	}
+	
+	/**
+	 * Set whether objects reaching edge of the world appear on the opposite edge. Queries then reach across the edges too.
+	 * @param isBorderless_ boolean
+	 */
+	public void setBorderless(boolean isBorderless_) {
+		super.setBorderless(isBorderless_);
+		columnAxis = new CRGridAxis(size.x, binSize.x, isBorderless);
+		rowAxis = new CRGridAxis(size.y, binSize.y, isBorderless);
+		if (spatialIndex != null) {
+			spatialIndex.clear();
+			spatialIndex = createSpatialIndex(spatialIndexType, cellSize);
+			spatialIndex.rebuild(getSituatedModels());
+		}
+	}
 	
-
 }
@@ -0,0 +1,304 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cell list: a uniform grid of cells over the world that stores indexes of situated models in flat int arrays.
+ * It is rebuilt with a counting sort, after which the models of each cell are next to each other in memory,
+ * together with a copy of their positions. Models that move to another cell between two rebuilds are kept in a
+ * doubly linked list of their new cell, also made of int arrays, so moving a model is O(1) and a query only
+ * looks at the cells it covers. Rebuilding once per update loop keeps the moved lists short.
+ * One of the spatial indexes of CRBinWorld, see CRBinWorld.setSpatialIndex().
+ */
+public class CRCellList implements CRSpatialIndex {
+
+	private static final int NONE = -1;
+
+	private final CRGridAxis columnAxis;
+	private final CRGridAxis rowAxis;
+	private final int numOfColumns;
+	private final int numOfRows;
+
+	//-- models, indexed by model index
+	private CRBaseSituatedModel[] models;
+	private int numOfModels;
+	private boolean needsRebuild;
+
+	//-- counting sorted models: slots cellStart[c] to cellStart[c+1]-1 belong to cell c
+	private int[] cellStart;
+	private int[] slotModels;
+	private double[] slotX;
+	private double[] slotY;
+	private int[] modelCell;
+	private int[] cellCursor;
+
+	//-- models that moved to another cell since the last rebuild, in linked lists per cell
+	private int[] movedHead;
+	private int[] movedNext;
+	private int[] movedPrevious;
+	private int[] movedCell;
+	private int[] touchedCells;
+	private int numOfTouchedCells;
+	private int numOfMovedModels;
+
+	/**
+	 * Constructor
+	 * @param worldWidth_ double width of the world
+	 * @param worldHeight_ double height of the world
+	 * @param cellWidth_ double width of a cell
+	 * @param cellHeight_ double height of a cell
+	 * @param isWrapped_ boolean true if queries at one edge of the world should reach to the opposite edge
+	 */
+	public CRCellList(double worldWidth_, double worldHeight_, double cellWidth_, double cellHeight_, boolean isWrapped_) {
+		columnAxis = new CRGridAxis(worldWidth_, cellWidth_, isWrapped_);
+		rowAxis = new CRGridAxis(worldHeight_, cellHeight_, isWrapped_);
+		numOfColumns = columnAxis.numOfCells;
+		numOfRows = rowAxis.numOfCells;
+
+		int numOfCells = numOfColumns * numOfRows;
+		cellStart = new int[numOfCells + 1];
+		cellCursor = new int[numOfCells];
+		movedHead = new int[numOfCells];
+		Arrays.fill(movedHead, NONE);
+		touchedCells = new int[16];
+		ensureCapacity(16);
+		numOfModels = 0;
+		needsRebuild = false;
+	}
+
+	//==================================== BUILDING =====================================
+
+	/**
+	 * Sort all models into cells from scratch
+	 * @param models_ List<? extends CRBaseSituatedModel> all models to index
+	 */
+	public void rebuild(List<? extends CRBaseSituatedModel> models_) {
+		clearMovedModels();
+		numOfModels = models_.size();
+		ensureCapacity(numOfModels);
+		int numOfCells = numOfColumns * numOfRows;
+
+		//-- count models per cell
+		Arrays.fill(cellStart, 0);
+		for (int i=0; i<numOfModels; i++) {
+			CRBaseSituatedModel model = models_.get(i);
+			models[i] = model;
+			model.cellListIndex = i;
+			int cell = getCellIndexForPosition(model.getPosition().x, model.getPosition().y);
+			modelCell[i] = cell;
+			cellStart[cell + 1]++;
+		}
+		//-- prefix sums give the first slot of each cell
+		for (int cell=0; cell<numOfCells; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+		//-- scatter models into their slots, using a write cursor per cell
+		System.arraycopy(cellStart, 0, cellCursor, 0, numOfCells);
+		for (int i=0; i<numOfModels; i++) {
+			int slot = cellCursor[modelCell[i]]++;
+			slotModels[slot] = i;
+			slotX[slot] = models[i].getPosition().x;
+			slotY[slot] = models[i].getPosition().y;
+		}
+		needsRebuild = false;
+	}
+
+	/**
+	 * Rebuild, so that the models of each cell are next to each other again
+	 * @param models_ List<? extends CRBaseSituatedModel> all models to index
+	 */
+	public void update(List<? extends CRBaseSituatedModel> models_) {
+		rebuild(models_);
+	}
+	
+	/**
+	 * Call after a model changed position. Models that are not in the cell list yet make it rebuild before the next query.
+	 * @param model_ CRBaseSituatedModel moved model
+	 */
+	public void onModelMoved(CRBaseSituatedModel model_) {
+		int index = model_.cellListIndex;
+		if (index < 0 || index >= numOfModels || models[index] != model_) {
+			needsRebuild = true;
+			return;
+		}
+		int cell = getCellIndexForPosition(model_.getPosition().x, model_.getPosition().y);
+		if (movedCell[index] != NONE) {
+			//-- already moved since the rebuild
+			if (movedCell[index] == cell) {
+				return;
+			}
+			unlinkMovedModel(index);
+		} else if (modelCell[index] == cell) {
+			return;
+		} else {
+			numOfMovedModels++;
+		}
+		//-- link to the moved models of the new cell
+		if (movedHead[cell] == NONE) {
+			if (numOfTouchedCells == touchedCells.length) {
+				touchedCells = Arrays.copyOf(touchedCells, touchedCells.length * 2);
+			}
+			touchedCells[numOfTouchedCells++] = cell;
+		}
+		movedCell[index] = cell;
+		movedPrevious[index] = NONE;
+		movedNext[index] = movedHead[cell];
+		if (movedHead[cell] != NONE) {
+			movedPrevious[movedHead[cell]] = index;
+		}
+		movedHead[cell] = index;
+	}
+
+	/**
+	 * Forget all models
+	 */
+	public void clear() {
+		clearMovedModels();
+		for (int i=0; i<numOfModels; i++) {
+			models[i] = null;
+		}
+		numOfModels = 0;
+		Arrays.fill(cellStart, 0);
+		needsRebuild = false;
+	}
+
+	//==================================== QUERIES ======================================
+
+	/**
+	 * Add all models from cells that are reached by a circle around a position to a list, each cell only once
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param radius_ double radius of the circle
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the models to
+	 */
+	public void getModelsAroundPosition(double x_, double y_, double radius_, ArrayList<CRBaseSituatedModel> result_) {
+		getModelsAroundPosition(x_, y_, radius_, CRBinWorld.ALL_LAYERS, result_);
+	}
+	
+	/**
+	 * Add models of some spatial layers from cells that are reached by a circle around a position to a list, each cell only once.
+	 * Unlike CRBinWorld bins, the cells hold all layers together and other layers are skipped one by one.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param radius_ double radius of the circle
+	 * @param layerMask_ int mask with bit (1 << layer) set for every wanted layer
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the models to
+	 */
+	public void getModelsAroundPosition(double x_, double y_, double radius_, int layerMask_, ArrayList<CRBaseSituatedModel> result_) {
+		boolean isFiltered = layerMask_ != CRBinWorld.ALL_LAYERS;
+		double squaredRadius = radius_ * radius_;
+		for (int rowSegment=0; rowSegment<2; rowSegment++) {
+			int lastRow = rowAxis.getLastCell(y_, radius_, rowSegment);
+			for (int row=rowAxis.getFirstCell(y_, radius_, rowSegment); row<=lastRow; row++) {
+				double yDistance = rowAxis.getDistance(y_, row);
+				for (int columnSegment=0; columnSegment<2; columnSegment++) {
+					int lastColumn = columnAxis.getLastCell(x_, radius_, columnSegment);
+					for (int column=columnAxis.getFirstCell(x_, radius_, columnSegment); column<=lastColumn; column++) {
+						double xDistance = columnAxis.getDistance(x_, column);
+						if (xDistance*xDistance + yDistance*yDistance > squaredRadius) {
+							continue;
+						}
+						int cell = row * numOfColumns + column;
+						//-- models sorted into the cell that haven't left it
+						for (int slot=cellStart[cell]; slot<cellStart[cell + 1]; slot++) {
+							int index = slotModels[slot];
+							if (movedCell[index] == NONE && (!isFiltered || (layerMask_ & (1 << models[index].spatialLayer)) != 0)) {
+								result_.add(models[index]);
+							}
+						}
+						//-- models that moved into the cell
+						for (int index=movedHead[cell]; index!=NONE; index=movedNext[index]) {
+							if (!isFiltered || (layerMask_ & (1 << models[index].spatialLayer)) != 0) {
+								result_.add(models[index]);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get index of the cell containing a position. Positions outside of the world belong to the nearest edge cell.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @return int cell index, row by row
+	 */
+	public int getCellIndexForPosition(double x_, double y_) {
+		return rowAxis.getCell(y_) * numOfColumns + columnAxis.getCell(x_);
+	}
+
+	//==================================== ITERATION ====================================
+	// Cache friendly access to the sorted arrays, e.g.
+	// for (int slot = getCellStart(c); slot < getCellEnd(c); slot++) { if (!hasMoved(getModelIndexAt(slot))) { ... getXAt(slot) ... } }
+	// followed by for (int i = getFirstMovedModel(c); i >= 0; i = getNextMovedModel(i)) { ... getModel(i) ... }
+
+	public int getCellStart(int cell_) { return cellStart[cell_]; }
+	public int getCellEnd(int cell_) { return cellStart[cell_ + 1]; }
+	public int getModelIndexAt(int slot_) { return slotModels[slot_]; }
+
+	/**
+	 * Get x position of the model in a slot, as it was at the last rebuild. Only valid for models that haven't moved since.
+	 * @param slot_ int slot
+	 * @return double
+	 */
+	public double getXAt(int slot_) { return slotX[slot_]; }
+	public double getYAt(int slot_) { return slotY[slot_]; }
+
+	public boolean hasMoved(int modelIndex_) { return movedCell[modelIndex_] != NONE; }
+	public int getFirstMovedModel(int cell_) { return movedHead[cell_]; }
+	public int getNextMovedModel(int modelIndex_) { return movedNext[modelIndex_]; }
+
+	public CRBaseSituatedModel getModel(int modelIndex_) { return models[modelIndex_]; }
+	public int getNumOfModels() { return numOfModels; }
+	public int getNumOfMovedModels() { return numOfMovedModels; }
+	public int getNumOfCells() { return numOfColumns * numOfRows; }
+	public int getNumOfColumns() { return numOfColumns; }
+	public int getNumOfRows() { return numOfRows; }
+	public boolean needsRebuild() { return needsRebuild; }
+
+	//==================================== HELPERS ======================================
+
+	private void unlinkMovedModel(int index_) {
+		int previous = movedPrevious[index_];
+		int next = movedNext[index_];
+		if (previous != NONE) {
+			movedNext[previous] = next;
+		} else {
+			movedHead[movedCell[index_]] = next;
+		}
+		if (next != NONE) {
+			movedPrevious[next] = previous;
+		}
+	}
+
+	private void clearMovedModels() {
+		for (int i=0; i<numOfTouchedCells; i++) {
+			int cell = touchedCells[i];
+			for (int index=movedHead[cell]; index!=NONE; index=movedNext[index]) {
+				movedCell[index] = NONE;
+			}
+			movedHead[cell] = NONE;
+		}
+		numOfTouchedCells = 0;
+		numOfMovedModels = 0;
+	}
+
+	private void ensureCapacity(int capacity_) {
+		if (models == null || models.length < capacity_) {
+			int newCapacity = Math.max(capacity_, models == null ? 16 : models.length * 2);
+			models = models == null ? new CRBaseSituatedModel[newCapacity] : Arrays.copyOf(models, newCapacity);
+			slotModels = new int[newCapacity];
+			slotX = new double[newCapacity];
+			slotY = new double[newCapacity];
+			modelCell = new int[newCapacity];
+			movedNext = new int[newCapacity];
+			movedPrevious = new int[newCapacity];
+			int oldLength = movedCell == null ? 0 : movedCell.length;
+			movedCell = movedCell == null ? new int[newCapacity] : Arrays.copyOf(movedCell, newCapacity);
+			Arrays.fill(movedCell, oldLength, newCapacity, NONE);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Amounts to be added to cells of a CRField, collected in primitive arrays and added in one pass by
+ * CRField.add(CRDepositBuffer, double). Cells are flat indexes, row * number of columns + column, and are added in the
+ * order they were collected, so the result equals adding them one by one.
+ * The arrays grow as needed and are kept after clear(), so a buffer refilled every update loop doesn't allocate.
+ */
+public class CRDepositBuffer {
+
+	private int[] cells;
+	private double[] amounts;
+	private int size;
+
+	public CRDepositBuffer() {
+		cells = new int[64];
+		amounts = new double[64];
+		size = 0;
+	}
+
+	/**
+	 * Collect an amount for a cell
+	 * @param cell_ int flat index of the cell
+	 * @param amount_ double amount to add
+	 */
+	public void add(int cell_, double amount_) {
+		if (size == cells.length) {
+			cells = Arrays.copyOf(cells, size * 2);
+			amounts = Arrays.copyOf(amounts, size * 2);
+		}
+		cells[size] = cell_;
+		amounts[size] = amount_;
+		size++;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	//==================================== GETTERS ======================================
+
+	public int[] getCells() { return cells; }
+	public double[] getAmounts() { return amounts; }
+	public int getSize() { return size; }
+	public boolean isEmpty() { return size == 0; }
+}
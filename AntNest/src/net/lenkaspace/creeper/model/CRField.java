@@ -0,0 +1,96 @@
+package net.lenkaspace.creeper.model;
+
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * A scalar field over the world, e.g. a pheromone concentration, stored per cell of a regular grid that covers the
+ * world from (0,0). Implementations: CRGridField (one dense array, with diffusion and lazy decay) and
+ * CRSparseGridField (tiles that exist only where something was written).
+ * Reads may run on several threads at the same time, all other methods are called from the simulation thread.
+ */
+public interface CRField {
+
+	/**
+	 * Get row of a y position, may be outside of the grid
+	 * @param y_ double y position
+	 * @return int row
+	 */
+	public int getRow(double y_);
+
+	/**
+	 * Get column of an x position, may be outside of the grid
+	 * @param x_ double x position
+	 * @return int column
+	 */
+	public int getColumn(double x_);
+
+	public boolean isInside(int row_, int column_);
+
+	/**
+	 * Find out if a cell is in the grid and not on its border
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @return boolean
+	 */
+	public boolean isInterior(int row_, int column_);
+
+	/**
+	 * Get value of a cell. Doesn't change the field.
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @return double value
+	 */
+	public double get(int row_, int column_);
+
+	public void set(int row_, int column_, double value_);
+
+	/**
+	 * Add an amount to a cell, without exceeding a maximum
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @param amount_ double amount to add
+	 * @param maxValue_ double maximum value of the cell
+	 */
+	public void add(int row_, int column_, double amount_, double maxValue_);
+
+	/**
+	 * Add all amounts of a buffer to their cells in one pass, in the order they were collected, each without exceeding
+	 * a maximum. Equals calling add() for each of them.
+	 * @param deposits_ CRDepositBuffer amounts by flat cell index
+	 * @param maxValue_ double maximum value of a cell
+	 */
+	public void add(CRDepositBuffer deposits_, double maxValue_);
+
+	/**
+	 * Multiply all values, e.g. to let them decay
+	 * @param factor_ double factor
+	 */
+	public void multiply(double factor_);
+
+	/**
+	 * Set all values to 0
+	 */
+	public void clear();
+
+	/**
+	 * Copy all values, row by row, to an array. Doesn't change the field.
+	 * @param target_ double[] array at least getNumOfCells() long
+	 */
+	public void copyTo(double[] target_);
+
+	/**
+	 * Get bilinearly interpolated value at a position together with its gradient, see CRFieldSampler.
+	 * Doesn't change the field.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param gradient_ CRVector3d vector to store the gradient in, its z is set to 0
+	 * @return double interpolated value
+	 */
+	public double sample(double x_, double y_, CRVector3d gradient_);
+
+	public double getCellSize();
+	public int getNumOfRows();
+	public int getNumOfColumns();
+	public int getNumOfCells();
+
+}
@@ -0,0 +1,121 @@
+package net.lenkaspace.creeper.model;
+
+/**
+ * Element-wise and stencil loops over the values of fields, used by CRGridField, CRMultiField and for painting.
+ * This class computes them with plain loops. On Java 17 and later, the jar also contains CRVectorFieldKernels (built
+ * from the src-java17 source root into META-INF/versions/17 of a multi-release jar), which computes them with the
+ * incubating Vector API. getDefault() picks it when the JVM can load it, i.e. when it runs with
+ * --add-modules jdk.incubator.vector, and falls back to this class otherwise.
+ * Both compute every value with the same operations in the same order, so they give identical results.
+ */
+public class CRFieldKernels {
+
+	public static final String SCALAR_PROPERTY = "creeper.scalarKernels"; //system property, true to always use plain loops
+	private static final String VECTOR_CLASS_NAME = "net.lenkaspace.creeper.model.CRVectorFieldKernels";
+
+	private static CRFieldKernels defaultKernels;
+
+	/**
+	 * Get the fastest kernels the JVM supports
+	 * @return CRFieldKernels vector kernels if they can be loaded, plain ones otherwise
+	 */
+	public static synchronized CRFieldKernels getDefault() {
+		if (defaultKernels == null) {
+			defaultKernels = createDefault();
+		}
+		return defaultKernels;
+	}
+
+	private static CRFieldKernels createDefault() {
+		if (Boolean.getBoolean(SCALAR_PROPERTY)) {
+			return new CRFieldKernels();
+		}
+		try {
+			return (CRFieldKernels)Class.forName(VECTOR_CLASS_NAME).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			//-- Java 8 runtime, or classes not from the multi-release jar
+		} catch (LinkageError e) {
+			//-- jdk.incubator.vector not added to the JVM
+		} catch (ReflectiveOperationException e) {
+			System.err.println("CRFieldKernels - cannot create vector kernels: " + e.getMessage());
+		}
+		return new CRFieldKernels();
+	}
+
+	/**
+	 * Get a short name of the kernels, e.g. for reports
+	 * @return String name
+	 */
+	public String getName() {
+		return "scalar";
+	}
+
+	//==================================== KERNELS ======================================
+
+	/**
+	 * Multiply a range of values
+	 * @param values_ double[] values
+	 * @param from_ int first index
+	 * @param to_ int index after the last one
+	 * @param factor_ double factor
+	 */
+	public void multiply(double[] values_, int from_, int to_, double factor_) {
+		for (int i=from_; i<to_; i++) {
+			values_[i] *= factor_;
+		}
+	}
+
+	/**
+	 * Compute one step of the 5-point stencil of CRGridField.diffuseAndDecay() for a range of values whose four
+	 * neighbours are at fixed offsets: next = decay * (value + rate * (up + down + left + right - 4 * value))
+	 * @param values_ double[] values
+	 * @param next_ double[] array to store the next values in, at the same indexes
+	 * @param from_ int first index
+	 * @param to_ int index after the last one
+	 * @param upOffset_ int offset of the neighbour above, e.g. -numOfColumns, or 0 at the top edge
+	 * @param downOffset_ int offset of the neighbour below
+	 * @param leftOffset_ int offset of the left neighbour, e.g. -1
+	 * @param rightOffset_ int offset of the right neighbour
+	 * @param rate_ double diffusion rate
+	 * @param decay_ double decay factor
+	 */
+	public void diffuse(double[] values_, double[] next_, int from_, int to_, int upOffset_, int downOffset_,
+			int leftOffset_, int rightOffset_, double rate_, double decay_) {
+		for (int i=from_; i<to_; i++) {
+			double value = values_[i];
+			double laplacian = values_[i + upOffset_] + values_[i + downOffset_] + values_[i + leftOffset_] + values_[i + rightOffset_] - 4 * value;
+			next_[i] = decay_ * (value + rate_ * laplacian);
+		}
+	}
+
+	/**
+	 * The same as diffuse(), with a rate and a decay for each value, e.g. for interleaved channels of CRMultiField
+	 * @param rates_ double[] rates, rates_[ratesFrom_] for the value at from_, and so on
+	 * @param decays_ double[] decay factors, at the same indexes as rates_
+	 * @param ratesFrom_ int index of the rate and decay of the value at from_
+	 */
+	public void diffuse(double[] values_, double[] next_, int from_, int to_, int upOffset_, int downOffset_,
+			int leftOffset_, int rightOffset_, double[] rates_, double[] decays_, int ratesFrom_) {
+		int shift = ratesFrom_ - from_;
+		for (int i=from_; i<to_; i++) {
+			double value = values_[i];
+			double laplacian = values_[i + upOffset_] + values_[i + downOffset_] + values_[i + leftOffset_] + values_[i + rightOffset_] - 4 * value;
+			next_[i] = decays_[i + shift] * (value + rates_[i + shift] * laplacian);
+		}
+	}
+
+	/**
+	 * Scale a range of values and clamp them to a maximum, e.g. to map concentrations to colour alphas
+	 * @param values_ double[] values
+	 * @param result_ double[] array to store the results in, at the same indexes
+	 * @param from_ int first index
+	 * @param to_ int index after the last one
+	 * @param scale_ double factor
+	 * @param maxValue_ double maximum result
+	 */
+	public void scaleAndClamp(double[] values_, double[] result_, int from_, int to_, double scale_, double maxValue_) {
+		for (int i=from_; i<to_; i++) {
+			result_[i] = Math.min(maxValue_, values_[i] * scale_);
+		}
+	}
+}
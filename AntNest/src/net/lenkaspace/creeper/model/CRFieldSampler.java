@@ -0,0 +1,86 @@
+package net.lenkaspace.creeper.model;
+
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * Bilinear sampling of a CRField. Values are taken to be at the centres of cells, and a sample interpolates the four
+ * centres around a position, clamped to the edge cells outside of them. The gradient is the bilinear interpolation
+ * of finite differences at the same centres: central differences inside the grid, one-sided ones at its edges.
+ * CRGridField keeps the differences in a precomputed table, see CRGridField.updateSamples(). Both ways compute the
+ * same numbers in the same order, so a sample doesn't depend on whether the table was up to date.
+ */
+final class CRFieldSampler {
+
+	private CRFieldSampler() {}
+
+	/**
+	 * Get the finite difference along x at the centre of a cell
+	 */
+	static double getDifferenceX(CRField field_, int row_, int column_) {
+		int left = Math.max(0, column_ - 1);
+		int right = Math.min(field_.getNumOfColumns() - 1, column_ + 1);
+		if (left == right) {
+			return 0;
+		}
+		return (field_.get(row_, right) - field_.get(row_, left)) / ((right - left) * field_.getCellSize());
+	}
+
+	/**
+	 * Get the finite difference along y at the centre of a cell
+	 */
+	static double getDifferenceY(CRField field_, int row_, int column_) {
+		int up = Math.max(0, row_ - 1);
+		int down = Math.min(field_.getNumOfRows() - 1, row_ + 1);
+		if (up == down) {
+			return 0;
+		}
+		return (field_.get(down, column_) - field_.get(up, column_)) / ((down - up) * field_.getCellSize());
+	}
+
+	/**
+	 * Get first cell of the pair of cell centres around a position along one axis, clamped to the grid
+	 */
+	static int getFirstCell(double position_, double cellSize_, int numOfCells_) {
+		int cell = (int)Math.floor(position_ / cellSize_ - 0.5);
+		return Math.max(0, Math.min(numOfCells_ - 1, cell));
+	}
+
+	/**
+	 * Get weight of the second cell of the pair returned by getFirstCell()
+	 */
+	static double getWeight(double position_, double cellSize_, int numOfCells_, int firstCell_) {
+		double weight = position_ / cellSize_ - 0.5 - firstCell_;
+		if (firstCell_ >= numOfCells_ - 1 || weight < 0) {
+			return 0;
+		}
+		return Math.min(1, weight);
+	}
+
+	static double interpolate(double value00_, double value01_, double value10_, double value11_, double weightX_, double weightY_) {
+		return (1 - weightY_) * ((1 - weightX_) * value00_ + weightX_ * value01_) + weightY_ * ((1 - weightX_) * value10_ + weightX_ * value11_);
+	}
+
+	/**
+	 * Sample a field without any precomputed table
+	 * @param field_ CRField field
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param gradient_ CRVector3d vector to store the gradient in, its z is set to 0
+	 * @return double interpolated value
+	 */
+	static double sample(CRField field_, double x_, double y_, CRVector3d gradient_) {
+		double cellSize = field_.getCellSize();
+		int row0 = getFirstCell(y_, cellSize, field_.getNumOfRows());
+		int column0 = getFirstCell(x_, cellSize, field_.getNumOfColumns());
+		int row1 = Math.min(field_.getNumOfRows() - 1, row0 + 1);
+		int column1 = Math.min(field_.getNumOfColumns() - 1, column0 + 1);
+		double weightY = getWeight(y_, cellSize, field_.getNumOfRows(), row0);
+		double weightX = getWeight(x_, cellSize, field_.getNumOfColumns(), column0);
+		gradient_.x = interpolate(getDifferenceX(field_, row0, column0), getDifferenceX(field_, row0, column1),
+				getDifferenceX(field_, row1, column0), getDifferenceX(field_, row1, column1), weightX, weightY);
+		gradient_.y = interpolate(getDifferenceY(field_, row0, column0), getDifferenceY(field_, row0, column1),
+				getDifferenceY(field_, row1, column0), getDifferenceY(field_, row1, column1), weightX, weightY);
+		gradient_.z = 0;
+		return interpolate(field_.get(row0, column0), field_.get(row0, column1), field_.get(row1, column0), field_.get(row1, column1), weightX, weightY);
+	}
+}
@@ -0,0 +1,100 @@
+package net.lenkaspace.creeper.model;
+
+/**
+ * One axis of a uniform grid of bins or cells over the world. Finds which cells a query interval reaches,
+ * including the cells at the opposite edge of a world that wraps around, each cell only once.
+ * Immutable, so it can be used from several threads.
+ */
+final class CRGridAxis {
+
+	final double cellSize;
+	final int numOfCells;
+	final double worldSize;
+	final boolean isWrapped;
+
+	/**
+	 * Constructor
+	 * @param worldSize_ double size of the world along this axis
+	 * @param cellSize_ double size of a cell along this axis
+	 * @param isWrapped_ boolean true if the world wraps around along this axis
+	 */
+	CRGridAxis(double worldSize_, double cellSize_, boolean isWrapped_) {
+		worldSize = worldSize_;
+		cellSize = cellSize_;
+		numOfCells = Math.max(1, (int)Math.ceil(worldSize_ / cellSize_));
+		isWrapped = isWrapped_;
+	}
+
+	/**
+	 * Get the cell of a coordinate. Coordinates outside of the world belong to the nearest edge cell.
+	 * @param x_ double coordinate
+	 * @return int cell
+	 */
+	int getCell(double x_) {
+		return Math.min(numOfCells - 1, Math.max(0, (int)Math.floor(x_ / cellSize)));
+	}
+
+	/**
+	 * Get the first cell of a segment of cells reached from a coordinate.
+	 * Segment 0 is the part inside the world, segment 1 the part that wraps around to the opposite edge.
+	 * @param x_ double coordinate
+	 * @param radius_ double query radius
+	 * @param segment_ int 0 or 1
+	 * @return int first cell, greater than the last cell if the segment is empty
+	 */
+	int getFirstCell(double x_, double radius_, int segment_) {
+		if (segment_ == 0) {
+			return coversWorld(radius_) ? 0 : getCell(x_ - radius_);
+		}
+		if (isWrapped && !coversWorld(radius_)) {
+			if (x_ - radius_ < 0) {
+				return Math.max(getCell(x_ - radius_ + worldSize), getCell(x_ + radius_) + 1);
+			} else if (x_ + radius_ > worldSize) {
+				return 0;
+			}
+		}
+		return numOfCells;
+	}
+
+	/**
+	 * Get the last cell of a segment of cells reached from a coordinate, see getFirstCell()
+	 * @param x_ double coordinate
+	 * @param radius_ double query radius
+	 * @param segment_ int 0 or 1
+	 * @return int last cell
+	 */
+	int getLastCell(double x_, double radius_, int segment_) {
+		if (segment_ == 0) {
+			return coversWorld(radius_) ? numOfCells - 1 : getCell(x_ + radius_);
+		}
+		if (isWrapped && !coversWorld(radius_)) {
+			if (x_ - radius_ < 0) {
+				return numOfCells - 1;
+			} else if (x_ + radius_ > worldSize) {
+				return Math.min(getCell(x_ + radius_ - worldSize), getCell(x_ - radius_) - 1);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the distance from a coordinate to the nearest point of a cell, the shorter way around in a wrapped world
+	 * @param x_ double coordinate
+	 * @param cell_ int cell
+	 * @return double distance, 0 if the coordinate is inside the cell
+	 */
+	double getDistance(double x_, int cell_) {
+		double start = cell_ * cellSize;
+		double end = start + cellSize;
+		double distance = Math.max(0, Math.max(start - x_, x_ - end));
+		if (isWrapped) {
+			distance = Math.min(distance, Math.max(0, Math.max(start - (x_ + worldSize), x_ + worldSize - end)));
+			distance = Math.min(distance, Math.max(0, Math.max(start - (x_ - worldSize), x_ - worldSize - end)));
+		}
+		return distance;
+	}
+
+	private boolean coversWorld(double radius_) {
+		return isWrapped && 2 * radius_ >= worldSize;
+	}
+}
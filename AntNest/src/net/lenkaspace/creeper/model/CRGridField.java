@@ -0,0 +1,410 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * A dense CRField, e.g. a pheromone concentration over a small world.
+ * Values are kept in one flat array, row by row, so that a cell is values[row * numOfColumns + column].
+ * The resolution is given by the cell size, the grid covers the world from (0,0) to (worldWidth,worldHeight).
+ * diffuseAndDecay() writes the next values into a second array and swaps the two. Large grids are split into
+ * tiles of rows that are computed in parallel. Every cell is computed the same way on any thread, so the result
+ * doesn't depend on the number of threads.
+ * With lazy decay (see setIsDecayLazy()), a cell remembers the step it was last written in, and decay^(age) is applied
+ * when it is read or written. A step then costs nothing but advance(), apart from a sweep every LAZY_SETTLE_INTERVAL
+ * steps that brings all cells up to date, so that ages stay within a table of precomputed powers. Values equal those
+ * of eager decay up to rounding.
+ * updateSamples() precomputes a table of each cell's value and finite differences, stored next to each other, so that
+ * sample() reads the value and gradient of the four cells around a position from two short runs of the table. Any
+ * change to the field invalidates the table, and sample() then computes the same numbers from the values directly.
+ * multiply() and the stencil of diffuseAndDecay() run on CRFieldKernels.getDefault(), see setKernels().
+ */
+public class CRGridField implements CRField {
+
+	public static final double MAX_STABLE_RATE = 0.25; //largest diffusion rate per step for which the stencil is stable
+	private static final int TILE_ROWS = 32; //rows computed by one task
+	private static final int MIN_PARALLEL_CELLS = 128 * 128; //smaller grids are always computed serially
+	public static final int LAZY_SETTLE_INTERVAL = 256; //steps between sweeps that bring all cells up to date with lazy decay
+
+	private final double cellSize;
+	private final int numOfRows;
+	private final int numOfColumns;
+	private double[] values;
+	private double[] nextValues; //created by the first diffuseAndDecay()
+	private CRFieldKernels kernels;
+
+	//-- lazy decay
+	private boolean isDecayLazy;
+	private int[] lastWritten; //step in which each cell was last brought up to date
+	private double[] decayPowers; //decay^age for ages 0 to LAZY_SETTLE_INTERVAL
+	private int currentStep;
+
+	//-- bilinear sampling
+	private double[] samples; //value, difference along x and difference along y of each cell, interleaved
+	private boolean areSamplesValid;
+
+	/**
+	 * Constructor. All values start at 0.
+	 * @param worldWidth_ double width of the covered area
+	 * @param worldHeight_ double height of the covered area
+	 * @param cellSize_ double side of a cell
+	 */
+	public CRGridField(double worldWidth_, double worldHeight_, double cellSize_) {
+		cellSize = cellSize_;
+		numOfColumns = Math.max(1, (int)Math.ceil(worldWidth_ / cellSize_));
+		numOfRows = Math.max(1, (int)Math.ceil(worldHeight_ / cellSize_));
+		values = new double[numOfRows * numOfColumns];
+		kernels = CRFieldKernels.getDefault();
+	}
+
+	//==================================== CELLS ========================================
+
+	/**
+	 * Get row of a y position, may be outside of the grid
+	 * @param y_ double y position
+	 * @return int row
+	 */
+	public int getRow(double y_) {
+		return (int)Math.floor(y_ / cellSize);
+	}
+
+	/**
+	 * Get column of an x position, may be outside of the grid
+	 * @param x_ double x position
+	 * @return int column
+	 */
+	public int getColumn(double x_) {
+		return (int)Math.floor(x_ / cellSize);
+	}
+
+	public boolean isInside(int row_, int column_) {
+		return row_ >= 0 && row_ < numOfRows && column_ >= 0 && column_ < numOfColumns;
+	}
+
+	/**
+	 * Find out if a cell is in the grid and not on its border
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @return boolean
+	 */
+	public boolean isInterior(int row_, int column_) {
+		return row_ > 0 && row_ < numOfRows - 1 && column_ > 0 && column_ < numOfColumns - 1;
+	}
+
+	//==================================== VALUES =======================================
+
+	/**
+	 * Get value of a cell. Doesn't change the field, so it may be called from several threads at the same time.
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @return double value
+	 */
+	public double get(int row_, int column_) {
+		int index = row_ * numOfColumns + column_;
+		if (isDecayLazy) {
+			return values[index] * decayPowers[currentStep - lastWritten[index]];
+		}
+		return values[index];
+	}
+
+	public void set(int row_, int column_, double value_) {
+		int index = row_ * numOfColumns + column_;
+		values[index] = value_;
+		areSamplesValid = false;
+		if (isDecayLazy) {
+			lastWritten[index] = currentStep;
+		}
+	}
+
+	/**
+	 * Add an amount to a cell, without exceeding a maximum
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @param amount_ double amount to add
+	 * @param maxValue_ double maximum value of the cell
+	 */
+	public void add(int row_, int column_, double amount_, double maxValue_) {
+		addToValue(row_ * numOfColumns + column_, amount_, maxValue_);
+		areSamplesValid = false;
+	}
+
+	public void add(CRDepositBuffer deposits_, double maxValue_) {
+		int[] cells = deposits_.getCells();
+		double[] amounts = deposits_.getAmounts();
+		int size = deposits_.getSize();
+		for (int i=0; i<size; i++) {
+			addToValue(cells[i], amounts[i], maxValue_);
+		}
+		if (size > 0) {
+			areSamplesValid = false;
+		}
+	}
+
+	/**
+	 * Add an amount to a value, after bringing it up to date with lazy decay, without exceeding a maximum
+	 * @param index_ int index of the value, row * numOfColumns + column
+	 * @param amount_ double amount to add
+	 * @param maxValue_ double maximum value
+	 */
+	private void addToValue(int index_, double amount_, double maxValue_) {
+		double newValue;
+		if (isDecayLazy) {
+			newValue = values[index_] * decayPowers[currentStep - lastWritten[index_]] + amount_;
+			lastWritten[index_] = currentStep;
+		} else {
+			newValue = values[index_] + amount_;
+		}
+		values[index_] = newValue > maxValue_ ? maxValue_ : newValue;
+	}
+
+	/**
+	 * Multiply all values, e.g. to let them decay
+	 * @param factor_ double factor
+	 */
+	public void multiply(double factor_) {
+		settle();
+		kernels.multiply(values, 0, values.length, factor_);
+		areSamplesValid = false;
+	}
+
+	/**
+	 * Let values spread to the four neighbouring cells and decay, with an explicit 5-point stencil:
+	 * next = decay * (value + rate * (up + down + left + right - 4 * value)). Nothing flows across the edges of the grid.
+	 * @param rate_ double share of the difference to each neighbour that flows in one step, at most MAX_STABLE_RATE
+	 * @param decay_ double factor applied to all values after diffusion
+	 * @param pool_ ForkJoinPool threads to compute tiles of rows on, or null to compute serially
+	 */
+	public void diffuseAndDecay(double rate_, double decay_, ForkJoinPool pool_) {
+		if (nextValues == null) {
+			nextValues = new double[values.length];
+		}
+		settle();
+		if (pool_ == null || values.length < MIN_PARALLEL_CELLS || numOfRows <= TILE_ROWS) {
+			diffuseRows(rate_, decay_, 0, numOfRows);
+		} else {
+			pool_.invoke(new StencilTask(this, rate_, decay_, 0, numOfRows));
+		}
+		double[] previousValues = values;
+		values = nextValues;
+		nextValues = previousValues;
+		areSamplesValid = false;
+	}
+
+	/**
+	 * Set all values to 0
+	 */
+	public void clear() {
+		for (int i=0; i<values.length; i++) {
+			values[i] = 0;
+		}
+		areSamplesValid = false;
+		if (isDecayLazy) {
+			Arrays.fill(lastWritten, currentStep);
+		}
+	}
+
+	/**
+	 * Copy all values, row by row, to an array. Doesn't change the field, e.g. lazy decay stays pending.
+	 * @param target_ double[] array at least getNumOfCells() long
+	 */
+	public void copyTo(double[] target_) {
+		if (isDecayLazy) {
+			for (int i=0; i<values.length; i++) {
+				target_[i] = values[i] * decayPowers[currentStep - lastWritten[i]];
+			}
+		} else {
+			System.arraycopy(values, 0, target_, 0, values.length);
+		}
+	}
+
+	//==================================== SAMPLING =====================================
+
+	/**
+	 * Get bilinearly interpolated value at a position together with its gradient, from the table of updateSamples()
+	 * while it is valid. Doesn't change the field, so it may be called from several threads at the same time.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param gradient_ CRVector3d vector to store the gradient in, its z is set to 0
+	 * @return double interpolated value
+	 */
+	public double sample(double x_, double y_, CRVector3d gradient_) {
+		if (!areSamplesValid) {
+			return CRFieldSampler.sample(this, x_, y_, gradient_);
+		}
+		int row0 = CRFieldSampler.getFirstCell(y_, cellSize, numOfRows);
+		int column0 = CRFieldSampler.getFirstCell(x_, cellSize, numOfColumns);
+		int row1 = Math.min(numOfRows - 1, row0 + 1);
+		int column1 = Math.min(numOfColumns - 1, column0 + 1);
+		double weightY = CRFieldSampler.getWeight(y_, cellSize, numOfRows, row0);
+		double weightX = CRFieldSampler.getWeight(x_, cellSize, numOfColumns, column0);
+		int index00 = 3 * (row0 * numOfColumns + column0);
+		int index01 = 3 * (row0 * numOfColumns + column1);
+		int index10 = 3 * (row1 * numOfColumns + column0);
+		int index11 = 3 * (row1 * numOfColumns + column1);
+		gradient_.x = CRFieldSampler.interpolate(samples[index00 + 1], samples[index01 + 1], samples[index10 + 1], samples[index11 + 1], weightX, weightY);
+		gradient_.y = CRFieldSampler.interpolate(samples[index00 + 2], samples[index01 + 2], samples[index10 + 2], samples[index11 + 2], weightX, weightY);
+		gradient_.z = 0;
+		return CRFieldSampler.interpolate(samples[index00], samples[index01], samples[index10], samples[index11], weightX, weightY);
+	}
+
+	/**
+	 * Get bilinearly interpolated value at a position, as sample() does but without the gradient, straight from the values.
+	 * Doesn't change the field, so it may be called from several threads at the same time.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @return double interpolated value
+	 */
+	public double sample(double x_, double y_) {
+		int row0 = CRFieldSampler.getFirstCell(y_, cellSize, numOfRows);
+		int column0 = CRFieldSampler.getFirstCell(x_, cellSize, numOfColumns);
+		int row1 = Math.min(numOfRows - 1, row0 + 1);
+		int column1 = Math.min(numOfColumns - 1, column0 + 1);
+		double weightY = CRFieldSampler.getWeight(y_, cellSize, numOfRows, row0);
+		double weightX = CRFieldSampler.getWeight(x_, cellSize, numOfColumns, column0);
+		return CRFieldSampler.interpolate(get(row0, column0), get(row0, column1), get(row1, column0), get(row1, column1), weightX, weightY);
+	}
+
+	/**
+	 * Precompute the values and finite differences used by sample(), until the field changes next
+	 */
+	public void updateSamples() {
+		if (areSamplesValid) {
+			return;
+		}
+		if (samples == null) {
+			samples = new double[3 * values.length];
+		}
+		for (int row=0; row<numOfRows; row++) {
+			for (int column=0; column<numOfColumns; column++) {
+				int index = 3 * (row * numOfColumns + column);
+				samples[index] = get(row, column);
+				samples[index + 1] = CRFieldSampler.getDifferenceX(this, row, column);
+				samples[index + 2] = CRFieldSampler.getDifferenceY(this, row, column);
+			}
+		}
+		areSamplesValid = true;
+	}
+
+	public boolean getAreSamplesValid() { return areSamplesValid; }
+
+	//==================================== LAZY DECAY ===================================
+
+	/**
+	 * Switch lazy decay on or off. Switching it off applies all pending decay.
+	 * @param isDecayLazy_ boolean true to decay lazily in advance()
+	 * @param decay_ double factor applied to all values in each advance()
+	 */
+	public void setIsDecayLazy(boolean isDecayLazy_, double decay_) {
+		settle();
+		isDecayLazy = isDecayLazy_;
+		areSamplesValid = false;
+		if (isDecayLazy) {
+			lastWritten = new int[values.length];
+			currentStep = 0;
+			decayPowers = new double[LAZY_SETTLE_INTERVAL + 1];
+			decayPowers[0] = 1;
+			for (int i=1; i<decayPowers.length; i++) {
+				decayPowers[i] = decayPowers[i - 1] * decay_;
+			}
+		} else {
+			lastWritten = null;
+			decayPowers = null;
+		}
+	}
+
+	/**
+	 * Let one step of lazy decay pass. Every LAZY_SETTLE_INTERVAL steps, all cells are brought up to date.
+	 */
+	public void advance() {
+		if (!isDecayLazy) {
+			return;
+		}
+		currentStep++;
+		areSamplesValid = false;
+		if (currentStep % LAZY_SETTLE_INTERVAL == 0) {
+			settle();
+		}
+	}
+
+	/**
+	 * Apply pending lazy decay to all cells
+	 */
+	public void settle() {
+		if (!isDecayLazy) {
+			return;
+		}
+		for (int i=0; i<values.length; i++) {
+			if (values[i] != 0) {
+				values[i] *= decayPowers[currentStep - lastWritten[i]];
+			}
+			lastWritten[i] = currentStep;
+		}
+	}
+
+	public boolean getIsDecayLazy() { return isDecayLazy; }
+
+	//==================================== GETTERS ======================================
+
+	public double getCellSize() { return cellSize; }
+	public int getNumOfRows() { return numOfRows; }
+	public int getNumOfColumns() { return numOfColumns; }
+	public int getNumOfCells() { return values.length; }
+	public CRFieldKernels getKernels() { return kernels; }
+
+	/**
+	 * Set the loops that multiply() and diffuseAndDecay() run on, e.g. to compare them. All kernels give the same values.
+	 * @param kernels_ CRFieldKernels kernels
+	 */
+	public void setKernels(CRFieldKernels kernels_) { kernels = kernels_; }
+
+	//==================================== HELPERS ======================================
+
+	/**
+	 * Compute next values of a range of rows, a missing neighbour at an edge counts as the cell itself.
+	 * The kernels compute the columns between the first and the last one.
+	 */
+	private void diffuseRows(double rate_, double decay_, int startRow_, int endRow_) {
+		int lastColumn = numOfColumns - 1;
+		for (int row=startRow_; row<endRow_; row++) {
+			int rowStart = row * numOfColumns;
+			int upOffset = row > 0 ? -numOfColumns : 0;
+			int downOffset = row < numOfRows - 1 ? numOfColumns : 0;
+			kernels.diffuse(values, nextValues, rowStart, rowStart + 1, upOffset, downOffset, 0, Math.min(1, lastColumn), rate_, decay_);
+			if (lastColumn > 0) {
+				kernels.diffuse(values, nextValues, rowStart + 1, rowStart + lastColumn, upOffset, downOffset, -1, 1, rate_, decay_);
+				kernels.diffuse(values, nextValues, rowStart + lastColumn, rowStart + numOfColumns, upOffset, downOffset, -1, 0, rate_, decay_);
+			}
+		}
+	}
+
+	/**
+	 * Computes a range of rows, splitting it in halves until it is at most TILE_ROWS rows
+	 */
+	private static class StencilTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CRGridField field;
+		private final double rate;
+		private final double decay;
+		private final int startRow;
+		private final int endRow;
+
+		StencilTask(CRGridField field_, double rate_, double decay_, int startRow_, int endRow_) {
+			field = field_;
+			rate = rate_;
+			decay = decay_;
+			startRow = startRow_;
+			endRow = endRow_;
+		}
+
+		protected void compute() {
+			if (endRow - startRow <= TILE_ROWS) {
+				field.diffuseRows(rate, decay, startRow, endRow);
+			} else {
+				int middle = (startRow + endRow) >>> 1;
+				invokeAll(new StencilTask(field, rate, decay, startRow, middle), new StencilTask(field, rate, decay, middle, endRow));
+			}
+		}
+	}
+}
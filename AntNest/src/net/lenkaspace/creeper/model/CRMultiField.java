@@ -0,0 +1,358 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * Several named fields over the same grid, e.g. different pheromones, stored interleaved: the values of all channels
+ * of a cell are next to each other, values[(row * numOfColumns + column) * numOfChannels + channel]. One lookup then
+ * reads all channels of a cell from one place in memory (see get(int, int, double[]) and sample()), and step() lets
+ * all channels diffuse and decay in a single pass over the grid, each channel with its own rates.
+ * The stencil is the one of CRGridField.diffuseAndDecay(), so a channel computes the same values as a CRGridField
+ * with the same rates would. Large grids are split into tiles of rows that are computed in parallel, with the same
+ * result on any number of threads.
+ * getChannel() returns a CRField view of one channel, for code that works with a single field.
+ * The stencil runs on CRFieldKernels.getDefault().
+ */
+public class CRMultiField {
+
+	private static final int TILE_ROWS = 32; //rows computed by one task
+	private static final int MIN_PARALLEL_CELLS = 128 * 128; //smaller grids are always computed serially
+
+	private final double cellSize;
+	private final int numOfRows;
+	private final int numOfColumns;
+	private final String[] channelNames;
+	private final int numOfChannels;
+	private double[] values;
+	private double[] nextValues; //created by the first step()
+	private CRFieldKernels kernels;
+
+	//-- per channel
+	private final double[] decays; //factor applied each step
+	private final double[] diffusionRates; //share of the difference to each neighbour that flows in one step, may exceed CRGridField.MAX_STABLE_RATE
+	private final Channel[] channels;
+
+	//-- rates of the current substep, per channel and repeated for each value of a row, so that a row is one flat loop
+	private final double[] substepRates;
+	private final double[] substepDecays;
+	private final double[] rowRates;
+	private final double[] rowDecays;
+
+	/**
+	 * Constructor. All values start at 0, channels don't decay or diffuse until set otherwise.
+	 * @param worldWidth_ double width of the covered area
+	 * @param worldHeight_ double height of the covered area
+	 * @param cellSize_ double side of a cell
+	 * @param channelNames_ String[] names of the channels, in the order of their indexes
+	 */
+	public CRMultiField(double worldWidth_, double worldHeight_, double cellSize_, String[] channelNames_) {
+		cellSize = cellSize_;
+		numOfColumns = Math.max(1, (int)Math.ceil(worldWidth_ / cellSize_));
+		numOfRows = Math.max(1, (int)Math.ceil(worldHeight_ / cellSize_));
+		channelNames = channelNames_.clone();
+		numOfChannels = channelNames.length;
+		values = new double[numOfRows * numOfColumns * numOfChannels];
+		decays = new double[numOfChannels];
+		diffusionRates = new double[numOfChannels];
+		substepRates = new double[numOfChannels];
+		substepDecays = new double[numOfChannels];
+		rowRates = new double[numOfColumns * numOfChannels];
+		rowDecays = new double[numOfColumns * numOfChannels];
+		channels = new Channel[numOfChannels];
+		kernels = CRFieldKernels.getDefault();
+		for (int k=0; k<numOfChannels; k++) {
+			decays[k] = 1;
+			channels[k] = new Channel(k);
+		}
+	}
+
+	//==================================== CHANNELS =====================================
+
+	/**
+	 * Get index of a channel
+	 * @param name_ String channel name
+	 * @return int index, -1 if there is no such channel
+	 */
+	public int getChannelIndex(String name_) {
+		for (int k=0; k<numOfChannels; k++) {
+			if (channelNames[k].equals(name_)) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get a view of one channel as a CRField. Writes through the view change this field.
+	 * @param channel_ int channel index
+	 * @return CRField view
+	 */
+	public CRField getChannel(int channel_) {
+		return channels[channel_];
+	}
+
+	public void setDecay(int channel_, double decay_) { decays[channel_] = decay_; }
+	public double getDecay(int channel_) { return decays[channel_]; }
+
+	/**
+	 * Set how fast a channel diffuses, see CRGridField.diffuseAndDecay()
+	 * @param channel_ int channel index
+	 * @param rate_ double share of the difference to each neighbour that flows in one step. Rates above
+	 * CRGridField.MAX_STABLE_RATE make step() split into substeps.
+	 */
+	public void setDiffusionRate(int channel_, double rate_) { diffusionRates[channel_] = rate_; }
+	public double getDiffusionRate(int channel_) { return diffusionRates[channel_]; }
+
+	//==================================== VALUES =======================================
+
+	public double get(int row_, int column_, int channel_) {
+		return values[(row_ * numOfColumns + column_) * numOfChannels + channel_];
+	}
+
+	/**
+	 * Get values of all channels of a cell. Doesn't change the field.
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @param result_ double[] array at least getNumOfChannels() long, to store the values in
+	 */
+	public void get(int row_, int column_, double[] result_) {
+		System.arraycopy(values, (row_ * numOfColumns + column_) * numOfChannels, result_, 0, numOfChannels);
+	}
+
+	/**
+	 * Get values of all channels at a position, bilinearly interpolated between cell centres as CRField.sample()
+	 * does. Doesn't change the field.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param result_ double[] array at least getNumOfChannels() long, to store the values in
+	 */
+	public void sample(double x_, double y_, double[] result_) {
+		int row0 = CRFieldSampler.getFirstCell(y_, cellSize, numOfRows);
+		int column0 = CRFieldSampler.getFirstCell(x_, cellSize, numOfColumns);
+		int row1 = Math.min(numOfRows - 1, row0 + 1);
+		int column1 = Math.min(numOfColumns - 1, column0 + 1);
+		double weightY = CRFieldSampler.getWeight(y_, cellSize, numOfRows, row0);
+		double weightX = CRFieldSampler.getWeight(x_, cellSize, numOfColumns, column0);
+		int index00 = (row0 * numOfColumns + column0) * numOfChannels;
+		int index01 = (row0 * numOfColumns + column1) * numOfChannels;
+		int index10 = (row1 * numOfColumns + column0) * numOfChannels;
+		int index11 = (row1 * numOfColumns + column1) * numOfChannels;
+		for (int k=0; k<numOfChannels; k++) {
+			result_[k] = CRFieldSampler.interpolate(values[index00 + k], values[index01 + k], values[index10 + k], values[index11 + k], weightX, weightY);
+		}
+	}
+
+	/**
+	 * Add an amount to one channel of a cell, without exceeding a maximum
+	 * @param row_ int row
+	 * @param column_ int column
+	 * @param channel_ int channel index
+	 * @param amount_ double amount to add
+	 * @param maxValue_ double maximum value of the cell
+	 */
+	public void add(int row_, int column_, int channel_, double amount_, double maxValue_) {
+		int index = (row_ * numOfColumns + column_) * numOfChannels + channel_;
+		double newValue = values[index] + amount_;
+		if (newValue > maxValue_) {
+			newValue = maxValue_;
+		}
+		values[index] = newValue;
+	}
+
+	/**
+	 * Let all channels diffuse and decay with their own rates, in one pass over the grid per substep. The stencil is
+	 * split into as many substeps as the fastest diffusing channel needs to stay stable, every channel spreads
+	 * its rate over them and decays in the last one.
+	 * @param pool_ ForkJoinPool threads to compute tiles of rows on, or null to compute serially
+	 */
+	public void step(ForkJoinPool pool_) {
+		int numOfSubsteps = 1;
+		for (int k=0; k<numOfChannels; k++) {
+			numOfSubsteps = Math.max(numOfSubsteps, (int)Math.ceil(diffusionRates[k] / CRGridField.MAX_STABLE_RATE));
+		}
+		if (nextValues == null) {
+			nextValues = new double[values.length];
+		}
+		for (int s=0; s<numOfSubsteps; s++) {
+			for (int k=0; k<numOfChannels; k++) {
+				int channelSubsteps = Math.max(1, (int)Math.ceil(diffusionRates[k] / CRGridField.MAX_STABLE_RATE));
+				substepRates[k] = diffusionRates[k] / channelSubsteps;
+				//-- a channel that needs fewer substeps diffuses in the last ones of them
+				if (s < numOfSubsteps - channelSubsteps) {
+					substepRates[k] = 0;
+				}
+				substepDecays[k] = s == numOfSubsteps - 1 ? decays[k] : 1.0;
+			}
+			for (int i=0; i<rowRates.length; i++) {
+				rowRates[i] = substepRates[i % numOfChannels];
+				rowDecays[i] = substepDecays[i % numOfChannels];
+			}
+			if (pool_ == null || numOfRows * numOfColumns < MIN_PARALLEL_CELLS || numOfRows <= TILE_ROWS) {
+				stepRows(0, numOfRows);
+			} else {
+				pool_.invoke(new StepTask(this, 0, numOfRows));
+			}
+			double[] previousValues = values;
+			values = nextValues;
+			nextValues = previousValues;
+		}
+	}
+
+	/**
+	 * Set all values of all channels to 0
+	 */
+	public void clear() {
+		for (int i=0; i<values.length; i++) {
+			values[i] = 0;
+		}
+	}
+
+	//==================================== GETTERS ======================================
+
+	public double getCellSize() { return cellSize; }
+	public int getNumOfRows() { return numOfRows; }
+	public int getNumOfColumns() { return numOfColumns; }
+	public int getNumOfCells() { return numOfRows * numOfColumns; }
+	public int getNumOfChannels() { return numOfChannels; }
+	public String getChannelName(int channel_) { return channelNames[channel_]; }
+	public CRFieldKernels getKernels() { return kernels; }
+	public void setKernels(CRFieldKernels kernels_) { kernels = kernels_; }
+
+	//==================================== HELPERS ======================================
+
+	/**
+	 * Compute next values of all channels of a range of rows, a missing neighbour at an edge counts as the cell itself.
+	 * Between the first and the last column, all values of a row are computed in one loop over consecutive values.
+	 */
+	private void stepRows(int startRow_, int endRow_) {
+		int rowStride = numOfColumns * numOfChannels;
+		int lastStart = rowStride - numOfChannels;
+		for (int row=startRow_; row<endRow_; row++) {
+			int rowStart = row * rowStride;
+			int upStart = row > 0 ? rowStart - rowStride : rowStart;
+			int downStart = row < numOfRows - 1 ? rowStart + rowStride : rowStart;
+			for (int i=0; i<numOfChannels; i++) {
+				stepEdgeValue(rowStart, upStart, downStart, i, i, Math.min(i + numOfChannels, lastStart + i));
+			}
+			if (numOfChannels < lastStart) {
+				kernels.diffuse(values, nextValues, rowStart + numOfChannels, rowStart + lastStart, upStart - rowStart, downStart - rowStart,
+						-numOfChannels, numOfChannels, rowRates, rowDecays, numOfChannels);
+			}
+			for (int i=Math.max(lastStart, numOfChannels); i<rowStride; i++) {
+				stepEdgeValue(rowStart, upStart, downStart, i, i - numOfChannels, i);
+			}
+		}
+	}
+
+	/**
+	 * Compute next value at offset i_ of a row in the first or last column, given the offsets of its left and right neighbours
+	 */
+	private void stepEdgeValue(int rowStart_, int upStart_, int downStart_, int i_, int left_, int right_) {
+		double value = values[rowStart_ + i_];
+		double laplacian = values[upStart_ + i_] + values[downStart_ + i_] + values[rowStart_ + left_] + values[rowStart_ + right_] - 4 * value;
+		nextValues[rowStart_ + i_] = rowDecays[i_] * (value + rowRates[i_] * laplacian);
+	}
+
+	/**
+	 * Computes a range of rows, splitting it in halves until it is at most TILE_ROWS rows
+	 */
+	private static class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CRMultiField field;
+		private final int startRow;
+		private final int endRow;
+
+		StepTask(CRMultiField field_, int startRow_, int endRow_) {
+			field = field_;
+			startRow = startRow_;
+			endRow = endRow_;
+		}
+
+		protected void compute() {
+			if (endRow - startRow <= TILE_ROWS) {
+				field.stepRows(startRow, endRow);
+			} else {
+				int middle = (startRow + endRow) >>> 1;
+				invokeAll(new StepTask(field, startRow, middle), new StepTask(field, middle, endRow));
+			}
+		}
+	}
+
+	/**
+	 * One channel seen as a CRField
+	 */
+	private class Channel implements CRField {
+		private final int channel;
+
+		Channel(int channel_) {
+			channel = channel_;
+		}
+
+		public int getRow(double y_) {
+			return (int)Math.floor(y_ / cellSize);
+		}
+
+		public int getColumn(double x_) {
+			return (int)Math.floor(x_ / cellSize);
+		}
+
+		public boolean isInside(int row_, int column_) {
+			return row_ >= 0 && row_ < numOfRows && column_ >= 0 && column_ < numOfColumns;
+		}
+
+		public boolean isInterior(int row_, int column_) {
+			return row_ > 0 && row_ < numOfRows - 1 && column_ > 0 && column_ < numOfColumns - 1;
+		}
+
+		public double get(int row_, int column_) {
+			return values[(row_ * numOfColumns + column_) * numOfChannels + channel];
+		}
+
+		public void set(int row_, int column_, double value_) {
+			values[(row_ * numOfColumns + column_) * numOfChannels + channel] = value_;
+		}
+
+		public void add(int row_, int column_, double amount_, double maxValue_) {
+			CRMultiField.this.add(row_, column_, channel, amount_, maxValue_);
+		}
+
+		public void add(CRDepositBuffer deposits_, double maxValue_) {
+			int[] cells = deposits_.getCells();
+			double[] amounts = deposits_.getAmounts();
+			for (int i=0; i<deposits_.getSize(); i++) {
+				int index = cells[i] * numOfChannels + channel;
+				double newValue = values[index] + amounts[i];
+				values[index] = newValue > maxValue_ ? maxValue_ : newValue;
+			}
+		}
+
+		public void multiply(double factor_) {
+			for (int i=channel; i<values.length; i+=numOfChannels) {
+				values[i] *= factor_;
+			}
+		}
+
+		public void clear() {
+			for (int i=channel; i<values.length; i+=numOfChannels) {
+				values[i] = 0;
+			}
+		}
+
+		public void copyTo(double[] target_) {
+			for (int cell=0, i=channel; i<values.length; cell++, i+=numOfChannels) {
+				target_[cell] = values[i];
+			}
+		}
+
+		public double sample(double x_, double y_, CRVector3d gradient_) {
+			return CRFieldSampler.sample(this, x_, y_, gradient_);
+		}
+
+		public double getCellSize() { return cellSize; }
+		public int getNumOfRows() { return numOfRows; }
+		public int getNumOfColumns() { return numOfColumns; }
+		public int getNumOfCells() { return numOfRows * numOfColumns; }
+	}
+}
@@ -0,0 +1,212 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import net.lenkaspace.creeper.vo.CRVector3d;
+
+/**
+ * A sparse CRField for large worlds, where most of the grid stays empty. The grid is divided into tiles of
+ * TILE_SIZE x TILE_SIZE cells, and a tile's values only exist after something was written into it. When
+ * multiply() lets all values of a tile fall below the evaporation threshold, the tile is released again, so memory
+ * follows the area of active trails rather than the size of the world.
+ * Only the tiles that exist are visited by multiply() and copyTo(). sample() computes the differences it needs on
+ * each call, there is no precomputed table as in CRGridField.
+ */
+public class CRSparseGridField implements CRField {
+
+	public static final int TILE_SIZE = 32; //cells along each side of a tile
+	private static final int TILE_SHIFT = 5; //log2 of TILE_SIZE
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	private static final int MAX_FREE_TILES = 16; //released tiles kept for reuse
+	private static final int NONE = -1;
+
+	private final double cellSize;
+	private final int numOfRows;
+	private final int numOfColumns;
+	private final int numOfTileColumns;
+	private final double evaporationThreshold;
+
+	//-- tiles by tile index (tile row * numOfTileColumns + tile column), null if not created
+	private final double[][] tiles;
+	private final int[] tileSlots; //slot of each tile in activeTiles, NONE if not created
+	private int[] activeTiles;
+	private int numOfActiveTiles;
+	private final ArrayList<double[]> freeTiles;
+
+	/**
+	 * Constructor. All values start at 0 and no tile exists.
+	 * @param worldWidth_ double width of the covered area
+	 * @param worldHeight_ double height of the covered area
+	 * @param cellSize_ double side of a cell
+	 * @param evaporationThreshold_ double value below which a cell counts as empty when a tile may be released
+	 */
+	public CRSparseGridField(double worldWidth_, double worldHeight_, double cellSize_, double evaporationThreshold_) {
+		cellSize = cellSize_;
+		numOfColumns = Math.max(1, (int)Math.ceil(worldWidth_ / cellSize_));
+		numOfRows = Math.max(1, (int)Math.ceil(worldHeight_ / cellSize_));
+		numOfTileColumns = (numOfColumns + TILE_MASK) >> TILE_SHIFT;
+		int numOfTiles = numOfTileColumns * ((numOfRows + TILE_MASK) >> TILE_SHIFT);
+		evaporationThreshold = evaporationThreshold_;
+		tiles = new double[numOfTiles][];
+		tileSlots = new int[numOfTiles];
+		Arrays.fill(tileSlots, NONE);
+		activeTiles = new int[16];
+		numOfActiveTiles = 0;
+		freeTiles = new ArrayList<double[]>();
+	}
+
+	//==================================== CELLS ========================================
+
+	public int getRow(double y_) {
+		return (int)Math.floor(y_ / cellSize);
+	}
+
+	public int getColumn(double x_) {
+		return (int)Math.floor(x_ / cellSize);
+	}
+
+	public boolean isInside(int row_, int column_) {
+		return row_ >= 0 && row_ < numOfRows && column_ >= 0 && column_ < numOfColumns;
+	}
+
+	public boolean isInterior(int row_, int column_) {
+		return row_ > 0 && row_ < numOfRows - 1 && column_ > 0 && column_ < numOfColumns - 1;
+	}
+
+	//==================================== VALUES =======================================
+
+	public double get(int row_, int column_) {
+		double[] tile = tiles[getTileIndex(row_, column_)];
+		if (tile == null) {
+			return 0;
+		}
+		return tile[getIndexInTile(row_, column_)];
+	}
+
+	public void set(int row_, int column_, double value_) {
+		int tileIndex = getTileIndex(row_, column_);
+		if (tiles[tileIndex] == null) {
+			if (value_ == 0) {
+				return;
+			}
+			createTile(tileIndex);
+		}
+		int index = getIndexInTile(row_, column_);
+		tiles[tileIndex][index] = value_;
+	}
+
+	public void add(int row_, int column_, double amount_, double maxValue_) {
+		double newValue = get(row_, column_) + amount_;
+		if (newValue > maxValue_) {
+			newValue = maxValue_;
+		}
+		set(row_, column_, newValue);
+	}
+
+	public void add(CRDepositBuffer deposits_, double maxValue_) {
+		int[] cells = deposits_.getCells();
+		double[] amounts = deposits_.getAmounts();
+		for (int i=0; i<deposits_.getSize(); i++) {
+			add(cells[i] / numOfColumns, cells[i] % numOfColumns, amounts[i], maxValue_);
+		}
+	}
+
+	/**
+	 * Multiply values of all existing tiles, and release tiles whose values all fell below the evaporation threshold
+	 * @param factor_ double factor
+	 */
+	public void multiply(double factor_) {
+		for (int slot=numOfActiveTiles-1; slot>=0; slot--) {
+			int tileIndex = activeTiles[slot];
+			double[] tile = tiles[tileIndex];
+			double maxValue = 0;
+			for (int i=0; i<tile.length; i++) {
+				double value = tile[i] * factor_;
+				tile[i] = value;
+				maxValue = Math.max(maxValue, Math.abs(value));
+			}
+			if (maxValue < evaporationThreshold) {
+				releaseTile(tileIndex);
+			}
+		}
+	}
+
+	public void clear() {
+		while (numOfActiveTiles > 0) {
+			releaseTile(activeTiles[numOfActiveTiles - 1]);
+		}
+	}
+
+	public void copyTo(double[] target_) {
+		Arrays.fill(target_, 0, getNumOfCells(), 0);
+		for (int slot=0; slot<numOfActiveTiles; slot++) {
+			int tileIndex = activeTiles[slot];
+			double[] tile = tiles[tileIndex];
+			int firstRow = (tileIndex / numOfTileColumns) << TILE_SHIFT;
+			int firstColumn = (tileIndex % numOfTileColumns) << TILE_SHIFT;
+			int width = Math.min(TILE_SIZE, numOfColumns - firstColumn);
+			int height = Math.min(TILE_SIZE, numOfRows - firstRow);
+			for (int row=0; row<height; row++) {
+				System.arraycopy(tile, row << TILE_SHIFT, target_, (firstRow + row) * numOfColumns + firstColumn, width);
+			}
+		}
+	}
+
+	public double sample(double x_, double y_, CRVector3d gradient_) {
+		return CRFieldSampler.sample(this, x_, y_, gradient_);
+	}
+
+	//==================================== GETTERS ======================================
+
+	public double getCellSize() { return cellSize; }
+	public int getNumOfRows() { return numOfRows; }
+	public int getNumOfColumns() { return numOfColumns; }
+	public int getNumOfCells() { return numOfRows * numOfColumns; }
+	public int getNumOfTiles() { return tiles.length; }
+	public int getNumOfActiveTiles() { return numOfActiveTiles; }
+	public double getEvaporationThreshold() { return evaporationThreshold; }
+
+	//==================================== HELPERS ======================================
+
+	private int getTileIndex(int row_, int column_) {
+		return (row_ >> TILE_SHIFT) * numOfTileColumns + (column_ >> TILE_SHIFT);
+	}
+
+	private static int getIndexInTile(int row_, int column_) {
+		return ((row_ & TILE_MASK) << TILE_SHIFT) | (column_ & TILE_MASK);
+	}
+
+	private void createTile(int tileIndex_) {
+		double[] tile;
+		if (freeTiles.isEmpty()) {
+			tile = new double[TILE_SIZE * TILE_SIZE];
+		} else {
+			tile = freeTiles.remove(freeTiles.size() - 1);
+		}
+		tiles[tileIndex_] = tile;
+		if (numOfActiveTiles == activeTiles.length) {
+			activeTiles = Arrays.copyOf(activeTiles, numOfActiveTiles * 2);
+		}
+		tileSlots[tileIndex_] = numOfActiveTiles;
+		activeTiles[numOfActiveTiles] = tileIndex_;
+		numOfActiveTiles++;
+	}
+
+	/**
+	 * Forget a tile, keeping its array for reuse if there are only a few kept already
+	 */
+	private void releaseTile(int tileIndex_) {
+		double[] tile = tiles[tileIndex_];
+		if (freeTiles.size() < MAX_FREE_TILES) {
+			Arrays.fill(tile, 0);
+			freeTiles.add(tile);
+		}
+		tiles[tileIndex_] = null;
+		int slot = tileSlots[tileIndex_];
+		int lastTile = activeTiles[numOfActiveTiles - 1];
+		activeTiles[slot] = lastTile;
+		tileSlots[lastTile] = slot;
+		tileSlots[tileIndex_] = NONE;
+		numOfActiveTiles--;
+	}
+}
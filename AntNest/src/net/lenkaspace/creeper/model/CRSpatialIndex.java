@@ -0,0 +1,55 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A structure that finds situated models near a position, used by CRBinWorld.
+ * Implementations: CRBinGrid (uniform bins with spatial layers), CRCellList (flat arrays, rebuilt every update loop)
+ * and CRAdaptiveGrid (bins that split when crowded). Subclasses of CRBinWorld can plug in their own by overriding
+ * CRBinWorld.createSpatialIndex().
+ * Queries may run on several threads at the same time, all other methods are called from the simulation thread.
+ */
+public interface CRSpatialIndex {
+
+	/**
+	 * Forget all models and index the given ones from scratch, in their order
+	 * @param models_ List<? extends CRBaseSituatedModel> all models of the world
+	 */
+	public void rebuild(List<? extends CRBaseSituatedModel> models_);
+
+	/**
+	 * Called once per update loop of the world, before the models update
+	 * @param models_ List<? extends CRBaseSituatedModel> all models of the world
+	 */
+	public void update(List<? extends CRBaseSituatedModel> models_);
+
+	/**
+	 * Called after a model was added to the world or changed position
+	 * @param model_ CRBaseSituatedModel model
+	 */
+	public void onModelMoved(CRBaseSituatedModel model_);
+
+	/**
+	 * Forget all models
+	 */
+	public void clear();
+
+	/**
+	 * Find out if rebuild() has to be called before the next query
+	 * @return boolean
+	 */
+	public boolean needsRebuild();
+
+	/**
+	 * Add models of some spatial layers that may be within a circle around a position to a list.
+	 * All models within the circle must be added, others may be. Must not allocate.
+	 * @param x_ double x position
+	 * @param y_ double y position
+	 * @param radius_ double radius of the circle
+	 * @param layerMask_ int mask with bit (1 << layer) set for every wanted layer, or CRBinWorld.ALL_LAYERS
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the models to
+	 */
+	public void getModelsAroundPosition(double x_, double y_, double radius_, int layerMask_, ArrayList<CRBaseSituatedModel> result_);
+
+}
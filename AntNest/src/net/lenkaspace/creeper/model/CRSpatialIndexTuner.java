@@ -0,0 +1,106 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.List;
+
+/**
+ * Recommends a cell size for a grid based spatial index from the query radius and the density of models.
+ * A query with radius r in a grid of cell size s visits about (2r/s + 1)^2 cells and goes through about
+ * density * (2r + s)^2 candidate models. The density is measured the way queries see it: weighted by the
+ * number of models in each area, so that a crowded nest counts more than an empty arena. The recommended
+ * size minimises cellVisitCost * cells + candidates over sizes between MIN_RADIUS_FRACTION and
+ * MAX_RADIUS_MULTIPLE times the radius, without making more than MAX_CELLS_PER_MODEL cells per model.
+ */
+public class CRSpatialIndexTuner {
+
+	public static final double MIN_RADIUS_FRACTION = 0.25;
+	public static final double MAX_RADIUS_MULTIPLE = 16;
+	public static final int MAX_CELLS_PER_MODEL = 4;
+	private static final int NUM_OF_CANDIDATE_SIZES = 25;
+
+	private double cellVisitCost; //cost of visiting a cell, relative to going through one candidate
+	private double lastDensity;
+
+	/**
+	 * Constructor
+	 * @param cellVisitCost_ double cost of visiting a cell, relative to going through one candidate model
+	 */
+	public CRSpatialIndexTuner(double cellVisitCost_) {
+		cellVisitCost = cellVisitCost_;
+		lastDensity = 0;
+	}
+
+	/**
+	 * Recommend a cell size
+	 * @param models_ List<? extends CRBaseSituatedModel> models of the world
+	 * @param worldWidth_ double width of the world
+	 * @param worldHeight_ double height of the world
+	 * @param queryRadius_ double typical query radius
+	 * @return double cell size
+	 */
+	public double recommendCellSize(List<? extends CRBaseSituatedModel> models_, double worldWidth_, double worldHeight_, double queryRadius_) {
+		double radius = Math.max(queryRadius_, 1e-6);
+		double density = measureDensity(models_, worldWidth_, worldHeight_, 2 * radius);
+		lastDensity = density;
+
+		//-- smallest size that doesn't make too many cells
+		double minSize = radius * MIN_RADIUS_FRACTION;
+		if (models_.size() > 0) {
+			minSize = Math.max(minSize, Math.sqrt(worldWidth_ * worldHeight_ / ((double)MAX_CELLS_PER_MODEL * models_.size())));
+		}
+		double maxSize = Math.max(minSize, Math.min(radius * MAX_RADIUS_MULTIPLE, Math.max(worldWidth_, worldHeight_)));
+
+		//-- sizes spaced evenly on a log scale
+		double bestSize = maxSize;
+		double bestCost = Double.MAX_VALUE;
+		for (int i=0; i<NUM_OF_CANDIDATE_SIZES; i++) {
+			double size = minSize * Math.pow(maxSize / minSize, i / (double)(NUM_OF_CANDIDATE_SIZES - 1));
+			double cost = getQueryCost(size, radius, density);
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestSize = size;
+			}
+		}
+		return bestSize;
+	}
+
+	/**
+	 * Get expected cost of a query
+	 * @param cellSize_ double cell size
+	 * @param radius_ double query radius
+	 * @param density_ double models per unit of area
+	 * @return double cost, in candidates
+	 */
+	public double getQueryCost(double cellSize_, double radius_, double density_) {
+		double cellsAlongSide = 2 * radius_ / cellSize_ + 1;
+		double side = 2 * radius_ + cellSize_;
+		return cellVisitCost * cellsAlongSide * cellsAlongSide + density_ * side * side;
+	}
+
+	/**
+	 * Get density measured by the last recommendCellSize()
+	 * @return double models per unit of area, weighted by the number of models in each area
+	 */
+	public double getLastDensity() { return lastDensity; }
+
+	/**
+	 * Count models in a grid of the given size and return sum(n^2) / sum(n) per unit of area,
+	 * i.e. the density around an average model
+	 */
+	private static double measureDensity(List<? extends CRBaseSituatedModel> models_, double worldWidth_, double worldHeight_, double sampleSize_) {
+		if (models_.isEmpty()) {
+			return 0;
+		}
+		CRGridAxis columnAxis = new CRGridAxis(worldWidth_, sampleSize_, false);
+		CRGridAxis rowAxis = new CRGridAxis(worldHeight_, sampleSize_, false);
+		int[] counts = new int[columnAxis.numOfCells * rowAxis.numOfCells];
+		for (int i=0; i<models_.size(); i++) {
+			CRBaseSituatedModel model = models_.get(i);
+			counts[rowAxis.getCell(model.getPosition().y) * columnAxis.numOfCells + columnAxis.getCell(model.getPosition().x)]++;
+		}
+		double sumOfSquares = 0;
+		for (int i=0; i<counts.length; i++) {
+			sumOfSquares += (double)counts[i] * counts[i];
+		}
+		return sumOfSquares / models_.size() / (sampleSize_ * sampleSize_);
+	}
+}
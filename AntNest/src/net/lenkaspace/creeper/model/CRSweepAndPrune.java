@@ -0,0 +1,374 @@
+package net.lenkaspace.creeper.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sort-and-sweep broad phase that finds, once per update loop, all pairs of situated models whose bounding
+ * boxes (see CRBaseSituatedModel.updatePose()) overlap. Boxes are enlarged by a margin, so that pairs stay
+ * candidates while objects move during the update loop. Objects that move out of their enlarged box after update()
+ * have to be reported to onModelMoved(); they are then matched against the querying object at query time.
+ * Positions are not wrapped around the edges of a borderless world, like in collision tests of situated models.
+ * Members are stored sorted by the left edge of their box. The order is kept between update loops and repaired
+ * with an insertion sort, which takes about linear time as objects only move a little each loop.
+ * Pairs are kept between update loops as well: a pair of members whose boxes didn't change is still a pair, so only
+ * members that moved are swept against their neighbours. Resting stones therefore cost almost nothing. When most
+ * members moved, e.g. with thousands of ants, all members are swept instead, which is cheaper then.
+ * Candidates of a member are stored in one flat array, sorted by their left edge.
+ * Used by CRBinWorld when setUseBroadPhase() is on.
+ */
+public class CRSweepAndPrune {
+
+	private static final int NONE = -1;
+	public static final double FULL_SWEEP_SHARE = 0.25; //share of moved members above which all members are swept
+
+	private final double margin;
+	private final int layerMask;
+
+	//-- members sorted by minX, a model knows its index in broadPhaseIndex
+	private CRBaseSituatedModel[] members;
+	private double[] minX;
+	private double[] maxX;
+	private double[] minY;
+	private double[] maxY;
+	private boolean[] hasMoved; //box changed at the last update()
+	private int numOfMovedMembers;
+	private int[] previousIndex; //index of a member before the last update() sorted the members
+	private int[] newIndex; //index of a member after the last update(), by its previous index
+	private boolean[] hasEscaped; //moved out of its enlarged box since the last update()
+	private int[] escapedMembers;
+	private int numOfEscapedMembers;
+	private double maxWidth; //widest box, bounds how far back a sweep has to look
+	private int numOfMembers;
+	private boolean needsRebuild;
+
+	//-- pairs of member indexes, the lower one first, and candidates of member m in candidates[candidateStart[m]] to candidates[candidateStart[m+1]-1]
+	private int[] pairFirst;
+	private int[] pairSecond;
+	private int numOfPairs;
+	private int[] newPairFirst;
+	private int[] newPairSecond;
+	private int numOfNewPairs;
+	private int[] candidateStart;
+	private int[] candidateCursor;
+	private int[] candidates;
+
+	/**
+	 * Constructor
+	 * @param margin_ double distance by which bounding boxes are enlarged on each side
+	 * @param layerMask_ int mask of spatial layers of models to include, see CRBaseSituatedModel.setSpatialLayer()
+	 */
+	public CRSweepAndPrune(double margin_, int layerMask_) {
+		margin = margin_;
+		layerMask = layerMask_;
+		members = new CRBaseSituatedModel[0];
+		ensureCapacity(16);
+		pairFirst = new int[16];
+		pairSecond = new int[16];
+		newPairFirst = new int[16];
+		newPairSecond = new int[16];
+		candidates = new int[32];
+		escapedMembers = new int[16];
+		numOfEscapedMembers = 0;
+		numOfMembers = 0;
+		numOfPairs = 0;
+		needsRebuild = true;
+	}
+
+	//==================================== UPDATE =======================================
+
+	/**
+	 * Call once per update loop, before objects look for contacts
+	 * @param models_ List<? extends CRBaseSituatedModel> all models of the world
+	 */
+	public void update(List<? extends CRBaseSituatedModel> models_) {
+		boolean isRebuilt = needsRebuild;
+		clearEscapedMembers();
+		if (needsRebuild) {
+			rebuild(models_);
+		}
+		//-- new boxes
+		maxWidth = 0;
+		numOfMovedMembers = 0;
+		for (int i=0; i<numOfMembers; i++) {
+			CRBaseSituatedModel model = members[i];
+			double newMinX = model.getMinX() - margin;
+			double newMaxX = model.getMaxX() + margin;
+			double newMinY = model.getMinY() - margin;
+			double newMaxY = model.getMaxY() + margin;
+			hasMoved[i] = isRebuilt || newMinX != minX[i] || newMaxX != maxX[i] || newMinY != minY[i] || newMaxY != maxY[i];
+			minX[i] = newMinX;
+			maxX[i] = newMaxX;
+			minY[i] = newMinY;
+			maxY[i] = newMaxY;
+			if (hasMoved[i]) {
+				numOfMovedMembers++;
+			}
+			previousIndex[i] = i;
+			maxWidth = Math.max(maxWidth, newMaxX - newMinX);
+		}
+		//-- repair the order
+		for (int k=1; k<numOfMembers; k++) {
+			if (minX[k - 1] > minX[k]) {
+				moveDown(k);
+			}
+		}
+		for (int k=0; k<numOfMembers; k++) {
+			newIndex[previousIndex[k]] = k;
+		}
+		sweep(isRebuilt || numOfMovedMembers > FULL_SWEEP_SHARE * numOfMembers);
+	}
+
+	/**
+	 * Make the next update() collect members from the world again, e.g. after models were added
+	 */
+	public void invalidate() {
+		needsRebuild = true;
+	}
+
+	/**
+	 * Call after a model changed position, rotation or size between two update() calls. If its box is no longer
+	 * within its enlarged box, its candidates are no longer complete and it is matched against queries directly.
+	 * @param model_ CRBaseSituatedModel model
+	 */
+	public void onModelMoved(CRBaseSituatedModel model_) {
+		int member = model_.broadPhaseIndex;
+		if (member < 0 || member >= numOfMembers || members[member] != model_ || needsRebuild || hasEscaped[member]) {
+			return;
+		}
+		if (!isWithinBox(member, model_)) {
+			hasEscaped[member] = true;
+			if (numOfEscapedMembers == escapedMembers.length) {
+				escapedMembers = Arrays.copyOf(escapedMembers, numOfEscapedMembers * 2);
+			}
+			escapedMembers[numOfEscapedMembers] = member;
+			numOfEscapedMembers++;
+		}
+	}
+	
+	/**
+	 * Forget all members and pairs
+	 */
+	public void clear() {
+		clearEscapedMembers();
+		for (int i=0; i<numOfMembers; i++) {
+			members[i].broadPhaseIndex = NONE;
+			members[i] = null;
+		}
+		numOfMembers = 0;
+		numOfPairs = 0;
+		Arrays.fill(candidateStart, 0);
+		needsRebuild = true;
+	}
+
+	//==================================== QUERIES ======================================
+
+	/**
+	 * Add models that may touch a model to a list: models whose enlarged boxes overlapped the enlarged box of the model
+	 * at the last update() and are still within them, followed by models that moved out of their enlarged boxes since
+	 * and now overlap the enlarged box of the model.
+	 * @param model_ CRBaseSituatedModel model
+	 * @param result_ ArrayList<CRBaseSituatedModel> list to add the candidates to
+	 * @return boolean false if the model wasn't a member at the last update() or is no longer within its enlarged box, result_ is not changed then
+	 */
+	public boolean getCandidates(CRBaseSituatedModel model_, ArrayList<CRBaseSituatedModel> result_) {
+		int member = model_.broadPhaseIndex;
+		if (member < 0 || member >= numOfMembers || members[member] != model_ || needsRebuild
+				|| hasEscaped[member] || !isWithinBox(member, model_)) {
+			return false;
+		}
+		for (int i=candidateStart[member]; i<candidateStart[member + 1]; i++) {
+			if (!hasEscaped[candidates[i]]) {
+				result_.add(members[candidates[i]]);
+			}
+		}
+		for (int i=0; i<numOfEscapedMembers; i++) {
+			CRBaseSituatedModel other = members[escapedMembers[i]];
+			if (other != model_ && other.getMinX() <= maxX[member] && minX[member] <= other.getMaxX()
+					&& other.getMinY() <= maxY[member] && minY[member] <= other.getMaxY()) {
+				result_.add(other);
+			}
+		}
+		return true;
+	}
+
+	public int getNumOfMembers() { return numOfMembers; }
+	public int getNumOfPairs() { return numOfPairs; }
+	public int getNumOfEscapedMembers() { return numOfEscapedMembers; }
+	public double getMargin() { return margin; }
+
+	//==================================== HELPERS ======================================
+
+	private boolean isWithinBox(int member_, CRBaseSituatedModel model_) {
+		return model_.getMinX() >= minX[member_] && model_.getMaxX() <= maxX[member_]
+				&& model_.getMinY() >= minY[member_] && model_.getMaxY() <= maxY[member_];
+	}
+	
+	private void clearEscapedMembers() {
+		for (int i=0; i<numOfEscapedMembers; i++) {
+			hasEscaped[escapedMembers[i]] = false;
+		}
+		numOfEscapedMembers = 0;
+	}
+	
+	/**
+	 * Collect members of the wanted layers, sorted by minX from scratch with a stable sort
+	 */
+	private void rebuild(List<? extends CRBaseSituatedModel> models_) {
+		clear();
+		ensureCapacity(models_.size());
+		ArrayList<CRBaseSituatedModel> newMembers = new ArrayList<CRBaseSituatedModel>();
+		for (int i=0; i<models_.size(); i++) {
+			CRBaseSituatedModel model = models_.get(i);
+			if ((layerMask & (1 << model.getSpatialLayer())) != 0) {
+				newMembers.add(model);
+			}
+		}
+		Collections.sort(newMembers, new Comparator<CRBaseSituatedModel>() {
+			public int compare(CRBaseSituatedModel first_, CRBaseSituatedModel second_) {
+				return Double.compare(first_.getMinX(), second_.getMinX());
+			}
+		});
+		for (int i=0; i<newMembers.size(); i++) {
+			CRBaseSituatedModel model = newMembers.get(i);
+			model.broadPhaseIndex = numOfMembers;
+			members[numOfMembers] = model;
+			numOfMembers++;
+		}
+		needsRebuild = false;
+	}
+
+	/**
+	 * Move a member down to its place among the sorted members before it, with everything known about it
+	 */
+	private void moveDown(int member_) {
+		CRBaseSituatedModel model = members[member_];
+		double modelMinX = minX[member_];
+		double modelMaxX = maxX[member_];
+		double modelMinY = minY[member_];
+		double modelMaxY = maxY[member_];
+		boolean modelHasMoved = hasMoved[member_];
+		int modelPreviousIndex = previousIndex[member_];
+		int j = member_ - 1;
+		while (j >= 0 && minX[j] > modelMinX) {
+			members[j + 1] = members[j];
+			members[j + 1].broadPhaseIndex = j + 1;
+			minX[j + 1] = minX[j];
+			maxX[j + 1] = maxX[j];
+			minY[j + 1] = minY[j];
+			maxY[j + 1] = maxY[j];
+			hasMoved[j + 1] = hasMoved[j];
+			previousIndex[j + 1] = previousIndex[j];
+			j--;
+		}
+		members[j + 1] = model;
+		model.broadPhaseIndex = j + 1;
+		minX[j + 1] = modelMinX;
+		maxX[j + 1] = modelMaxX;
+		minY[j + 1] = modelMinY;
+		maxY[j + 1] = modelMaxY;
+		hasMoved[j + 1] = modelHasMoved;
+		previousIndex[j + 1] = modelPreviousIndex;
+	}
+
+	/**
+	 * Keep pairs of members that didn't move and sweep the moved ones against their neighbours, or sweep all members.
+	 * Store all pairs as candidates of both members.
+	 */
+	private void sweep(boolean isFullSweep_) {
+		numOfNewPairs = 0;
+		if (!isFullSweep_) {
+			for (int i=0; i<numOfPairs; i++) {
+				int first = newIndex[pairFirst[i]];
+				int second = newIndex[pairSecond[i]];
+				if (!hasMoved[first] && !hasMoved[second]) {
+					addPair(Math.min(first, second), Math.max(first, second));
+				}
+			}
+		}
+		for (int member=0; member<numOfMembers; member++) {
+			if (!isFullSweep_ && !hasMoved[member]) {
+				continue;
+			}
+			double memberMinX = minX[member];
+			double memberMaxX = maxX[member];
+			double memberMinY = minY[member];
+			double memberMaxY = maxY[member];
+			//-- members after it, a pair of two swept members is added by the first of them
+			for (int other=member+1; other<numOfMembers && minX[other] <= memberMaxX; other++) {
+				if (minY[other] <= memberMaxY && memberMinY <= maxY[other]) {
+					addPair(member, other);
+				}
+			}
+			//-- members before it that didn't move, no box before it reaches further than maxWidth back
+			if (isFullSweep_) {
+				continue;
+			}
+			for (int other=member-1; other>=0 && minX[other] >= memberMinX - maxWidth; other--) {
+				if (!hasMoved[other] && maxX[other] >= memberMinX && minY[other] <= memberMaxY && memberMinY <= maxY[other]) {
+					addPair(other, member);
+				}
+			}
+		}
+		int[] swap = pairFirst;
+		pairFirst = newPairFirst;
+		newPairFirst = swap;
+		swap = pairSecond;
+		pairSecond = newPairSecond;
+		newPairSecond = swap;
+		numOfPairs = numOfNewPairs;
+
+		//-- count candidates per member, then place them, a full sweep finds them in order already
+		Arrays.fill(candidateStart, 0, numOfMembers + 1, 0);
+		for (int i=0; i<numOfPairs; i++) {
+			candidateStart[pairFirst[i] + 1]++;
+			candidateStart[pairSecond[i] + 1]++;
+		}
+		for (int m=0; m<numOfMembers; m++) {
+			candidateStart[m + 1] += candidateStart[m];
+		}
+		if (candidates.length < numOfPairs * 2) {
+			candidates = new int[Math.max(numOfPairs * 2, candidates.length * 2)];
+		}
+		System.arraycopy(candidateStart, 0, candidateCursor, 0, numOfMembers);
+		for (int i=0; i<numOfPairs; i++) {
+			candidates[candidateCursor[pairFirst[i]]++] = pairSecond[i];
+			candidates[candidateCursor[pairSecond[i]]++] = pairFirst[i];
+		}
+		for (int m=0; m<numOfMembers && !isFullSweep_; m++) {
+			if (candidateStart[m + 1] - candidateStart[m] > 1) {
+				Arrays.sort(candidates, candidateStart[m], candidateStart[m + 1]);
+			}
+		}
+	}
+
+	private void addPair(int first_, int second_) {
+		if (numOfNewPairs == newPairFirst.length) {
+			newPairFirst = Arrays.copyOf(newPairFirst, numOfNewPairs * 2);
+			newPairSecond = Arrays.copyOf(newPairSecond, numOfNewPairs * 2);
+		}
+		newPairFirst[numOfNewPairs] = first_;
+		newPairSecond[numOfNewPairs] = second_;
+		numOfNewPairs++;
+	}
+
+	private void ensureCapacity(int capacity_) {
+		if (members.length < capacity_) {
+			int newCapacity = Math.max(capacity_, members.length * 2);
+			members = Arrays.copyOf(members, newCapacity);
+			minX = new double[newCapacity];
+			maxX = new double[newCapacity];
+			minY = new double[newCapacity];
+			maxY = new double[newCapacity];
+			hasMoved = new boolean[newCapacity];
+			hasEscaped = new boolean[newCapacity];
+			previousIndex = new int[newCapacity];
+			newIndex = new int[newCapacity];
+			candidateStart = new int[newCapacity + 1];
+			candidateCursor = new int[newCapacity];
+		}
+	}
+}
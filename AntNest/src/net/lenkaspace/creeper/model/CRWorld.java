@@ -1,8 +1,15 @@
 package net.lenkaspace.creeper.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import net.lenkaspace.creeper.CRController;
+import net.lenkaspace.creeper.CRSettings;
+import net.lenkaspace.creeper.view.CRPaintSnapshot;
+import net.lenkaspace.creeper.view.CRSnapshotBuffer;
+import net.lenkaspace.creeper.view.CRWorldSnapshot;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
 /**
@@ -19,6 +26,13 @@ public class CRWorld extends CRBaseModel  {
 
 	private ArrayList<CRBaseSituatedModel> situatedModels; // CRBaseSituatedModels that can be rendered and hit
 	private ArrayList<CRBaseDynamicModel> dynamicModels; //CRBaseDynamicModels that can be renderer, hit and move
+	private BitSet activeDynamicModels; //indexes of dynamicModels that are updated, the others sleep until woken
+	private ArrayList<CRBaseDynamicModel> sensingModels; //active dynamicModels during the sense phase
+	
+	protected CRSnapshotBuffer snapshotBuffer; //renderable state handed over to the rendering thread
+	
+	private static final int SENSE_BATCH_SIZE = 64; //number of dynamicModels sensed by one task
+	private ForkJoinPool updatePool; //threads for parallel sensing and other parallel work, created when first needed
 	
 	/**
 	 * Constructor.
@@ -31,23 +45,40 @@ public class CRWorld extends CRBaseModel  {
 		controller = controller_;
 		situatedModels = new ArrayList<CRBaseSituatedModel>();
 		dynamicModels = new ArrayList<CRBaseDynamicModel>();
+		activeDynamicModels = new BitSet();
+		sensingModels = new ArrayList<CRBaseDynamicModel>();
 		size = new CRVector3d(size_);
 		isBorderless = true;
+		snapshotBuffer = new CRSnapshotBuffer(256);
 	}
 	
 	/**
-	 * Main update function. Called from the mainThread of CRController. Update all dynamicModels
+	 * Main update function. Called from the mainThread of CRController. Update all active dynamicModels,
+	 * in the order they were added. A model that is woken during the update loop takes part in the rest of it.
+	 * At the end, models that can sleep are put to sleep and cost nothing until woken by wakeDynamicModel().
+	 * If CRSettings parallel update is on, all active dynamicModels sense first, in parallel. Conflicts between
+	 * their decisions are resolved afterwards, as they act one by one.
 	 */
 	public void update() {
 		try {
-			for (CRBaseDynamicModel dynamicModel : dynamicModels) {
-				dynamicModel.onUpdateLoopStart();
+			if (CRSettings.getSingleton().getIsParallelUpdate()) {
+				sense();
+			}
+			for (int i = activeDynamicModels.nextSetBit(0); i >= 0; i = activeDynamicModels.nextSetBit(i+1)) {
+				dynamicModels.get(i).onUpdateLoopStart();
 			}
-			for (CRBaseDynamicModel dynamicModel : dynamicModels) {
-				dynamicModel.update();
+			for (int i = activeDynamicModels.nextSetBit(0); i >= 0; i = activeDynamicModels.nextSetBit(i+1)) {
+				dynamicModels.get(i).update();
 			}
-			for (CRBaseDynamicModel dynamicModel : dynamicModels) {
-				dynamicModel.onUpdateLoopEnd();
+			for (int i = activeDynamicModels.nextSetBit(0); i >= 0; i = activeDynamicModels.nextSetBit(i+1)) {
+				dynamicModels.get(i).onUpdateLoopEnd();
+			}
+			//-- put models to sleep, with their pose up to date as sense() only updates poses of active models
+			for (int i = activeDynamicModels.nextSetBit(0); i >= 0; i = activeDynamicModels.nextSetBit(i+1)) {
+				if (dynamicModels.get(i).canSleep()) {
+					dynamicModels.get(i).updatePose();
+					activeDynamicModels.clear(i);
+				}
 			}
 		} catch (Exception e) {
 			if (e.getMessage() != null) {
@@ -58,6 +89,156 @@ public class CRWorld extends CRBaseModel  {
 	}
 	
 	
+	/**
+	 * Let all active dynamicModels sense the world, split between CRSettings update threads.
+	 * Pose caches of active models are brought up to date first, so that the threads only read them. Sleeping models
+	 * don't move and were posed when they fell asleep, other situated models when they were added; a woken model is
+	 * posed here in the next update loop.
+	 */
+	protected void sense() {
+		sensingModels.clear();
+		for (int i = activeDynamicModels.nextSetBit(0); i >= 0; i = activeDynamicModels.nextSetBit(i+1)) {
+			CRBaseDynamicModel dynamicModel = dynamicModels.get(i);
+			dynamicModel.updatePose();
+			sensingModels.add(dynamicModel);
+		}
+		ForkJoinPool pool = getUpdatePool();
+		if (pool == null || sensingModels.size() <= SENSE_BATCH_SIZE) {
+			for (CRBaseDynamicModel dynamicModel : sensingModels) {
+				dynamicModel.onSense();
+			}
+		} else {
+			pool.invoke(new SenseTask(sensingModels, 0, sensingModels.size()));
+		}
+	}
+	
+	/**
+	 * Get threads for parallel work within an update loop, used by sense() and e.g. by fields of the world
+	 * @return ForkJoinPool pool with CRSettings update threads, null if parallel update is off or uses one thread
+	 */
+	public ForkJoinPool getUpdatePool() {
+		if (!CRSettings.getSingleton().getIsParallelUpdate()) {
+			return null;
+		}
+		int numOfThreads = CRSettings.getSingleton().getUpdateThreads();
+		if (numOfThreads <= 0) {
+			numOfThreads = Runtime.getRuntime().availableProcessors();
+		}
+		if (numOfThreads == 1) {
+			return null;
+		}
+		if (updatePool == null || updatePool.getParallelism() != numOfThreads) {
+			shutdownUpdatePool();
+			updatePool = new ForkJoinPool(numOfThreads);
+		}
+		return updatePool;
+	}
+	
+	/**
+	 * Stop the threads of getUpdatePool()
+	 */
+	protected void shutdownUpdatePool() {
+		if (updatePool != null) {
+			updatePool.shutdown();
+			updatePool = null;
+		}
+	}
+	
+	/**
+	 * Calls onSense() of a range of dynamicModels, splitting the range in halves until it is small enough
+	 */
+	private static class SenseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<CRBaseDynamicModel> models;
+		private final int start;
+		private final int end;
+		
+		SenseTask(ArrayList<CRBaseDynamicModel> models_, int start_, int end_) {
+			models = models_;
+			start = start_;
+			end = end_;
+		}
+		
+		protected void compute() {
+			if (end - start <= SENSE_BATCH_SIZE) {
+				for (int i=start; i<end; i++) {
+					models.get(i).onSense();
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new SenseTask(models, start, middle), new SenseTask(models, middle, end));
+			}
+		}
+	}
+	
+	
+	//==================================== SIMULATION EVENTS ====================================
+	
+	/**
+	 * Called by CRController each time a run ends. Stops the update threads, a new run starts them again if needed.
+	 * @param runNumber_ int ending run number
+	 */
+	public void onRunEnd(int runNumber_) {
+		super.onRunEnd(runNumber_);
+		shutdownUpdatePool();
+	}
+	
+	
+	//==================================== SNAPSHOTS ============================================
+	
+	/**
+	 * Publish a new snapshot for the renderer if it has asked for one since the last snapshot.
+	 * Called from the simulation thread after each update loop, so the cost is paid once per rendered frame, not once per tick.
+	 */
+	public void publishSnapshotIfRequested() {
+		if (snapshotBuffer.isSnapshotRequested()) {
+			fillSnapshot(snapshotBuffer.getBackSnapshot());
+			snapshotBuffer.publish();
+		}
+	}
+	
+	/**
+	 * Copy the renderable state of all visible situated models into a snapshot
+	 * @param snapshot_ CRWorldSnapshot snapshot to fill, its previous contents are discarded
+	 */
+	public void fillSnapshot(CRWorldSnapshot snapshot_) {
+		onSnapshotStart();
+		snapshot_.clear();
+		for (CRBaseSituatedModel situatedModel : situatedModels) {
+			if (isVisibleInSnapshot(situatedModel)) {
+				if (situatedModel.isRenderedByImage()) {
+					String imageFileName = situatedModel.getImageFileName();
+					if (imageFileName != null && imageFileName != "") {
+						CRVector3d position = situatedModel.getPosition();
+						CRVector3d modelSize = situatedModel.getSize();
+						snapshot_.addImage(position.x, position.y, modelSize.x, modelSize.y, situatedModel.getRotation(), imageFileName);
+					}
+				} else {
+					CRPaintSnapshot paintSnapshot = situatedModel.createPaintSnapshot(snapshot_.getReusablePaintSnapshot());
+					if (paintSnapshot != null) {
+						snapshot_.addPaintSnapshot(paintSnapshot);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Called before a snapshot is filled. Override to read display settings once per snapshot.
+	 */
+	protected void onSnapshotStart() {
+		
+	}
+	
+	/**
+	 * Decide whether a model appears in a snapshot. Override to apply display settings.
+	 * @param situatedModel_ CRBaseSituatedModel model
+	 * @return boolean true if the model should be rendered. Default is situatedModel_.isVisible()
+	 */
+	protected boolean isVisibleInSnapshot(CRBaseSituatedModel situatedModel_) {
+		return situatedModel_.isVisible();
+	}
+	
 	//==================================== OBJECT MANIPULATION ==================================
 	/**
 	 * Add a CRBaseSituatedModel to the list of situatedModels. Sets world pointer of the situatedModel to this.
@@ -71,6 +252,7 @@ public class CRWorld extends CRBaseModel  {
 			situatedModel_.setWorld(this);
 			//-- add it to the list
 			situatedModels.add(situatedModel_);			
+			situatedModel_.updatePose();
 		}
 	}
 	
@@ -82,11 +264,34 @@ public class CRWorld extends CRBaseModel  {
 		if (!dynamicModels.contains(dynamicModel_)) {
 			//-- add to the situated models, this will also set the world pointer of the objects to this.
 			this.addSituatedModel(dynamicModel_);
-			//-- add to the dynamic models
+			//-- add to the dynamic models, active
+			dynamicModel_.dynamicModelIndex = dynamicModels.size();
 			dynamicModels.add(dynamicModel_);
+			activeDynamicModels.set(dynamicModel_.dynamicModelIndex);
+		}
+	}
+	
+	/**
+	 * Make a sleeping dynamicModel active again, so that it is updated from now on, including the current update loop.
+	 * @param dynamicModel_ CRBaseDynamicModel model of this world
+	 */
+	public void wakeDynamicModel(CRBaseDynamicModel dynamicModel_) {
+		int index = dynamicModel_.dynamicModelIndex;
+		if (index >= 0 && index < dynamicModels.size() && dynamicModels.get(index) == dynamicModel_) {
+			activeDynamicModels.set(index);
 		}
 	}
 	
+	/**
+	 * Find out if a dynamicModel is being updated
+	 * @param dynamicModel_ CRBaseDynamicModel model of this world
+	 * @return boolean false if the model sleeps or is not in this world
+	 */
+	public boolean isDynamicModelActive(CRBaseDynamicModel dynamicModel_) {
+		int index = dynamicModel_.dynamicModelIndex;
+		return index >= 0 && index < dynamicModels.size() && dynamicModels.get(index) == dynamicModel_ && activeDynamicModels.get(index);
+	}
+	
 	/**
 	 * Clear all arrays that store any child objects.
 	 * Subclasses should override this to implement clearing of any additional arrays
@@ -94,6 +299,7 @@ public class CRWorld extends CRBaseModel  {
 	public void clearChildren() {
 		if (dynamicModels != null) {
 			dynamicModels.clear();
+			activeDynamicModels.clear();
 		}
 		if (situatedModels != null) {
 			situatedModels.clear();
@@ -106,7 +312,17 @@ public class CRWorld extends CRBaseModel  {
 	public void setSituatedModels(ArrayList<CRBaseSituatedModel> situatedModels) { this.situatedModels = situatedModels; }
 	
 	public ArrayList<CRBaseDynamicModel> getDynamicModels() { return dynamicModels; }
-	public void setDynamicModels(ArrayList<CRBaseDynamicModel> situatedModels) { this.dynamicModels = situatedModels; }
+	public void setDynamicModels(ArrayList<CRBaseDynamicModel> situatedModels) {
+		this.dynamicModels = situatedModels;
+		//-- all new models start active
+		activeDynamicModels.clear();
+		for (int i=0; i<dynamicModels.size(); i++) {
+			dynamicModels.get(i).dynamicModelIndex = i;
+		}
+		activeDynamicModels.set(0, dynamicModels.size());
+	}
+	
+	public int getNumOfActiveDynamicModels() { return activeDynamicModels.cardinality(); }
 
 	public CRVector3d getSize() { return size; }
 	public void setSize(CRVector3d size_) { size = new CRVector3d(size_); }
@@ -117,4 +333,6 @@ public class CRWorld extends CRBaseModel  {
 	
 	public CRController getController() { return controller; }
 	
+	public CRSnapshotBuffer getSnapshotBuffer() { return snapshotBuffer; }
+	
 }
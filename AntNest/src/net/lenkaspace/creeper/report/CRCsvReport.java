@@ -111,7 +111,7 @@ public class CRCsvReport extends CRBaseReport {
 	public void addValueSet(String[] values_, int trialNumber_, int runNumber_) {
 		//-- adjust trial and run numbers to match array indexing
 		trialNumber_ -= 1;
-		runNumber_ -= 1;
+		runNumber_ -= controller.getFirstRunNumber();
 		//-- add values
 		if (trialNumber_ >= 0 && trialNumber_ < controller.getTotalTrials() && runNumber_ >= 0 && runNumber_ < controller.getTotalRuns()) {
 			values[trialNumber_][runNumber_] = values_;
@@ -146,7 +146,7 @@ public class CRCsvReport extends CRBaseReport {
 	public void addValue(String variableName_, String value_, int trialNumber_, int runNumber_) {
 		//-- adjust trial and run numbers to match array indexing
 		trialNumber_ -= 1;
-		runNumber_ -= 1;
+		runNumber_ -= controller.getFirstRunNumber();
 		//-- add value
 		if (trialNumber_ >= 0 && trialNumber_ < controller.getTotalTrials() && runNumber_ >= 0 && runNumber_ < controller.getTotalRuns()) {
 			//-- search where to put the value
@@ -24,6 +24,7 @@ public class CRReportController {
 	protected String reportFolderName;
 	protected String baseFolderName;
 	protected String currentFilePath;
+	protected boolean shouldCleanReportFolder;
 	
 	
 	//==================================== CONSTRUCTORS =================================
@@ -36,6 +37,7 @@ public class CRReportController {
 		controller = controller_;
 		reports = new Hashtable <String, CRBaseReport>();
 		baseFolderName = "bin";
+		shouldCleanReportFolder = true;
 	}
 	
 	
@@ -99,18 +101,8 @@ public class CRReportController {
 	 */
 	public void onTrialStart(int trialNumber_, int runNumber_) {
 		//-- first time run: create and clean the root reports directory
-		if (trialNumber_ == 1 && runNumber_ == 1) {
-			File reportsDir = new File(baseFolderName + "/" + reportFolderName);
-			try {
-				FileUtils.forceMkdir(reportsDir);
-			} catch (IOException e1) {
-				System.err.println("Could not create reports directory");
-			}
-			try {
-				FileUtils.cleanDirectory(reportsDir);
-			} catch (IOException e1) {
-				System.err.println("Could not clean reports directory");
-			}
+		if (trialNumber_ == 1 && runNumber_ == 1 && shouldCleanReportFolder) {
+			cleanFolder(baseFolderName + "/" + reportFolderName);
 		}
 		
 		//-- create the reports
@@ -190,6 +182,24 @@ public class CRReportController {
 		reports.put(reportName_, report_);
 	}
 	
+	/**
+	 * Create a folder if it doesn't exist and delete all of its contents
+	 * @param folderPath_ String path to the folder
+	 */
+	public static void cleanFolder(String folderPath_) {
+		File reportsDir = new File(folderPath_);
+		try {
+			FileUtils.forceMkdir(reportsDir);
+		} catch (IOException e1) {
+			System.err.println("Could not create reports directory");
+		}
+		try {
+			FileUtils.cleanDirectory(reportsDir);
+		} catch (IOException e1) {
+			System.err.println("Could not clean reports directory");
+		}
+	}
+	
 	//==================================== GETTERS / SETTERS ============================
 	
 	/**
@@ -270,5 +280,13 @@ public class CRReportController {
 	 * @param folderName_ String folder name
 	 */
 	public void setBaseFolderName(String folderName_) { baseFolderName = folderName_; }
+	
+	/**
+	 * Set whether the report folder is cleaned when the first trial of the first run starts.
+	 * Switch off when several controllers save reports into the same folder. Default is true.
+	 * @param value_ boolean
+	 */
+	public void setShouldCleanReportFolder(boolean value_) { shouldCleanReportFolder = value_; }
+	public boolean getShouldCleanReportFolder() { return shouldCleanReportFolder; }
     
 }
@@ -53,6 +53,7 @@ public class CRTimeSeriesReport extends CRBaseReport {
 	protected Range yAxisDisplayRange;
 	protected boolean shouldDisplayLegend;
 	protected int[] numOfValuesAddedInCurrentSecond;
+	protected DescriptiveStatistics[] trialStatistics;
 	protected boolean isScatterPlot;
 	
 	protected JFreeChart jFreeChart;
@@ -101,6 +102,10 @@ public class CRTimeSeriesReport extends CRBaseReport {
 		dataSeriesArray = new ArrayList <XYSeries>();
 		totalDataSeriesValuesOfSecond = new double[variableNames.length];
 		numOfValuesAddedInCurrentSecond = new int[variableNames.length];
+		trialStatistics = new DescriptiveStatistics[variableNames.length];
+		for (int i=0; i<variableNames.length; i++) {
+			trialStatistics[i] = new DescriptiveStatistics();
+		}
 		//-- create elements of the dataSeriesArray
 		for (String seriesName : variableNames) {
 			XYSeries series = new XYSeries(seriesName);
@@ -110,7 +115,7 @@ public class CRTimeSeriesReport extends CRBaseReport {
 	}
 	
 	/**
-	 * Save self to an image if allowed
+	 * Save self to an image if allowed, otherwise only save the data as text if allowed
 	 * @param trialNumber_ int ending trial number
 	 * @param runNumber_ int current run number
 	 */
@@ -118,6 +123,8 @@ public class CRTimeSeriesReport extends CRBaseReport {
 		CRSettings settings = CRSettings.getSingleton();
 		if (settings.getShouldPrintGraphicReports()) {
 			createSelf(reportController.getCurrentFilePath() + "_" + this.getFileName(), false);
+		} else if (settings.getShouldPrintTextReports()) {
+			createSelfAsText(reportController.getCurrentFilePath() + "_" + this.getFileName());
 		}
 	}
 	
@@ -131,7 +138,7 @@ public class CRTimeSeriesReport extends CRBaseReport {
 		//-- add 0 at the beginning, so that there is at least some value for each second.
 		if (timeCounter_ == 0) {
 			for (int variableIndex=0; variableIndex < dataSeriesArray.size(); variableIndex++) {
-				addValue(0,variableIndex);
+				addToCurrentSecond(0,variableIndex);
 				//-- reset the number of values added this second to 0
 				numOfValuesAddedInCurrentSecond[variableIndex] = 0;
 			}
@@ -204,13 +211,21 @@ public class CRTimeSeriesReport extends CRBaseReport {
 	public void addValue(double value_, int variableIndex_) {
 		
 		if (variableIndex_ >= 0 && variableIndex_ < variableNames.length) {
-			//-- add to temporary value:
-			totalDataSeriesValuesOfSecond[variableIndex_] += value_;
-			numOfValuesAddedInCurrentSecond[variableIndex_]++;
-			
+			addToCurrentSecond(value_, variableIndex_);
+			trialStatistics[variableIndex_].addValue(value_);
 		}
 	}
 	
+	/**
+	 * Add to the temporary value of the current second
+	 * @param value_ double new value
+	 * @param variableIndex_ int 0 <= index < size of set names
+	 */
+	protected void addToCurrentSecond(double value_, int variableIndex_) {
+		totalDataSeriesValuesOfSecond[variableIndex_] += value_;
+		numOfValuesAddedInCurrentSecond[variableIndex_]++;
+	}
+	
 	
 	//==================================== REPORT CREATION =================================
 	
@@ -452,6 +467,19 @@ public class CRTimeSeriesReport extends CRBaseReport {
 		
 	}
 	
+	/**
+	 * Get statistics of all individual values added to a variable during the current trial,
+	 * as opposed to the per time unit averages that are plotted.
+	 * @param variableIndex_ int variable index
+	 * @return DescriptiveStatistics statistics of the current trial
+	 */
+	public DescriptiveStatistics getTrialStatistics(int variableIndex_) {
+		if (variableIndex_ < 0 || variableIndex_ >= variableNames.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return trialStatistics[variableIndex_];
+	}
+	
 	/**
 	 * Get index of a variable name
 	 * @param variableName_ String variable name. Set to empty string to get the 1st index.
@@ -1,14 +1,20 @@
 package net.lenkaspace.creeper.report;
 
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
 
 import net.lenkaspace.creeper.CRSettings;
 import net.lenkaspace.creeper.helpers.CRFileIOHelper;
+import net.lenkaspace.creeper.view.CRRenderer;
+import net.lenkaspace.creeper.view.CRWorldSnapshot;
 
 /**
  * Creates graphical snapshots of the world at specified times / intervals
  * and saves them to the report folder. Not available for online builds
  * (i.e. when CRSettings ONLINE_BUILD = true).
+ * Snapshots are taken on the simulation thread from the world itself, so they show exactly
+ * the reported time unit, independent of what the renderer currently displays.
  * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
@@ -17,6 +23,8 @@ public class CRWorldSnapshotReport extends CRBaseReport {
 
 	private int[] snapshotTimeUnits;
 	private int snapshotFrequency;
+	private CRWorldSnapshot worldSnapshot;
+	private BufferedImage image;
 	
 	/**
 	 * Constructor
@@ -96,11 +104,20 @@ public class CRWorldSnapshotReport extends CRBaseReport {
 	 * @param show_ boolean if false, report is hidden immediately after printed
 	 */
 	public void createSelf(String printToFileName_, boolean show_) {
-		if (CRSettings.getSingleton().getShouldPrintGraphicReports()) {
+		if (CRSettings.getSingleton().getShouldPrintGraphicReports() && controller.getRenderer() != null) {
 			//---- save arena screenshot:
-			controller.getRenderer().setShouldOverrideNoPaint(true);
-			//controller.getRenderer().repaint();
-			CRFileIOHelper.componentToJpeg(this.controller.getRenderer(), printToFileName_);
+			CRRenderer renderer = controller.getRenderer();
+			if (worldSnapshot == null) {
+				worldSnapshot = new CRWorldSnapshot(256);
+			}
+			controller.getWorld().fillSnapshot(worldSnapshot);
+			if (image == null || image.getWidth() != renderer.getWidth() || image.getHeight() != renderer.getHeight()) {
+				image = new BufferedImage(Math.max(renderer.getWidth(), 1), Math.max(renderer.getHeight(), 1), BufferedImage.TYPE_USHORT_565_RGB);
+			}
+			Graphics g = image.getGraphics();
+			renderer.paintSnapshot(worldSnapshot, g);
+			g.dispose();
+			CRFileIOHelper.imageToJpeg(image, printToFileName_);
 		}
 	}
 
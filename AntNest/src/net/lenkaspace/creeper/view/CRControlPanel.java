@@ -49,6 +49,7 @@ public class CRControlPanel extends JPanel {
 	protected JPanel timeSettingsPanel;
 	protected JButton timeStartPauseButton;
 	protected JSlider timeSpeedSlider;
+	protected JCheckBox turboCheckBox;
 	
 	protected JPanel basicOutputPanel;
 	
@@ -162,6 +163,13 @@ public class CRControlPanel extends JPanel {
         	}
         }, timeSettingsPanel);
 		
+		//-- turbo: as many update loops as possible, the slider is ignored
+		turboCheckBox = CRComponentFactory.createJCheckBox("Turbo", settings.getIsTurbo(), new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				CRSettings.getSingleton().setIsTurbo(turboCheckBox.isSelected());
+			}
+		}, timeSettingsPanel);
+		
 		setTimeControlsEnabled(false);
 		
 		
@@ -265,6 +273,7 @@ public class CRControlPanel extends JPanel {
 	public JPanel getTimeSettingsPanel() { return timeSettingsPanel; }
 	public JButton getTimeStartPauseButton() { return timeStartPauseButton;	}
 	public JSlider getTimeSpeedSlider() { return timeSpeedSlider;  }
+	public JCheckBox getTurboCheckBox() { return turboCheckBox; }
 	public JPanel getBasicOutputPanel() { return basicOutputPanel; }	
 	public JPanel getReportOutputPanel() { return reportOutputPanel; }
 	public JComboBox getReportTypeComboBox() { return reportTypeComboBox; }
@@ -0,0 +1,16 @@
+package net.lenkaspace.creeper.view;
+
+import java.awt.Graphics;
+
+/**
+ * A read-only copy of everything a custom painted model (i.e. one that is not rendered by an image)
+ * needs in order to paint itself. Created on the simulation thread, painted on the rendering thread.
+ */
+public interface CRPaintSnapshot {
+
+	/**
+	 * Paint the copied state
+	 * @param g_ Graphics graphics to paint into
+	 */
+	public void paint(Graphics g_);
+}
@@ -12,12 +12,12 @@ import java.awt.image.BufferedImage;
 
 import net.lenkaspace.creeper.CRSettings;
 import net.lenkaspace.creeper.images.CRImageProvider;
-import net.lenkaspace.creeper.model.CRBaseSituatedModel;
 import net.lenkaspace.creeper.model.CRWorld;
 import net.lenkaspace.creeper.vo.CRVector3d;
 
 /**
  * Uses Java's native rendering techniques to display CRBaseSituatedModel objects in the world.
+ * Paints the latest CRWorldSnapshot published by the world, never the live models.
  * 
  * @author      Lenka Pitonakova contact@lenkaspace.net
  * @version     1.0                                      
@@ -57,38 +57,47 @@ public class CRRenderer extends Component implements ActionListener {
      * Main rendering function
      */
     public void paint(Graphics g) {
-    	
-    	Dimension size = getSize();
-    	//-------- draw background
- 	    g.setColor(Color.WHITE);   
- 	    g.fillRect(0, 0, size.width, size.height);
-  
 	    CRSettings settings = CRSettings.getSingleton();
+	    CRWorldSnapshot snapshot = null;
 	    if ((settings.getIsInitDone() && settings.getShouldDraw() && settings.isTimeRunning()) || shouldOverrideNoPaint) {
 		    if (shouldOverrideNoPaint) {
 		    	//make sure only paints once..
 		    	shouldOverrideNoPaint = false;
 		    }
-	    	//-- draw all renderable objects in the world
-		    for (CRBaseSituatedModel situatedModel : world.getSituatedModels() ) {
-		    	String imageFileName = situatedModel.getImageFileName();
-		    	if (situatedModel.isVisible()) {
-                            if (situatedModel.isRenderedByImage()) {
-                                if(imageFileName != null && imageFileName != "") {
-                                    //-- get the image either from Creeper native CRImageProvider or from a specified image provider
-                                    BufferedImage image;
-                                    if (imageFileName == CR_BLACK_DOT || imageFileName == CR_BLUE_DOT || imageFileName == CR_GRAY_DOT || imageFileName == CR_GREEN_DOT || imageFileName == CR_PURPLE_DOT || imageFileName == CR_RED_DOT) {
-                                            image = crImageProvider.getImage(imageFileName);
-                                    } else {
-                                            image = imageProvider.getImage(imageFileName);
-                                    }
-                                    if (image != null) {
-                                            drawImageAt(image, situatedModel.getPosition(), situatedModel.getSize(), Math.toRadians(situatedModel.getRotation()), g);
-                                    }
-                                }
-                            } else {
-                                situatedModel.paint(g);
-                            }
+		    snapshot = world.getSnapshotBuffer().getLatestSnapshot();
+	    }
+	    paintSnapshot(snapshot, g);
+    }
+    
+    /**
+     * Paint a world snapshot, with background and border
+     * @param snapshot_ CRWorldSnapshot snapshot to paint, or null to only paint the background and border
+     * @param g Graphics object
+     */
+    public void paintSnapshot(CRWorldSnapshot snapshot_, Graphics g) {
+    	Dimension size = getSize();
+    	//-------- draw background
+ 	    g.setColor(Color.WHITE);   
+ 	    g.fillRect(0, 0, size.width, size.height);
+  
+ 	    if (snapshot_ != null) {
+	    	//-- draw all renderable objects in the snapshot
+		    for (int i=0; i<snapshot_.getSize(); i++) {
+		    	CRPaintSnapshot paintSnapshot = snapshot_.getPaintSnapshot(i);
+		    	if (paintSnapshot != null) {
+		    		paintSnapshot.paint(g);
+		    	} else {
+		    		//-- get the image either from Creeper native CRImageProvider or from a specified image provider
+		    		String imageFileName = snapshot_.getImageFileName(i);
+		    		BufferedImage image;
+		    		if (imageFileName == CR_BLACK_DOT || imageFileName == CR_BLUE_DOT || imageFileName == CR_GRAY_DOT || imageFileName == CR_GREEN_DOT || imageFileName == CR_PURPLE_DOT || imageFileName == CR_RED_DOT) {
+		    			image = crImageProvider.getImage(imageFileName);
+		    		} else {
+		    			image = imageProvider.getImage(imageFileName);
+		    		}
+		    		if (image != null) {
+		    			drawImageAt(image, snapshot_.getX(i), snapshot_.getY(i), snapshot_.getWidth(i), snapshot_.getHeight(i), Math.toRadians(snapshot_.getRotation(i)), g);
+		    		}
 		    	}
 		    }
 	    }
@@ -110,15 +119,29 @@ public class CRRenderer extends Component implements ActionListener {
      * @param g Graphics object
      */
     public void drawImageAt(BufferedImage img_, CRVector3d pos_, CRVector3d size_, double rot_, Graphics g ) {
+    	drawImageAt(img_, pos_.x, pos_.y, size_.x, size_.y, rot_, g);
+    }
+    
+    /**
+     * Draw an image
+     * @param img_ BufferedImage to draw
+     * @param x_ double x position of the middle
+     * @param y_ double y position of the middle
+     * @param width_ double width
+     * @param height_ double height
+     * @param rot_ double rotation in radians
+     * @param g Graphics object
+     */
+    public void drawImageAt(BufferedImage img_, double x_, double y_, double width_, double height_, double rot_, Graphics g ) {
     	if (img_ != null) {
 	    	Graphics2D g2d = (Graphics2D)g;
 	        AffineTransform origXform = g2d.getTransform();
 	        //--- rotate about image's origin:
-	        g2d.rotate(rot_, pos_.x , pos_.y );
+	        g2d.rotate(rot_, x_ , y_ );
 	        //-- adjust x and y based on image size:
-	        int imgX = (int) (pos_.x - size_.x/2);
-	    	int imgY = (int) (pos_.y - size_.y/2);
-	        g2d.drawImage(img_, imgX, imgY, (int)size_.x, (int)size_.y, this);
+	        int imgX = (int) (x_ - width_/2);
+	    	int imgY = (int) (y_ - height_/2);
+	        g2d.drawImage(img_, imgX, imgY, (int)width_, (int)height_, this);
 	        //---- prevent the transformation from affecting other images:
 	        g2d.setTransform(origXform);	
     	}
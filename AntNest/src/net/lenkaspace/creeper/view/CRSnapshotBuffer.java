@@ -0,0 +1,67 @@
+package net.lenkaspace.creeper.view;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Triple buffer of world snapshots. The simulation thread fills the back snapshot and publishes it,
+ * the rendering thread takes the latest published one. Neither thread ever waits for the other:
+ * each owns one snapshot and the third is exchanged atomically.
+ */
+public class CRSnapshotBuffer {
+
+	private CRWorldSnapshot backSnapshot;							//owned by the simulation thread
+	private final AtomicReference<CRWorldSnapshot> readySnapshot;	//last published
+	private CRWorldSnapshot frontSnapshot;							//owned by the rendering thread
+	private long sequenceNumber;
+	private volatile boolean isSnapshotRequested;
+
+	/**
+	 * Constructor
+	 * @param capacity_ int initial number of objects in each snapshot
+	 */
+	public CRSnapshotBuffer(int capacity_) {
+		backSnapshot = new CRWorldSnapshot(capacity_);
+		readySnapshot = new AtomicReference<CRWorldSnapshot>(new CRWorldSnapshot(capacity_));
+		frontSnapshot = new CRWorldSnapshot(capacity_);
+		sequenceNumber = 0;
+		isSnapshotRequested = true;
+	}
+
+	//==================================== SIMULATION THREAD ============================
+
+	/**
+	 * Get the snapshot to fill. Call from the simulation thread only.
+	 * @return CRWorldSnapshot back snapshot
+	 */
+	public CRWorldSnapshot getBackSnapshot() { return backSnapshot; }
+
+	/**
+	 * Make the filled back snapshot available to the rendering thread. Call from the simulation thread only.
+	 */
+	public void publish() {
+		backSnapshot.setSequenceNumber(++sequenceNumber);
+		backSnapshot = readySnapshot.getAndSet(backSnapshot);
+		isSnapshotRequested = false;
+	}
+
+	/**
+	 * Find out if the rendering thread is waiting for a new snapshot
+	 * @return boolean
+	 */
+	public boolean isSnapshotRequested() { return isSnapshotRequested; }
+
+	//==================================== RENDERING THREAD =============================
+
+	/**
+	 * Get the latest published snapshot and ask for the next one. Call from the rendering thread only.
+	 * The returned snapshot stays valid until the next call.
+	 * @return CRWorldSnapshot latest snapshot
+	 */
+	public CRWorldSnapshot getLatestSnapshot() {
+		if (readySnapshot.get().getSequenceNumber() > frontSnapshot.getSequenceNumber()) {
+			frontSnapshot = readySnapshot.getAndSet(frontSnapshot);
+		}
+		isSnapshotRequested = true;
+		return frontSnapshot;
+	}
+}
@@ -0,0 +1,121 @@
+package net.lenkaspace.creeper.view;
+
+import java.util.Arrays;
+
+/**
+ * A read-only copy of the renderable state of a world at one time step: position, size, rotation
+ * and image of each visible object, or a CRPaintSnapshot for objects that paint themselves.
+ * Stored in flat arrays that are reused from snapshot to snapshot, see CRSnapshotBuffer.
+ */
+public class CRWorldSnapshot {
+
+	private int size;
+	private double[] x;
+	private double[] y;
+	private double[] width;
+	private double[] height;
+	private double[] rotation;
+	private String[] imageFileNames;
+	private CRPaintSnapshot[] paintSnapshots;
+	private long sequenceNumber;
+
+	/**
+	 * Constructor
+	 * @param capacity_ int initial number of objects that fit in without resizing
+	 */
+	public CRWorldSnapshot(int capacity_) {
+		capacity_ = Math.max(capacity_, 16);
+		x = new double[capacity_];
+		y = new double[capacity_];
+		width = new double[capacity_];
+		height = new double[capacity_];
+		rotation = new double[capacity_];
+		imageFileNames = new String[capacity_];
+		paintSnapshots = new CRPaintSnapshot[capacity_];
+		size = 0;
+		sequenceNumber = 0;
+	}
+
+	//==================================== FILLING ======================================
+
+	/**
+	 * Remove all objects, keeping the arrays and paint snapshots for reuse
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Add an object rendered by an image
+	 * @param x_ double x position of the middle
+	 * @param y_ double y position of the middle
+	 * @param width_ double width
+	 * @param height_ double height
+	 * @param rotation_ double rotation in degrees
+	 * @param imageFileName_ String image name
+	 */
+	public void addImage(double x_, double y_, double width_, double height_, double rotation_, String imageFileName_) {
+		ensureCapacity(size + 1);
+		x[size] = x_;
+		y[size] = y_;
+		width[size] = width_;
+		height[size] = height_;
+		rotation[size] = rotation_;
+		imageFileNames[size] = imageFileName_;
+		paintSnapshots[size] = null;
+		size++;
+	}
+
+	/**
+	 * Add an object that paints itself
+	 * @param paintSnapshot_ CRPaintSnapshot copy of the object's paint state
+	 */
+	public void addPaintSnapshot(CRPaintSnapshot paintSnapshot_) {
+		ensureCapacity(size + 1);
+		imageFileNames[size] = null;
+		paintSnapshots[size] = paintSnapshot_;
+		size++;
+	}
+
+	/**
+	 * Get the paint snapshot that was stored at the next index last time the snapshot was filled,
+	 * so that it can be reused instead of creating a new one
+	 * @return CRPaintSnapshot or null
+	 */
+	public CRPaintSnapshot getReusablePaintSnapshot() {
+		return size < paintSnapshots.length ? paintSnapshots[size] : null;
+	}
+
+	private void ensureCapacity(int capacity_) {
+		if (capacity_ > x.length) {
+			int newCapacity = Math.max(capacity_, x.length * 2);
+			x = Arrays.copyOf(x, newCapacity);
+			y = Arrays.copyOf(y, newCapacity);
+			width = Arrays.copyOf(width, newCapacity);
+			height = Arrays.copyOf(height, newCapacity);
+			rotation = Arrays.copyOf(rotation, newCapacity);
+			imageFileNames = Arrays.copyOf(imageFileNames, newCapacity);
+			paintSnapshots = Arrays.copyOf(paintSnapshots, newCapacity);
+		}
+	}
+
+	//==================================== GETTERS / SETTERS ============================
+
+	public int getSize() { return size; }
+	public double getX(int index_) { return x[index_]; }
+	public double getY(int index_) { return y[index_]; }
+	public double getWidth(int index_) { return width[index_]; }
+	public double getHeight(int index_) { return height[index_]; }
+	public double getRotation(int index_) { return rotation[index_]; }
+	public String getImageFileName(int index_) { return imageFileNames[index_]; }
+
+	/**
+	 * Get paint snapshot of an object that paints itself
+	 * @param index_ int object index
+	 * @return CRPaintSnapshot or null if the object is rendered by an image
+	 */
+	public CRPaintSnapshot getPaintSnapshot(int index_) { return paintSnapshots[index_]; }
+
+	public long getSequenceNumber() { return sequenceNumber; }
+	public void setSequenceNumber(long value_) { sequenceNumber = value_; }
+}
@@ -10,7 +10,7 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import javax.swing.JPanel;
-import org.jblas.DoubleMatrix;
+import net.lenkaspace.creeper.model.CRGridField;
 
 /**
  *
@@ -26,7 +26,7 @@ public class PheromoneDisplay extends JPanel{
     public double decay = 1.0 - 1E-1;
     
     
-    DoubleMatrix conc = DoubleMatrix.zeros(66,66);
+    CRGridField conc = new CRGridField(actW, actW, d);
 
     public PheromoneDisplay() {
         
@@ -38,39 +38,35 @@ public class PheromoneDisplay extends JPanel{
     
     public void addPheromoneAct(int x, int y) {
         int i,j;
-        i = Math.round(y / d);
-        j = Math.round(x / d);
-        addPheromoneGrid(i, j, 0.5);
+        i = conc.getRow(y);
+        j = conc.getColumn(x);
+        if(conc.isInside(i, j))
+            addPheromoneGrid(i, j, 0.5);
     }
     
     
     public void addPheromoneGrid(int i, int j, double amount) {
-        double newAmount = conc.get(i,j) + amount;
-        
-        if (newAmount > 1.0)
-            newAmount = 1.0;
-        
         //put in center
-        conc.put(i,j,newAmount);
+        conc.add(i,j,amount,1.0);
         
         
         if(amount > 0.1) {
             amount *= diffusion;
             //put around center
             if(i > 0)
-                conc.put(i-1,j,amount);
+                conc.set(i-1,j,amount);
             if(j > 0)
-                conc.put(i,j-1,amount);
-            if(i < gridW)
-                conc.put(i+1,j,amount);
-            if(j < gridW)
-                conc.put(i,j+1,amount);
+                conc.set(i,j-1,amount);
+            if(i < gridW-1)
+                conc.set(i+1,j,amount);
+            if(j < gridW-1)
+                conc.set(i,j+1,amount);
         }
     }
     
     public void step() {
         //decay
-        conc.muli(decay);
+        conc.multiply(decay);
         repaint();
     }
     
@@ -81,8 +77,8 @@ public class PheromoneDisplay extends JPanel{
         
         Graphics2D g2 = (Graphics2D)grphcs;
         
-        for(int i = 0; i < conc.rows; i++) {
-            for(int j = 0; j < conc.columns; j++) {
+        for(int i = 0; i < conc.getNumOfRows(); i++) {
+            for(int j = 0; j < conc.getNumOfColumns(); j++) {
                 if(conc.get(i,j) > 0) {
                     int x,y;
                     x = d * j;